@@ -0,0 +1,193 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Checks that the hot loops of plotting a Julia set stay free of
+ *    allocations, so a change that brings new Complex(...) back into
+ *    LejaPoints.polynomial or the escape loop of JuliaSetFinder is noticed.
+ *
+ * Each check runs its code a few times to let the JIT compile it, then
+ *    measures the bytes every thread allocated while it ran (with
+ *    com.sun.management.ThreadMXBean) and divides them by the number of
+ *    pixels, evaluations or leja points. The least of MEASURED_RUNS runs is
+ *    compared with the limit of the check, since a run that is still being
+ *    compiled allocates more.
+ *
+ * Usage:
+ *    java AllocationCheck
+ *    exits with 1 if any check allocates more than its limit
+ *
+ * @author RyanPachauri
+ */
+public class AllocationCheck {
+   private static final int WARMUP_RUNS = 5;
+   private static final int MEASURED_RUNS = 3;
+   private static final com.sun.management.ThreadMXBean THREADS =
+         (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+   private int failures;
+
+   public static void main(String[] args) throws Exception {
+      if (!THREADS.isThreadAllocatedMemorySupported()) {
+         System.out.println("this JVM cannot measure allocated memory");
+         System.exit(2);
+      }
+      THREADS.setThreadAllocatedMemoryEnabled(true);
+      AllocationCheck check = new AllocationCheck();
+      check.runAll();
+      if (check.failures > 0) {
+         System.out.println(check.failures + " checks failed");
+         System.exit(1);
+      }
+      System.out.println("all checks passed");
+   }
+
+   private void runAll() throws Exception {
+      LejaPoints lp = Benchmarks.squareLejaPoints(200);
+      int numEvaluations = 20000;
+      double[] z = new double[2];
+      this.check("LejaPoints.polynomial(double[])", "evaluation", numEvaluations,
+            0.1, () -> {
+         for (int i = 0; i < numEvaluations; i++) {
+            z[0] = 0.001 * (i % 100);
+            z[1] = 0.5;
+            lp.polynomial(z);
+         }
+      });
+
+      DoubleDouble re = new DoubleDouble();
+      DoubleDouble im = new DoubleDouble();
+      LejaPoints.Workspace workspace = new LejaPoints.Workspace();
+      this.check("LejaPoints.polynomial(DoubleDouble, DoubleDouble, Workspace)",
+            "evaluation", numEvaluations, 0.1, () -> {
+         for (int i = 0; i < numEvaluations; i++) {
+            re.set(0.001 * (i % 100));
+            im.set(0.5);
+            lp.polynomial(re, im, workspace);
+         }
+      });
+
+      //the arrays copied at the start are the same for both, so the
+      //difference is what the extra steps allocate
+      int size = 1000;
+      double[][] candidates = ShapeCreator.getSquare(size).toCandidates(
+            MultiShapeCreator.createViewport(size, size));
+      int fewer = 100;
+      int more = 300;
+      long[] bytes = new long[2];
+      this.check("LejaPoints selection", "leja point", more - fewer, 128,
+            () -> {
+         bytes[0] = allocatedBytes(() -> new LejaPoints(candidates, fewer, 0.01));
+         bytes[1] = allocatedBytes(() -> new LejaPoints(candidates, more, 0.01));
+      }, () -> bytes[1] - bytes[0]);
+
+      //a tile render allocates its tiles, the raster and a Tally per tile,
+      //a few bytes per pixel, but nothing for every iteration
+      int width = 256;
+      Viewport viewport = MultiShapeCreator.createViewport(width, width);
+      this.checkRender("JuliaSetFinder tile render",
+            new JuliaSetFinder(lp, viewport), 4);
+      this.checkRender("JuliaSetFinder double-double tile render",
+            new JuliaSetFinder(lp, -0.5, 0.5, 1e-13, width, width), 4);
+
+      //how ZoomSequenceRenderer classifies the pixels of a deep frame, with
+      //one Scratch for a row of them
+      int numPixels = 20000;
+      JuliaSetFinder.Scratch scratch = new JuliaSetFinder.Scratch();
+      this.check("JuliaSetFinder.iterationsToEscape double-double", "pixel",
+            numPixels, 0.1, () -> {
+         int sum = 0;
+         for (int i = 0; i < numPixels; i++) {
+            sum += JuliaSetFinder.iterationsToEscape(lp, -0.5, 0.5, i % 200,
+                  i / 200, 1e-13, scratch);
+         }
+         Benchmarks.sink = sum;
+      });
+
+      //the field itself takes 6 bytes per pixel and every row a Tally of about
+      //2 KB, which wide rows spread thin
+      int fieldWidth = 1024;
+      int fieldHeight = 128;
+      JuliaSetFinder fieldFinder = quietFinder(new JuliaSetFinder(lp,
+            MultiShapeCreator.createViewport(fieldWidth, fieldHeight)));
+      this.check("JuliaSetFinder escape field", "pixel", fieldWidth * fieldHeight, 10,
+            () -> Benchmarks.sink = fieldFinder.computeEscapeField(30));
+   }
+
+   private void checkRender(String name, JuliaSetFinder jsf, double limit)
+         throws Exception {
+      quietFinder(jsf);
+      Set<Complex> noShape = new HashSet<Complex>();
+      this.check(name, "pixel", (long) jsf.getWidth() * jsf.getHeight(), limit,
+            () -> Benchmarks.sink = jsf.plotIndicesUsingObvious(noShape));
+   }
+
+   /**
+    * @return  jsf, made to render every tile and not to report progress
+    */
+   private static JuliaSetFinder quietFinder(JuliaSetFinder jsf) {
+      jsf.setTileCache(null);
+      jsf.setMetrics(new RenderMetrics());
+      return jsf;
+   }
+
+   private void check(String name, String unit, long units, double limit,
+         Benchmarks.Body body) throws Exception {
+      long[] bytes = new long[1];
+      this.check(name, unit, units, limit, () -> bytes[0] = allocatedBytes(body),
+            () -> bytes[0]);
+   }
+
+   /**
+    * Runs measure and compares the least result of result with the limit
+    * @param units   what the allocated bytes are divided by
+    * @param limit   the most bytes allowed per unit
+    * @param measure runs the code being checked and measures it
+    * @param result  the bytes the last run of measure allocated
+    */
+   private void check(String name, String unit, long units, double limit,
+         Benchmarks.Body measure, java.util.function.LongSupplier result)
+         throws Exception {
+      long least = Long.MAX_VALUE;
+      for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+         Benchmarks.quietly(measure);
+         if (i >= WARMUP_RUNS) {
+            least = Math.min(least, result.getAsLong());
+         }
+      }
+      double perUnit = (double) least / units;
+      boolean passed = perUnit <= limit;
+      if (!passed) {
+         this.failures++;
+      }
+      System.out.printf(Locale.ROOT, "%s %-60s %10.3f bytes per %s (limit %s)%n",
+            passed ? "PASS" : "FAIL", name, perUnit, unit, limit);
+   }
+
+   /**
+    * @return  the bytes every thread allocated while body ran
+    */
+   private static long allocatedBytes(Benchmarks.Body body) throws Exception {
+      Map<Long, Long> before = allocatedBytesByThread();
+      body.run();
+      Map<Long, Long> after = allocatedBytesByThread();
+      long bytes = 0;
+      for (Map.Entry<Long, Long> thread : after.entrySet()) {
+         Long start = before.get(thread.getKey());
+         bytes += thread.getValue() - (start == null ? 0 : start);
+      }
+      return bytes;
+   }
+
+   private static Map<Long, Long> allocatedBytesByThread() {
+      long[] ids = THREADS.getAllThreadIds();
+      long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+      Map<Long, Long> result = new HashMap<Long, Long>();
+      for (int i = 0; i < ids.length; i++) {
+         if (bytes[i] >= 0) {
+            result.put(ids[i], bytes[i]);
+         }
+      }
+      return result;
+   }
+}
@@ -0,0 +1,349 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Microbenchmarks of the costly steps of plotting a Julia set, with results
+ *    written as JSON so they can be compared between changes.
+ *
+ * Each benchmark is run WARMUP_RUNS times to let the JIT compile it, then
+ *    MEASURED_RUNS times, and the mean and standard deviation of the time per
+ *    operation are reported. Everything the code under test prints is thrown
+ *    away while it runs.
+ *
+ * Usage:
+ *    java Benchmarks [results.json] [name filter]
+ *    only benchmarks whose name contains the filter are run
+ *    gradle jmh
+ *    runs the same benchmarks under JMH (see src/jmh), which forks a JVM
+ *    per benchmark and is slower but more trustworthy
+ *
+ * @author RyanPachauri
+ */
+public class Benchmarks {
+   private static final int WARMUP_RUNS = 3;
+   private static final int MEASURED_RUNS = 5;
+   private static final String DEFAULT_RESULTS = "benchmark-results.json";
+   private static final int NUM_SAMPLES = 10000;
+   private static final int PLOT_SIZE = 256;
+   //every benchmark, in the order they are run, and the sizes they are run
+   //with
+   private static final Map<String, int[]> PARAMS =
+         new LinkedHashMap<String, int[]>();
+   static {
+      PARAMS.put("LejaPoints.getNextLejaPoint", new int[] {1000, 4000, 16000});
+      PARAMS.put("LejaPoints.polynomial", new int[] {50, 200, 800});
+      PARAMS.put("LejaPoints.polynomial double-double", new int[] {50, 200, 800});
+      PARAMS.put("JuliaSetFinder per pixel", new int[] {50, 200});
+      PARAMS.put("MultiShapeCreator.createComplexValues", new int[] {500, 1000});
+      PARAMS.put("ShapeCreator boundary from image", new int[] {300, 1000});
+      PARAMS.put("ShapeCreator boundary from contour", new int[] {300, 1000});
+      PARAMS.put("Picture.save", new int[] {1000, 2000});
+   }
+
+   //results of benchmarks are stored here so the JIT cannot drop the work
+   static volatile Object sink;
+
+   /**
+    * Work that is timed: run does ops operations
+    */
+   interface Body {
+      void run() throws Exception;
+   }
+
+   /**
+    * A benchmark set up for one size: call runs it once, doing ops
+    *    operations, and returns what it computed
+    */
+   public static class Workload implements Callable<Object> {
+      final String params;
+      final String unit;
+      final long ops;
+      private final Callable<Object> body;
+
+      Workload(String params, String unit, long ops, Callable<Object> body) {
+         this.params = params;
+         this.unit = unit;
+         this.ops = ops;
+         this.body = body;
+      }
+
+      public Object call() throws Exception {
+         return this.body.call();
+      }
+   }
+
+   /**
+    * The measured cost of one benchmark
+    */
+   static class Result {
+      final String name;
+      final String params;
+      final String unit;
+      final long ops;
+      final double mean;
+      final double stdev;
+
+      Result(String name, String params, String unit, long ops, double mean,
+            double stdev) {
+         this.name = name;
+         this.params = params;
+         this.unit = unit;
+         this.ops = ops;
+         this.mean = mean;
+         this.stdev = stdev;
+      }
+
+      String toJson() {
+         return String.format(Locale.ROOT, "{\"benchmark\": %s, \"params\": %s, " +
+               "\"unit\": %s, \"opsPerRun\": %d, \"mean\": %.3f, " +
+               "\"stdev\": %.3f, \"runs\": %d}", quote(this.name),
+               quote(this.params), quote(this.unit), this.ops, this.mean,
+               this.stdev, MEASURED_RUNS);
+      }
+
+      public String toString() {
+         return String.format(Locale.ROOT, "%-40s %-20s %14.1f +- %10.1f %s",
+               this.name, this.params, this.mean, this.stdev, this.unit);
+      }
+   }
+
+   private final String filter;
+   private final List<Result> results;
+
+   private Benchmarks(String filter) {
+      this.filter = filter;
+      this.results = new ArrayList<Result>();
+   }
+
+   public static void main(String[] args) throws Exception {
+      File output = new File(args.length > 0 ? args[0] : DEFAULT_RESULTS);
+      Benchmarks benchmarks = new Benchmarks(args.length > 1 ? args[1] : "");
+      benchmarks.runAll();
+      List<String> results = new ArrayList<String>();
+      for (Result result : benchmarks.results) {
+         results.add(result.toJson());
+      }
+      writeJson(output, "benchmarks", results);
+      System.out.println("results written to " + output);
+   }
+
+   private void runAll() throws Exception {
+      for (Map.Entry<String, int[]> benchmark : PARAMS.entrySet()) {
+         if (!benchmark.getKey().contains(this.filter)) {
+            continue;
+         }
+         for (int param : benchmark.getValue()) {
+            this.run(benchmark.getKey(), workload(benchmark.getKey(), param));
+         }
+      }
+   }
+
+   /**
+    * Sets up a benchmark so that only the work to be timed is left to do.
+    *    The JMH benchmarks in src/jmh get theirs from here as well, so both
+    *    harnesses time the same code.
+    * @param name    one of the keys of PARAMS
+    * @param param   the size the benchmark is run with
+    */
+   public static Workload workload(String name, int param) throws Exception {
+      if (name.equals("LejaPoints.getNextLejaPoint")) {
+         int numLejaPoints = 50;
+         ShapeSet circle = circle(param);
+         Viewport viewport = MultiShapeCreator.createViewport(-2, 2,
+               4.0 / param, param, param);
+         double[][] points = circle.toCandidates(viewport);
+         //getNextLejaPoint looks at every candidate once per leja point
+         return new Workload("candidates=" + points[0].length, "ns/candidate",
+               (long) numLejaPoints * points[0].length,
+               () -> new LejaPoints(points, numLejaPoints, 0.01));
+      } else if (name.equals("LejaPoints.polynomial")) {
+         LejaPoints lp = squareLejaPoints(param);
+         Complex[] samples = samples(NUM_SAMPLES);
+         return new Workload("n=" + param, "ns/op", samples.length, () -> {
+            Complex last = null;
+            for (Complex z : samples) {
+               last = lp.polynomial(z);
+            }
+            return last;
+         });
+      } else if (name.equals("LejaPoints.polynomial double-double")) {
+         LejaPoints lp = squareLejaPoints(param);
+         Complex[] samples = samples(NUM_SAMPLES);
+         DoubleDouble re = new DoubleDouble();
+         DoubleDouble im = new DoubleDouble();
+         return new Workload("n=" + param, "ns/op", samples.length, () -> {
+            for (Complex z : samples) {
+               re.set(z.re());
+               im.set(z.im());
+               lp.polynomial(re, im);
+            }
+            return re;
+         });
+      } else if (name.equals("JuliaSetFinder per pixel")) {
+         LejaPoints lp = squareLejaPoints(param);
+         Viewport viewport = MultiShapeCreator.createViewport(PLOT_SIZE,
+               PLOT_SIZE);
+         return new Workload("n=" + param, "ns/pixel", PLOT_SIZE * PLOT_SIZE,
+               () -> {
+            JuliaSetFinder jsf = new JuliaSetFinder(lp, viewport);
+            jsf.setTileCache(null);
+            return jsf.plotIndicesUsingObvious(new HashSet<Complex>());
+         });
+      } else if (name.equals("MultiShapeCreator.createComplexValues")) {
+         return new Workload("size=" + param, "ns/point", (long) param * param,
+               () -> MultiShapeCreator.createComplexValues(param, param));
+      } else if (name.equals("ShapeCreator boundary from image")) {
+         return new Workload("K size=" + param, "us/op", 1, () -> {
+            ShapeCache.shared().clear();
+            return ShapeCreator.getK(0, 0, param);
+         });
+      } else if (name.equals("ShapeCreator boundary from contour")) {
+         return new Workload("K size=" + param, "us/op", 1, () -> {
+            ShapeContour.clearCache();
+            return ShapeCreator.getContour("K", 0, 0, param);
+         });
+      } else if (name.equals("Picture.save")) {
+         Picture picture = new Picture(param, param);
+         int[] pixels = picture.getARGBPixels();
+         for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = LejaPlotter.PALETTE[(i / param / 50 + i % param / 70) %
+                  LejaPlotter.PALETTE.length].getRGB() & 0xFFFFFF;
+         }
+         File file = File.createTempFile("benchmark", ".png");
+         file.deleteOnExit();
+         return new Workload(param + "x" + param, "ms/op", 1, () -> {
+            picture.save(file);
+            return file;
+         });
+      }
+      throw new IllegalArgumentException("no benchmark called " + name);
+   }
+
+   /**
+    * Times workload and records the result
+    */
+   private void run(String name, Workload workload) throws Exception {
+      double scale = workload.unit.startsWith("ms") ? 1e6 :
+            workload.unit.startsWith("us") ? 1e3 : 1;
+      Body body = () -> sink = workload.call();
+      double[] times = new double[MEASURED_RUNS];
+      quietly(() -> {
+         for (int i = 0; i < WARMUP_RUNS; i++) {
+            body.run();
+         }
+         for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            times[i] = (System.nanoTime() - start) / scale / workload.ops;
+         }
+      });
+      Result result = new Result(name, workload.params, workload.unit,
+            workload.ops, mean(times), stdev(times));
+      this.results.add(result);
+      System.out.println(result);
+   }
+
+   /**
+    * Runs body with everything it prints thrown away
+    */
+   static void quietly(Body body) throws Exception {
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(new OutputStream() {
+         public void write(int b) {
+         }
+      }));
+      try {
+         body.run();
+      } finally {
+         System.setOut(out);
+      }
+   }
+
+   static double mean(double[] values) {
+      double sum = 0;
+      for (double value : values) {
+         sum += value;
+      }
+      return sum / values.length;
+   }
+
+   static double stdev(double[] values) {
+      double mean = mean(values);
+      double sum = 0;
+      for (double value : values) {
+         sum += (value - mean) * (value - mean);
+      }
+      return values.length > 1 ? Math.sqrt(sum / (values.length - 1)) : 0;
+   }
+
+   /**
+    * Writes results as a JSON object with the environment they were measured
+    *    in, so runs on different machines are not compared by mistake
+    * @param kind the kind of results
+    * @param results JSON objects of the results
+    */
+   static void writeJson(File output, String kind, List<String> results)
+         throws IOException {
+      try (PrintStream json = new PrintStream(output, "UTF-8")) {
+         json.println("{");
+         json.println("  \"kind\": " + quote(kind) + ",");
+         json.println("  \"timestamp\": " + System.currentTimeMillis() + ",");
+         json.println("  \"java\": " + quote(System.getProperty("java.version")) +
+               ",");
+         json.println("  \"os\": " + quote(System.getProperty("os.name") + " " +
+               System.getProperty("os.arch")) + ",");
+         json.println("  \"cores\": " +
+               Runtime.getRuntime().availableProcessors() + ",");
+         json.println("  \"maxHeap\": " + Runtime.getRuntime().maxMemory() + ",");
+         json.println("  \"results\": [");
+         for (int i = 0; i < results.size(); i++) {
+            json.println("    " + results.get(i) +
+                  (i < results.size() - 1 ? "," : ""));
+         }
+         json.println("  ]");
+         json.println("}");
+      }
+   }
+
+   static String quote(String s) {
+      return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+   }
+
+   /**
+    * @return  about numPoints points on a circle in a grid just big enough
+    *    for it
+    */
+   private static ShapeSet circle(int numPoints) {
+      ShapeSet circle = new ShapeSet();
+      double radius = numPoints / (2 * Math.PI) / 1.2;
+      for (int i = 0; i < numPoints; i++) {
+         double angle = 2 * Math.PI * i / numPoints;
+         circle.add((int) (numPoints / 2 + radius * Math.cos(angle)),
+               (int) (numPoints / 2 + radius * Math.sin(angle)));
+      }
+      return circle;
+   }
+
+   /**
+    * @return  n leja points of the square the experiments start with
+    */
+   static LejaPoints squareLejaPoints(int n) throws Exception {
+      int size = 1000;
+      LejaPoints[] lp = new LejaPoints[1];
+      quietly(() -> lp[0] = new LejaPoints(ShapeCreator.getSquare(size).
+            toCandidates(MultiShapeCreator.createViewport(size, size)), n,
+            1.0 / n));
+      return lp[0];
+   }
+
+   private static Complex[] samples(int numSamples) {
+      Random random = new Random(numSamples);
+      Complex[] samples = new Complex[numSamples];
+      for (int i = 0; i < numSamples; i++) {
+         samples[i] = new Complex(4 * random.nextDouble() - 2,
+               4 * random.nextDouble() - 2);
+      }
+      return samples;
+   }
+}
@@ -0,0 +1,166 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel operations on pictures held as int[] rasters of 0xRRGGBB values,
+ *    row by row (see Picture.getARGBPixels), and layers that are stamped onto
+ *    rows of palette indices while they are being written out, so boxes and
+ *    shapes cost one pass together with encoding instead of a pass each.
+ *
+ * Every whole-picture operation splits the picture into rows and works on
+ *    them in parallel. Stamping a box only touches its outline.
+ *
+ * @author RyanPachauri
+ */
+public class Compositor {
+
+   /**
+    * Something drawn on top of rows of palette indices as they are written
+    */
+   public interface IndexLayer {
+      /**
+       * Draws this layer onto row y
+       * @param y   the row
+       * @param row the palette indices of the row, changed in place
+       */
+      void apply(int y, byte[] row);
+   }
+
+   /**
+    * Replaces every pixel by darkColor if it is closer to black than to white
+    *    and by lightColor otherwise
+    */
+   public static void threshold(int[] pixels, int width, int height,
+         int darkColor, int lightColor) {
+      IntStream.range(0, height).parallel().forEach(y -> {
+         for (int i = y * width; i < (y + 1) * width; i++) {
+            int rgb = pixels[i];
+            int sum = (rgb >> 16 & 0xFF) + (rgb >> 8 & 0xFF) + (rgb & 0xFF);
+            pixels[i] = sum / 3 > 255 / 2 ? lightColor : darkColor;
+         }
+      });
+   }
+
+   /**
+    * Draws the outline of the box with corners (left, top) and
+    *    (right, bottom), clipped to the picture
+    */
+   public static void stampBox(int[] pixels, int width, int height, int left,
+         int top, int right, int bottom, int rgb) {
+      for (int x = Math.max(0, left); x <= Math.min(width - 1, right); x++) {
+         if (top >= 0 && top < height) {
+            pixels[top * width + x] = rgb;
+         }
+         if (bottom >= 0 && bottom < height) {
+            pixels[bottom * width + x] = rgb;
+         }
+      }
+      for (int y = Math.max(0, top); y <= Math.min(height - 1, bottom); y++) {
+         if (left >= 0 && left < width) {
+            pixels[y * width + left] = rgb;
+         }
+         if (right >= 0 && right < width) {
+            pixels[y * width + right] = rgb;
+         }
+      }
+   }
+
+   /**
+    * Copies the pixels of overlay that have the color key onto pixels. The two
+    *    pictures may have different sizes; only the part they share is used.
+    */
+   public static void stampOverlay(int[] pixels, int width, int height,
+         int[] overlay, int overlayWidth, int overlayHeight, int key) {
+      int w = Math.min(width, overlayWidth);
+      IntStream.range(0, Math.min(height, overlayHeight)).parallel().forEach(y -> {
+         for (int x = 0; x < w; x++) {
+            if (overlay[y * overlayWidth + x] == key) {
+               pixels[y * width + x] = key;
+            }
+         }
+      });
+   }
+
+   /**
+    * Draws layer over base, where every pixel of layer with the color
+    *    transparent is left out. Both pictures have the same size.
+    */
+   public static void merge(int[] base, int[] layer, int width, int height,
+         int transparent) {
+      IntStream.range(0, height).parallel().forEach(y -> {
+         for (int i = y * width; i < (y + 1) * width; i++) {
+            if (layer[i] != transparent) {
+               base[i] = layer[i];
+            }
+         }
+      });
+   }
+
+   /**
+    * @return  a layer drawing the outline of the box with corners
+    *    (left, top) and (right, bottom) in the given palette index
+    */
+   public static IndexLayer boxLayer(int left, int top, int right, int bottom,
+         byte index) {
+      return (y, row) -> {
+         if (y < top || y > bottom) {
+            return;
+         }
+         int from = Math.max(0, left);
+         int to = Math.min(row.length - 1, right);
+         if (y == top || y == bottom) {
+            Arrays.fill(row, from, Math.max(from, to + 1), index);
+         } else {
+            if (left >= 0 && left < row.length) {
+               row[left] = index;
+            }
+            if (right >= 0 && right < row.length) {
+               row[right] = index;
+            }
+         }
+      };
+   }
+
+   /**
+    * @param shape   the pixels to draw
+    * @param index   the palette index to draw them in
+    * @param keep    pixels that already have this palette index are not
+    *                drawn over
+    * @return  a layer drawing the points of shape
+    */
+   public static IndexLayer shapeLayer(ShapeSet shape, byte index, byte keep) {
+      //the x coordinates of the points of each row, so a row costs only as
+      //much as the points on it
+      Map<Integer, int[]> rows = new HashMap<Integer, int[]>();
+      Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+      shape.forEach((x, y) -> counts.merge(y, 1, Integer::sum));
+      for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+         rows.put(entry.getKey(), new int[entry.getValue()]);
+      }
+      Map<Integer, Integer> filled = new HashMap<Integer, Integer>();
+      shape.forEach((x, y) ->
+            rows.get(y)[filled.merge(y, 1, Integer::sum) - 1] = x);
+      return (y, row) -> {
+         int[] xs = rows.get(y);
+         if (xs == null) {
+            return;
+         }
+         for (int x : xs) {
+            if (x >= 0 && x < row.length && row[x] != keep) {
+               row[x] = index;
+            }
+         }
+      };
+   }
+
+   /**
+    * @return  a layer drawing each of layers in turn
+    */
+   public static IndexLayer layers(IndexLayer... layers) {
+      return (y, row) -> {
+         for (IndexLayer layer : layers) {
+            layer.apply(y, row);
+         }
+      };
+   }
+}
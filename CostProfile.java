@@ -0,0 +1,269 @@
+import java.awt.Color;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Where the time of a render goes: the number of times the polynomial was
+ *    evaluated for every pixel, and how long every tile took.
+ *
+ * Every evaluation multiplies one factor (z - leja point) per leja point, so
+ *    the factor multiplications of a pixel are its evaluations times the
+ *    number of leja points. Pixels that never escape cost the most; pixels
+ *    that are leja points or part of the original shape are not iterated
+ *    and cost nothing.
+ *
+ * A profile is saved next to its render as two heatmaps, one of the cost of
+ *    every pixel and one of the time of every tile, and a text file of
+ *    summary statistics (see JuliaSetFinder.startProfiling).
+ *
+ * @author RyanPachauri
+ */
+public class CostProfile {
+   //colors of the heatmaps, from cheapest to most expensive
+   private static final Color[] HEAT = {Color.BLACK, new Color(80, 0, 130),
+         new Color(200, 30, 80), new Color(255, 140, 0), Color.YELLOW,
+         Color.WHITE};
+   private static final ThreadMXBean THREADS =
+         ManagementFactory.getThreadMXBean();
+
+   private final int width;
+   private final int height;
+   private final int numLejaPoints;
+   private final int maxIterations;
+   private final int tileSize;
+   private final int tilesAcross;
+   //evaluations of every pixel, row by row
+   private final short[] evaluations;
+   //CPU nanoseconds every tile took, row of tiles by row of tiles
+   private final long[] tileNanos;
+
+   /**
+    * @param width   the width of the render
+    * @param height  the height of the render
+    * @param numLejaPoints the number of leja points of the polynomial
+    * @param maxIterations the most evaluations done for a pixel
+    * @param tileSize   the width and height of the tiles the render is done in
+    */
+   public CostProfile(int width, int height, int numLejaPoints,
+         int maxIterations, int tileSize) {
+      if (width <= 0 || height <= 0 || tileSize <= 0 ||
+            (long) width * height > Integer.MAX_VALUE ||
+            maxIterations > Short.MAX_VALUE) {
+         throw new IllegalArgumentException();
+      }
+      this.width = width;
+      this.height = height;
+      this.numLejaPoints = numLejaPoints;
+      this.maxIterations = maxIterations;
+      this.tileSize = tileSize;
+      this.tilesAcross = (width + tileSize - 1) / tileSize;
+      this.evaluations = new short[width * height];
+      this.tileNanos = new long[this.tilesAcross *
+            ((height + tileSize - 1) / tileSize)];
+   }
+
+   public int width() {
+      return this.width;
+   }
+
+   public int height() {
+      return this.height;
+   }
+
+   /**
+    * Records the evaluations of pixel (x, y); every pixel is recorded by one
+    *    thread only
+    */
+   public void record(int x, int y, int evaluations) {
+      this.evaluations[y * this.width + x] = (short) evaluations;
+   }
+
+   /**
+    * @return  the CPU time of the current thread in nanoseconds, so tiles are
+    *    not charged for time other threads ran, or System.nanoTime() if the
+    *    JVM cannot measure it
+    */
+   public static long threadTime() {
+      if (THREADS.isCurrentThreadCpuTimeSupported()) {
+         return THREADS.getCurrentThreadCpuTime();
+      }
+      return System.nanoTime();
+   }
+
+   /**
+    * Records how long the tile with top left corner (left, top) took
+    */
+   public void recordTile(int left, int top, long nanos) {
+      this.tileNanos[top / this.tileSize * this.tilesAcross +
+            left / this.tileSize] = nanos;
+   }
+
+   /**
+    * @return  the number of times the polynomial was evaluated for pixel
+    *    (x, y)
+    */
+   public int getEvaluations(int x, int y) {
+      return this.evaluations[y * this.width + x];
+   }
+
+   /**
+    * @return  the number of factors multiplied for pixel (x, y)
+    */
+   public long getFactorMultiplications(int x, int y) {
+      return (long) this.getEvaluations(x, y) * this.numLejaPoints;
+   }
+
+   /**
+    * @return  the nanoseconds the tile holding pixel (x, y) took
+    */
+   public long getTileNanos(int x, int y) {
+      return this.tileNanos[y / this.tileSize * this.tilesAcross +
+            x / this.tileSize];
+   }
+
+   /**
+    * @return  heatmap of the evaluations of every pixel, relative to
+    *    maxIterations
+    */
+   public Picture toCostHeatmap() {
+      Picture heatmap = new Picture(this.width, this.height);
+      int[] pixels = heatmap.getARGBPixels();
+      IntStream.range(0, this.height).parallel().forEach(y -> {
+         for (int x = 0; x < this.width; x++) {
+            pixels[y * this.width + x] = heat((double)
+                  this.getEvaluations(x, y) / this.maxIterations);
+         }
+      });
+      return heatmap;
+   }
+
+   /**
+    * @return  heatmap of the time of every tile, relative to the slowest tile
+    */
+   public Picture toTileHeatmap() {
+      long slowest = 1;
+      for (long nanos : this.tileNanos) {
+         slowest = Math.max(slowest, nanos);
+      }
+      double max = slowest;
+      Picture heatmap = new Picture(this.width, this.height);
+      int[] pixels = heatmap.getARGBPixels();
+      IntStream.range(0, this.height).parallel().forEach(y -> {
+         for (int x = 0; x < this.width; x++) {
+            pixels[y * this.width + x] = heat(this.getTileNanos(x, y) / max);
+         }
+      });
+      return heatmap;
+   }
+
+   /**
+    * @param fraction   between 0 and 1
+    * @return  the color of fraction in HEAT as 0xRRGGBB
+    */
+   private static int heat(double fraction) {
+      double position = Math.max(0, Math.min(1, fraction)) * (HEAT.length - 1);
+      int i = Math.min(HEAT.length - 2, (int) position);
+      double t = position - i;
+      Color from = HEAT[i];
+      Color to = HEAT[i + 1];
+      int red = (int) Math.round(from.getRed() + t * (to.getRed() - from.getRed()));
+      int green = (int) Math.round(from.getGreen() +
+            t * (to.getGreen() - from.getGreen()));
+      int blue = (int) Math.round(from.getBlue() +
+            t * (to.getBlue() - from.getBlue()));
+      return red << 16 | green << 8 | blue;
+   }
+
+   /**
+    * @return  summary statistics of this profile, one per line
+    */
+   public String getSummary() {
+      //number of pixels with each number of evaluations
+      long[] counts = new long[this.maxIterations + 1];
+      long total = 0;
+      for (short evaluations : this.evaluations) {
+         counts[Math.min(evaluations, this.maxIterations)]++;
+         total += evaluations;
+      }
+      long pixels = this.evaluations.length;
+      long[] tiles = this.tileNanos.clone();
+      Arrays.sort(tiles);
+      long tileTotal = 0;
+      for (long nanos : tiles) {
+         tileTotal += nanos;
+      }
+      double tileMean = (double) tileTotal / tiles.length;
+      //share of all the work spent on pixels that reached the iteration cap,
+      //nearly all of which never escaped
+      double interior = total == 0 ? 0 :
+            (double) counts[this.maxIterations] * this.maxIterations / total;
+
+      StringBuilder summary = new StringBuilder();
+      summary.append(String.format(Locale.ROOT, "size: %d x %d%n",
+            this.width, this.height));
+      summary.append(String.format(Locale.ROOT, "leja points: %d%n",
+            this.numLejaPoints));
+      summary.append(String.format(Locale.ROOT, "polynomial evaluations: %d%n",
+            total));
+      summary.append(String.format(Locale.ROOT, "factor multiplications: %d%n",
+            total * this.numLejaPoints));
+      summary.append(String.format(Locale.ROOT,
+            "evaluations per pixel: mean %.3f, median %d, p90 %d, p99 %d, max %d%n",
+            (double) total / pixels, percentile(counts, pixels, 0.5),
+            percentile(counts, pixels, 0.9), percentile(counts, pixels, 0.99),
+            percentile(counts, pixels, 1)));
+      summary.append(String.format(Locale.ROOT,
+            "pixels at the iteration cap: %d (%.1f%% of pixels, %.1f%% of work)%n",
+            counts[this.maxIterations],
+            100.0 * counts[this.maxIterations] / pixels, 100 * interior));
+      summary.append(String.format(Locale.ROOT, "pixels not iterated: %d%n",
+            counts[0]));
+      summary.append(String.format(Locale.ROOT,
+            "tile CPU time: total %.3f s, mean %.3f ms, median %.3f ms, max %.3f ms, " +
+            "max / mean %.2f%n", tileTotal / 1e9, tileMean / 1e6,
+            tiles[tiles.length / 2] / 1e6, tiles[tiles.length - 1] / 1e6,
+            tileMean == 0 ? 0 : tiles[tiles.length - 1] / tileMean));
+      summary.append("pixels by evaluations:");
+      for (int i = 0; i < counts.length; i++) {
+         if (counts[i] != 0) {
+            summary.append(" ").append(i).append("=").append(counts[i]);
+         }
+      }
+      summary.append(String.format("%n"));
+      return summary.toString();
+   }
+
+   /**
+    * @param counts  the number of pixels with each number of evaluations
+    * @return  the least number of evaluations at least fraction of the
+    *    pixels have or go below
+    */
+   private static int percentile(long[] counts, long pixels, double fraction) {
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+         seen += counts[i];
+         if (seen >= Math.ceil(fraction * pixels)) {
+            return i;
+         }
+      }
+      return counts.length - 1;
+   }
+
+   /**
+    * Saves fileName + " - cost heatmap.png", fileName + " - tile heatmap.png"
+    *    and fileName + " - cost.txt"
+    */
+   public void save(String fileName) throws IOException {
+      this.toCostHeatmap().save(new File(fileName + " - cost heatmap." +
+            ShapeCreator.IMAGE_SUFFIX));
+      this.toTileHeatmap().save(new File(fileName + " - tile heatmap." +
+            ShapeCreator.IMAGE_SUFFIX));
+      try (PrintStream output = new PrintStream(fileName + " - cost.txt",
+            "UTF-8")) {
+         output.print(this.getSummary());
+      }
+   }
+}
@@ -0,0 +1,170 @@
+/**
+ * Mutable double-double number: an unevaluated sum hi + lo of two doubles
+ *    with |lo| <= ulp(hi) / 2, giving roughly 106 bits of mantissa.
+ *
+ * Instances are meant to be reused as accumulators, so every operation
+ *    overwrites this instance and returns it for chaining. The algorithms
+ *    are the error-free transformations of Dekker and Knuth, written without
+ *    Math.fma so they still compile for Java 8.
+ *
+ * @author RyanPachauri
+ */
+public final class DoubleDouble {
+   //2^27 + 1, used to split a double into two 26-bit halves
+   private static final double SPLITTER = 134217729.0;
+
+   private double hi;
+   private double lo;
+
+   /**
+    * Initializes a DoubleDouble equal to 0
+    */
+   public DoubleDouble() {
+      this(0.0);
+   }
+
+   /**
+    * @param d  the (exact) value of this DoubleDouble
+    */
+   public DoubleDouble(double d) {
+      this.hi = d;
+      this.lo = 0.0;
+   }
+
+   /**
+    * @param other   DoubleDouble to copy
+    */
+   public DoubleDouble(DoubleDouble other) {
+      this.hi = other.hi;
+      this.lo = other.lo;
+   }
+
+   /**
+    * @return  the leading double of this number
+    */
+   public double hi() {
+      return this.hi;
+   }
+
+   /**
+    * @return  the trailing double of this number
+    */
+   public double lo() {
+      return this.lo;
+   }
+
+   /**
+    * @return  this number rounded to the nearest double
+    */
+   public double doubleValue() {
+      return this.hi + this.lo;
+   }
+
+   public DoubleDouble set(double d) {
+      this.hi = d;
+      this.lo = 0.0;
+      return this;
+   }
+
+   public DoubleDouble set(DoubleDouble other) {
+      this.hi = other.hi;
+      this.lo = other.lo;
+      return this;
+   }
+
+   /**
+    * this = a * b, computed exactly
+    */
+   public DoubleDouble setProduct(double a, double b) {
+      double p = a * b;
+      this.lo = productError(a, b, p);
+      this.hi = p;
+      return this;
+   }
+
+   public DoubleDouble add(double b) {
+      double s = this.hi + b;
+      double e = sumError(this.hi, b, s) + this.lo;
+      return this.normalize(s, e);
+   }
+
+   public DoubleDouble add(DoubleDouble b) {
+      double s = this.hi + b.hi;
+      double e = sumError(this.hi, b.hi, s);
+      double t = this.lo + b.lo;
+      double f = sumError(this.lo, b.lo, t);
+      e += t;
+      this.normalize(s, e);
+      return this.normalize(this.hi, this.lo + f);
+   }
+
+   public DoubleDouble subtract(DoubleDouble b) {
+      double s = this.hi - b.hi;
+      double e = sumError(this.hi, -b.hi, s);
+      double t = this.lo - b.lo;
+      double f = sumError(this.lo, -b.lo, t);
+      e += t;
+      this.normalize(s, e);
+      return this.normalize(this.hi, this.lo + f);
+   }
+
+   public DoubleDouble multiply(double b) {
+      double p = this.hi * b;
+      double e = productError(this.hi, b, p) + this.lo * b;
+      return this.normalize(p, e);
+   }
+
+   public DoubleDouble multiply(DoubleDouble b) {
+      double p = this.hi * b.hi;
+      double e = productError(this.hi, b.hi, p) +
+            (this.hi * b.lo + this.lo * b.hi);
+      return this.normalize(p, e);
+   }
+
+   public DoubleDouble divide(double b) {
+      double q1 = this.hi / b;
+      //remainder of this - q1 * b, which is exact in double-double
+      double p = q1 * b;
+      double pErr = productError(q1, b, p);
+      double s = this.hi - p;
+      double sErr = sumError(this.hi, -p, s);
+      double r = s + (sErr - pErr + this.lo);
+      double q2 = r / b;
+      return this.normalize(q1, q2);
+   }
+
+   public boolean isNaN() {
+      return Double.isNaN(this.hi);
+   }
+
+   public String toString() {
+      return this.hi + " + " + this.lo;
+   }
+
+   private DoubleDouble normalize(double s, double e) {
+      this.hi = s + e;
+      this.lo = e - (this.hi - s);
+      return this;
+   }
+
+   /**
+    * @return  the rounding error of s = a + b, so that a + b == s + error
+    */
+   private static double sumError(double a, double b, double s) {
+      double bb = s - a;
+      return (a - (s - bb)) + (b - bb);
+   }
+
+   /**
+    * @return  the rounding error of p = a * b, so that a * b == p + error
+    */
+   private static double productError(double a, double b, double p) {
+      double t = SPLITTER * a;
+      double aHi = t - (t - a);
+      double aLo = a - aHi;
+      t = SPLITTER * b;
+      double bHi = t - (t - b);
+      double bLo = b - bHi;
+      return ((aHi * bHi - p) + aHi * bLo + aLo * bHi) + aLo * bLo;
+   }
+}
@@ -0,0 +1,232 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * What JuliaSetFinder learned about every pixel of a render, kept so the
+ *    render can be colored again without iterating the polynomial again.
+ *
+ * For each pixel this holds the number of iterations done (a short) and a
+ *    float that is either the final |z| (MODULUS fields) or the estimated
+ *    distance from the Julia set (DISTANCE fields). In a MODULUS field a pixel
+ *    escaped if its final |z| is greater than getFarEnough() or NaN; pixels
+ *    that never escaped have getMaxIterations() iterations.
+ *
+ * Fields are saved in a compact binary file: a header, then every iteration
+ *    count, then every value, each row by row in big-endian order. A field of
+ *    a million pixels takes 6MB.
+ *
+ * @author RyanPachauri
+ */
+public class EscapeField {
+   public static final String FIELD_SUFFIX = "field";
+   public static final byte MODULUS = 0;
+   public static final byte DISTANCE = 1;
+
+   private static final int MAGIC = 0x4A455346;//"JESF"
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 32;
+   //bytes copied to or from the file at a time
+   private static final int BUFFER_SIZE = 1 << 20;
+
+   private final int width;
+   private final int height;
+   private final byte kind;
+   private final int maxIterations;
+   private final double farEnough;
+   private final short[] iterations;
+   private final float[] values;
+
+   /**
+    * Initializes a field where every pixel has 0 iterations and value 0
+    * @param width   the width of the render
+    * @param height  the height of the render
+    * @param kind    MODULUS or DISTANCE
+    * @param maxIterations the most iterations done for a pixel
+    * @param farEnough  |z| past which a point is known to escape
+    */
+   public EscapeField(int width, int height, byte kind, int maxIterations,
+         double farEnough) {
+      if (width <= 0 || height <= 0 ||
+            (long) width * height > Integer.MAX_VALUE ||
+            (kind != MODULUS && kind != DISTANCE) || maxIterations <= 0 ||
+            maxIterations > Short.MAX_VALUE) {
+         throw new IllegalArgumentException();
+      }
+      this.width = width;
+      this.height = height;
+      this.kind = kind;
+      this.maxIterations = maxIterations;
+      this.farEnough = farEnough;
+      this.iterations = new short[width * height];
+      this.values = new float[width * height];
+   }
+
+   public int width() {
+      return this.width;
+   }
+
+   public int height() {
+      return this.height;
+   }
+
+   /**
+    * @return  MODULUS or DISTANCE
+    */
+   public byte getKind() {
+      return this.kind;
+   }
+
+   public int getMaxIterations() {
+      return this.maxIterations;
+   }
+
+   public double getFarEnough() {
+      return this.farEnough;
+   }
+
+   /**
+    * @return  the number of iterations done for pixel (x, y)
+    */
+   public int getIterations(int x, int y) {
+      return this.iterations[y * this.width + x];
+   }
+
+   /**
+    * @return  the final |z| or the distance of pixel (x, y)
+    */
+   public float getValue(int x, int y) {
+      return this.values[y * this.width + x];
+   }
+
+   /**
+    * @return  true if pixel (x, y) escaped, which for a DISTANCE field means
+    *    it has a positive distance from the Julia set
+    */
+   public boolean escaped(int x, int y) {
+      float value = this.getValue(x, y);
+      if (this.kind == DISTANCE) {
+         return value > 0;
+      }
+      return !(value <= this.farEnough);
+   }
+
+   /**
+    * Sets what is known about pixel (x, y). Different threads may set
+    *    different pixels.
+    * @param value   the final |z| or the distance, which is stored as a float
+    *    on the same side of getFarEnough() (or of 0) as it is, so escaped
+    *    tells the same as the double did
+    */
+   public void set(int x, int y, int iterations, double value) {
+      float rounded = (float) value;
+      if (this.kind == MODULUS) {
+         //the closest float can be just across farEnough
+         if (value > this.farEnough && !(rounded > this.farEnough)) {
+            rounded = Math.nextUp(rounded);
+         } else if (value <= this.farEnough && rounded > this.farEnough) {
+            rounded = Math.nextDown(rounded);
+         }
+      } else if (value > 0 && rounded == 0) {
+         rounded = Float.MIN_VALUE;
+      }
+      this.iterations[y * this.width + x] = (short) iterations;
+      this.values[y * this.width + x] = rounded;
+   }
+
+   /**
+    * Saves this field to the given file
+    * @throws IOException if the file cannot be written
+    */
+   public void save(File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+         buffer.putInt(MAGIC).putInt(VERSION).putInt(this.width).
+               putInt(this.height).putInt(this.kind).
+               putInt(this.maxIterations).putDouble(this.farEnough);
+         int i = 0;
+         while (i < this.iterations.length) {
+            int n = Math.min(buffer.remaining() / 2, this.iterations.length - i);
+            buffer.asShortBuffer().put(this.iterations, i, n);
+            buffer.position(buffer.position() + 2 * n);
+            i += n;
+            drain(channel, buffer);
+         }
+         i = 0;
+         while (i < this.values.length) {
+            int n = Math.min(buffer.remaining() / 4, this.values.length - i);
+            buffer.asFloatBuffer().put(this.values, i, n);
+            buffer.position(buffer.position() + 4 * n);
+            i += n;
+            drain(channel, buffer);
+         }
+      }
+   }
+
+   private static void drain(FileChannel channel, ByteBuffer buffer)
+         throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+         channel.write(buffer);
+      }
+      buffer.clear();
+   }
+
+   /**
+    * Reads a field saved by save
+    * @throws IOException if the file cannot be read or is not a field
+    */
+   public static EscapeField load(File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+         fill(channel, buffer, HEADER_SIZE);
+         if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException(file + " is not a field file");
+         }
+         int width = buffer.getInt();
+         int height = buffer.getInt();
+         byte kind = (byte) buffer.getInt();
+         int maxIterations = buffer.getInt();
+         double farEnough = buffer.getDouble();
+         if (channel.size() != HEADER_SIZE + 6L * width * height) {
+            throw new IOException(file + " has the wrong length");
+         }
+         EscapeField field = new EscapeField(width, height, kind, maxIterations,
+               farEnough);
+         int i = 0;
+         while (i < field.iterations.length) {
+            int n = Math.min(BUFFER_SIZE / 2, field.iterations.length - i);
+            fill(channel, buffer, 2 * n);
+            buffer.asShortBuffer().get(field.iterations, i, n);
+            i += n;
+         }
+         i = 0;
+         while (i < field.values.length) {
+            int n = Math.min(BUFFER_SIZE / 4, field.values.length - i);
+            fill(channel, buffer, 4 * n);
+            buffer.asFloatBuffer().get(field.values, i, n);
+            i += n;
+         }
+         return field;
+      }
+   }
+
+   /**
+    * Reads exactly length bytes into buffer and flips it for reading
+    */
+   private static void fill(FileChannel channel, ByteBuffer buffer, int length)
+         throws IOException {
+      buffer.clear();
+      buffer.limit(length);
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer) < 0) {
+            throw new EOFException();
+         }
+      }
+      buffer.flip();
+   }
+}
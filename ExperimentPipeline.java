@@ -0,0 +1,222 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.*;
+
+/**
+ * Runs the steps of an experiment so that saving pictures does not hold up
+ *    the next render.
+ *
+ * Compute steps (choosing leja points, rendering) run one at a time on a
+ *    single thread, each once what it needs is done: each of them already
+ *    uses every core. Write steps (drawing previews, encoding PNGs, saving
+ *    leja points) run on a few writer threads as soon as what they need is
+ *    done, so the picture of one render is written while the next one
+ *    computes, and the wall time of an experiment comes down to about the
+ *    time of its compute steps.
+ *
+ * Every step is timed; toString lists them in the order they started, with
+ *    the thread they ran on, next to the wall time of the whole experiment.
+ *
+ * @author RyanPachauri
+ */
+public class ExperimentPipeline implements AutoCloseable {
+   private static final int DEFAULT_WRITERS = 2;
+
+   private final ExecutorService compute;
+   private final ExecutorService writers;
+   private final List<CompletableFuture<?>> pending;
+   private final List<Step> steps;
+   private final long startTime;
+   //the compute step submitted last, which the next one waits for
+   private CompletableFuture<?> lastCompute;
+
+   /**
+    * A step that has finished, in nanoseconds since the pipeline started
+    */
+   private static class Step {
+      final String name;
+      final String thread;
+      final long start;
+      final long end;
+
+      Step(String name, String thread, long start, long end) {
+         this.name = name;
+         this.thread = thread;
+         this.start = start;
+         this.end = end;
+      }
+   }
+
+   public ExperimentPipeline() {
+      this(DEFAULT_WRITERS);
+   }
+
+   /**
+    * @param numWriters the number of write steps that can run at once
+    */
+   public ExperimentPipeline(int numWriters) {
+      if (numWriters < 1) {
+         throw new IllegalArgumentException();
+      }
+      this.compute = Executors.newSingleThreadExecutor(threads("compute"));
+      this.writers = Executors.newFixedThreadPool(numWriters, threads("writer"));
+      this.pending = Collections.synchronizedList(
+            new ArrayList<CompletableFuture<?>>());
+      this.steps = Collections.synchronizedList(new ArrayList<Step>());
+      this.startTime = System.nanoTime();
+      this.lastCompute = CompletableFuture.completedFuture(null);
+   }
+
+   /**
+    * @return  a ThreadFactory of daemon threads named "name 1", "name 2", ...
+    */
+   private static ThreadFactory threads(String name) {
+      AtomicInteger count = new AtomicInteger();
+      return task -> {
+         Thread thread = new Thread(task, name + " " + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      };
+   }
+
+   /**
+    * Runs task on the compute thread once the compute steps submitted before
+    *    it are done
+    * @param name the name the step is reported with
+    */
+   public <T> CompletableFuture<T> compute(String name, Supplier<T> task) {
+      return this.compute(name, CompletableFuture.completedFuture(null),
+            ignored -> task.get());
+   }
+
+   /**
+    * Runs task on the result of input on the compute thread once input and
+    *    the compute steps submitted before it are done
+    */
+   public synchronized <T, R> CompletableFuture<R> compute(String name,
+         CompletableFuture<T> input, Function<T, R> task) {
+      //dependents of a future do not run in the order they were added, so
+      //every step waits for the one before it, whether or not it failed
+      CompletableFuture<Object> previous = this.lastCompute.handle(
+            (value, failure) -> null);
+      CompletableFuture<R> result = input.thenCombine(previous,
+            (value, ignored) -> value).thenApplyAsync(value ->
+            this.timed(name, () -> task.apply(value)).get(), this.compute);
+      this.lastCompute = result;
+      return this.track(result);
+   }
+
+   /**
+    * Runs task on a writer thread
+    */
+   public CompletableFuture<Void> write(String name, Runnable task) {
+      return this.track(CompletableFuture.supplyAsync(this.timed(name, () -> {
+         task.run();
+         return null;
+      }), this.writers));
+   }
+
+   /**
+    * Runs task on the result of input on a writer thread once input is done
+    */
+   public <T> CompletableFuture<Void> write(String name,
+         CompletableFuture<T> input, Consumer<T> task) {
+      return this.track(input.thenApplyAsync(value -> this.timed(name, () -> {
+         task.accept(value);
+         return (Void) null;
+      }).get(), this.writers));
+   }
+
+   private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+      this.pending.add(future);
+      return future;
+   }
+
+   /**
+    * @return  task, recording when it started and ended as a step
+    */
+   private <T> Supplier<T> timed(String name, Supplier<T> task) {
+      return () -> {
+         long start = System.nanoTime() - this.startTime;
+         try {
+            return task.get();
+         } finally {
+            this.steps.add(new Step(name, Thread.currentThread().getName(),
+                  start, System.nanoTime() - this.startTime));
+         }
+      };
+   }
+
+   /**
+    * Waits for every step submitted so far
+    * @throws IllegalStateException if a step failed
+    */
+   public void await() {
+      CompletableFuture<?>[] futures;
+      synchronized (this.pending) {
+         futures = this.pending.toArray(new CompletableFuture<?>[0]);
+      }
+      try {
+         CompletableFuture.allOf(futures).get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+         throw new IllegalStateException(e.getCause());
+      }
+   }
+
+   /**
+    * @return  the nanoseconds since this pipeline was created
+    */
+   public long getWallNanos() {
+      return System.nanoTime() - this.startTime;
+   }
+
+   /**
+    * @return  the nanoseconds the finished steps named name took together
+    */
+   public long getStepNanos(String name) {
+      long nanos = 0;
+      synchronized (this.steps) {
+         for (Step step : this.steps) {
+            if (step.name.equals(name)) {
+               nanos += step.end - step.start;
+            }
+         }
+      }
+      return nanos;
+   }
+
+   /**
+    * Waits for every step, then stops the threads of this pipeline
+    */
+   public void close() {
+      try {
+         this.await();
+      } finally {
+         this.compute.shutdown();
+         this.writers.shutdown();
+      }
+   }
+
+   public String toString() {
+      List<Step> finished;
+      synchronized (this.steps) {
+         finished = new ArrayList<Step>(this.steps);
+      }
+      finished.sort(Comparator.comparingLong(step -> step.start));
+      long total = 0;
+      StringBuilder result = new StringBuilder();
+      for (Step step : finished) {
+         total += step.end - step.start;
+         result.append(String.format(Locale.ROOT,
+               "%n   %9.3f s - %9.3f s  %-30s %s", step.start / 1e9,
+               step.end / 1e9, step.name, step.thread));
+      }
+      return String.format(Locale.ROOT,
+            "pipeline: %d steps taking %.3f s in %.3f s of wall time",
+            finished.size(), total / 1e9, this.getWallNanos() / 1e9) + result;
+   }
+}
@@ -0,0 +1,124 @@
+import java.awt.Color;
+import java.io.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Colors a saved EscapeField, which only takes seconds, instead of rendering
+ *    the Julia set again for every palette.
+ *
+ * Usage:
+ *    java FieldRecolorer render.field prefix
+ *    writes one PNG per coloring that fits the kind of field, named
+ *    prefix + " - " + coloring name + ".png"
+ *
+ * @author RyanPachauri
+ */
+public class FieldRecolorer {
+   //shades that alternate between iteration bands
+   private static final Color[] BANDS = {new Color(0, 0, 160),
+         new Color(40, 90, 220), new Color(120, 170, 255),
+         new Color(40, 90, 220)};
+
+   /**
+    * Gives the color of a pixel of an EscapeField
+    */
+   public interface Coloring {
+      /**
+       * @return  the color of pixel (x, y) of field as 0xRRGGBB
+       */
+      int getRGB(EscapeField field, int x, int y);
+   }
+
+   /**
+    * The colors the obvious method uses, so a MODULUS field computed with
+    *    JuliaSetFinder's NUM_ITERATIONS looks like the usual render
+    */
+   public static final Coloring OBVIOUS = (field, x, y) ->
+         (field.escaped(x, y) ? LejaPlotter.OUTSIDE_JULIA_SET :
+         LejaPlotter.INSIDE_JULIA_SET).getRGB() & 0xFFFFFF;
+
+   /**
+    * Escaping pixels are shaded by the number of iterations they took
+    */
+   public static final Coloring ITERATION_BANDS = (field, x, y) -> {
+      if (!field.escaped(x, y)) {
+         return LejaPlotter.INSIDE_JULIA_SET.getRGB() & 0xFFFFFF;
+      }
+      return BANDS[field.getIterations(x, y) % BANDS.length].getRGB() & 0xFFFFFF;
+   };
+
+   /**
+    * Escaping pixels get a hue from their fractional escape count, which
+    *    grows smoothly instead of in bands
+    */
+   public static final Coloring SMOOTH = (field, x, y) -> {
+      if (!field.escaped(x, y)) {
+         return 0;
+      }
+      double abs = field.getValue(x, y);
+      double smooth = field.getIterations(x, y);
+      if (abs > 1 && !Double.isInfinite(abs)) {
+         smooth -= Math.log(Math.log(abs) / Math.log(field.getFarEnough())) /
+               Math.log(2);
+      }
+      float hue = (float) (smooth / field.getMaxIterations());
+      return Color.HSBtoRGB(0.66f - 0.66f * Math.max(0, Math.min(1, hue)), 0.8f,
+            1.0f) & 0xFFFFFF;
+   };
+
+   /**
+    * Pixels get darker the closer they are to the Julia set
+    */
+   public static final Coloring DISTANCE_SHADING = (field, x, y) -> {
+      double distance = field.getValue(x, y);
+      if (!(distance > 0)) {
+         return 0;
+      }
+      //distances from 1e-6 to 1 are spread over the gray levels
+      double t = Math.max(0, Math.min(1, (Math.log10(distance) + 6) / 6));
+      int gray = (int) Math.round(255 * Math.sqrt(t));
+      return gray << 16 | gray << 8 | gray;
+   };
+
+   public static void main(String[] args) throws IOException {
+      if (args.length != 2) {
+         System.out.println("usage: java FieldRecolorer render.field prefix");
+         return;
+      }
+      long startTime = System.currentTimeMillis();
+      EscapeField field = EscapeField.load(new File(args[0]));
+      Map<String, Coloring> colorings = new LinkedHashMap<String, Coloring>();
+      if (field.getKind() == EscapeField.MODULUS) {
+         colorings.put("obvious", OBVIOUS);
+         colorings.put("bands", ITERATION_BANDS);
+         colorings.put("smooth", SMOOTH);
+      } else {
+         colorings.put("obvious", OBVIOUS);
+         colorings.put("distance", DISTANCE_SHADING);
+      }
+      for (Map.Entry<String, Coloring> entry : colorings.entrySet()) {
+         recolor(field, entry.getValue()).save(args[1] + " - " + entry.getKey() +
+               "." + ShapeCreator.IMAGE_SUFFIX);
+      }
+      System.out.println("recolored " + field.width() + " x " + field.height() +
+            " field " + colorings.size() + " ways in " +
+            (System.currentTimeMillis() - startTime) + " ms");
+   }
+
+   /**
+    * Colors every pixel of field, a row per task in parallel
+    * @return  Picture of field in the given coloring
+    */
+   public static Picture recolor(EscapeField field, Coloring coloring) {
+      int width = field.width();
+      Picture picture = new Picture(width, field.height());
+      int[] pixels = picture.getARGBPixels();
+      IntStream.range(0, field.height()).parallel().forEach(y -> {
+         for (int x = 0; x < width; x++) {
+            pixels[y * width + x] = coloring.getRGB(field, x, y);
+         }
+      });
+      return picture;
+   }
+}
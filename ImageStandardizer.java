@@ -10,7 +10,6 @@ public class ImageStandardizer {
    
    private static final String FILE_NAME = "fdh julia.png";
    private static final String BOX_FILE_NAME = "fdh box.png";
-   private static final int MAX_COLOR_RANGE = 255;
    
    public static final Color IN_IMAGE = Color.BLACK;
    public static final Color NOT_IN_IMAGE = Color.WHITE;
@@ -30,13 +29,9 @@ public class ImageStandardizer {
    public static void insertBox() {
       Picture imgJulia = new Picture(FILE_NAME);
       Picture imgBox = new Picture(BOX_FILE_NAME);
-      for (int x = 0; x < imgBox.width(); x++) {
-         for (int y = 0; y < imgBox.height(); y++) {
-            if (imgBox.get(x, y).equals(LejaPlotter.ZOOM_AREA)) {
-               imgJulia.set(x, y, LejaPlotter.ZOOM_AREA);
-            }
-         }
-      }
+      Compositor.stampOverlay(imgJulia.getARGBPixels(), imgJulia.width(),
+            imgJulia.height(), imgBox.getARGBPixels(), imgBox.width(),
+            imgBox.height(), LejaPlotter.ZOOM_AREA.getRGB() & 0xFFFFFF);
       imgJulia.save(FILE_NAME);
    }
    
@@ -45,28 +40,10 @@ public class ImageStandardizer {
     */
    public static void standardize() {
       Picture img = new Picture(FILE_NAME);
-      for (int x = 0; x < img.width(); x++) {
-         for (int y = 0; y < img.height(); y++) {
-            if (isCloseToWhite(img.get(x, y))) {
-               img.set(x, y, ImageStandardizer.NOT_IN_IMAGE);
-            } else {
-               img.set(x, y, ImageStandardizer.IN_IMAGE);
-            }
-         }
-      }
+      Compositor.threshold(img.getARGBPixels(), img.width(), img.height(),
+            ImageStandardizer.IN_IMAGE.getRGB() & 0xFFFFFF,
+            ImageStandardizer.NOT_IN_IMAGE.getRGB() & 0xFFFFFF);
       img.save(FILE_NAME);
    }
-   
-   /**
-    * @param c a Color object
-    * @return  true if the given Color object is closer to white than it is
-    *    to black
-    */
-   private static boolean isCloseToWhite(Color c) {
-      int red = c.getRed();
-      int green = c.getGreen();
-      int blue = c.getBlue();
-      return (red + green + blue) / 3 > MAX_COLOR_RANGE / 2;
-   }
 
 }
@@ -0,0 +1,138 @@
+import java.awt.Color;
+import java.awt.image.*;
+import java.io.*;
+
+/**
+ * A picture stored as one byte per pixel, each an index into
+ *    LejaPlotter.PALETTE, instead of one Color reference per pixel.
+ *
+ * Pixels are stored row by row. The raster is saved as an indexed-color PNG
+ *    straight from its bytes, and can be viewed as a BufferedImage that
+ *    shares them rather than copying them.
+ *
+ * @author RyanPachauri
+ */
+public class IndexedRaster {
+   private final int width;
+   private final int height;
+   private final byte[] pixels;
+
+   /**
+    * Initializes a raster where every pixel has index 0
+    * @param width   the width of the raster
+    * @param height  the height of the raster
+    */
+   public IndexedRaster(int width, int height) {
+      this(width, height, new byte[checkedSize(width, height)]);
+   }
+
+   /**
+    * @param width   the width of the raster
+    * @param height  the height of the raster
+    * @param pixels  the palette index of every pixel, row by row; this array
+    *                is used directly, not copied
+    */
+   public IndexedRaster(int width, int height, byte[] pixels) {
+      if (pixels.length != checkedSize(width, height)) {
+         throw new IllegalArgumentException();
+      }
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+   }
+
+   private static int checkedSize(int width, int height) {
+      if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException(width + " x " + height);
+      }
+      return width * height;
+   }
+
+   public int width() {
+      return this.width;
+   }
+
+   public int height() {
+      return this.height;
+   }
+
+   /**
+    * @return  the palette index of pixel (x, y)
+    */
+   public byte get(int x, int y) {
+      return this.pixels[y * this.width + x];
+   }
+
+   /**
+    * @param index   the palette index pixel (x, y) should have
+    */
+   public void set(int x, int y, byte index) {
+      this.pixels[y * this.width + x] = index;
+   }
+
+   /**
+    * @return  the backing array of this raster, row by row
+    */
+   public byte[] getPixels() {
+      return this.pixels;
+   }
+
+   /**
+    * @return  2D array of Color objects indexed by column and then row
+    */
+   public Color[][] toColors() {
+      Color[][] colors = new Color[this.width][this.height];
+      for (int y = 0; y < this.height; y++) {
+         for (int x = 0; x < this.width; x++) {
+            colors[x][y] = LejaPlotter.PALETTE[this.get(x, y)];
+         }
+      }
+      return colors;
+   }
+
+   /**
+    * @return  an indexed BufferedImage backed by the bytes of this raster, so
+    *    drawing on one changes the other
+    */
+   public BufferedImage toBufferedImage() {
+      Color[] palette = LejaPlotter.PALETTE;
+      byte[] reds = new byte[palette.length];
+      byte[] greens = new byte[palette.length];
+      byte[] blues = new byte[palette.length];
+      for (int i = 0; i < palette.length; i++) {
+         reds[i] = (byte) palette[i].getRed();
+         greens[i] = (byte) palette[i].getGreen();
+         blues[i] = (byte) palette[i].getBlue();
+      }
+      IndexColorModel model = new IndexColorModel(8, palette.length, reds,
+            greens, blues);
+      DataBufferByte buffer = new DataBufferByte(this.pixels, this.pixels.length);
+      WritableRaster raster = Raster.createInterleavedRaster(buffer, this.width,
+            this.height, this.width, 1, new int[] {0}, null);
+      return new BufferedImage(model, raster, false, null);
+   }
+
+   /**
+    * Saves this raster as an indexed-color PNG
+    * @param fileName   the name of the file, which should end in .png
+    */
+   public void save(String fileName) {
+      this.save(fileName, null);
+   }
+
+   /**
+    * Saves this raster as an indexed-color PNG with layer drawn over it. The
+    *    layer is drawn while the rows are compressed, and this raster is not
+    *    changed.
+    * @param fileName   the name of the file, which should end in .png
+    * @param layer   what to draw over this raster, or null
+    */
+   public void save(String fileName, Compositor.IndexLayer layer) {
+      try {
+         ParallelPngEncoder.writeIndexed(this.pixels, this.width, this.height,
+               LejaPlotter.PALETTE, layer, new File(fileName));
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+}
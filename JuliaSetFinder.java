@@ -1,24 +1,62 @@
 import java.awt.*;
+import java.io.*;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
- * Class that maps a 2D array of Complex numbers to a 2D array Color objects
- *    using a polynomial determined by a LejaPoints object.
+ * Class that maps a 2D array of Complex numbers, or the points of a Viewport,
+ *    to a 2D array Color objects using a polynomial determined by a
+ *    LejaPoints object.
  * 
  * @author RyanPachauri
  * @version 4/23/17
  */
 public class JuliaSetFinder {
    private LejaPoints lp;
+   //exactly one of allPoints and viewport is null
    private final Complex[][] allPoints;
+   //computes points as they are needed, and knows their exact bounds, which
+   //the double-double escape loop needs because the points are rounded
+   private final Viewport viewport;
+   private final int width;
+   private final int height;
+   private final boolean useDoubleDouble;
+   private TileCache cache;
+   //where finished tiles are kept until the render is done, or null
+   private File checkpointDirectory;
+   private RenderMetrics metrics;
+   //records the cost of every pixel while profiling, and is null otherwise
+   private volatile CostProfile profile;
  
    //increasing this makes fewer points in the Julia Set
    private static final double FAR_ENOUGH = 10.0;
    //increasing this makes fewer points in the Julia Set
-   private static final int NUM_ITERATIONS = 15;
-   //keeps track of how many columns are completed so user knows how far along
-   //they are in drawing the filled Julia set
-   private int track;
+   static final int NUM_ITERATIONS = 15;
+   //width and height of the tiles the Complex plane is rendered in
+   private static final int TILE_SIZE = 64;
+   //the most iterations distance estimation does for a point
+   private static final int DISTANCE_ITERATIONS = 200;
+   
+   /**
+    * Gives the palette index of the point at (x, y), counting the work it
+    *    took in scratch.tally
+    */
+   private interface Picker {
+      byte pick(int x, int y, Scratch scratch);
+   }
+   
+   /**
+    * Everything one thread needs to render a tile or a row without
+    *    allocating anything for each pixel
+    */
+   static class Scratch {
+      final RenderMetrics.Tally tally = new RenderMetrics.Tally();
+      //the real and imaginary part of the point being iterated
+      final double[] z = new double[2];
+      final DoubleDouble re = new DoubleDouble();
+      final DoubleDouble im = new DoubleDouble();
+      final LejaPoints.Workspace workspace = new LejaPoints.Workspace();
+   }
    
    /**
     * Initializes a JuliaSetFinder instance
@@ -30,40 +68,229 @@ public class JuliaSetFinder {
    public JuliaSetFinder(LejaPoints lp, Complex[][] points) {
       this.lp = lp;
       this.allPoints = points;
-      this.track = 0;
+      this.width = points.length;
+      this.height = points[0].length;
+      this.viewport = null;
+      this.useDoubleDouble = false;
+      this.cache = TileCache.shared();
+      this.metrics = RenderMetrics.shared().createChild();
+   }
+   
+   /**
+    * Initializes a JuliaSetFinder instance over the same points as
+    *    MultiShapeCreator.createComplexValues(double, double, double, int, int)
+    * 
+    * @param lp   a LejaPoints instance with a predefined polynomial
+    * @param leftBound  the real part of the leftmost column
+    * @param topBound   the imaginary part of the top row
+    * @param spacing    the distance between two neighbouring points
+    * @param width   the number of columns
+    * @param height  the number of rows
+    */
+   public JuliaSetFinder(LejaPoints lp, double leftBound, double topBound,
+         double spacing, int width, int height) {
+      this(lp, MultiShapeCreator.createViewport(leftBound, topBound, spacing,
+            width, height));
+   }
+   
+   /**
+    * Initializes a JuliaSetFinder instance over the points of a Viewport,
+    *    which are computed as they are needed, so plotBand only needs memory
+    *    for the band it renders.
+    * If the spacing is below MultiShapeCreator.DOUBLE_DOUBLE_SPACING, the
+    *    escape loop is evaluated in double-double precision.
+    * 
+    * @param lp   a LejaPoints instance with a predefined polynomial
+    * @param viewport   the points we want to map to Color objects
+    */
+   public JuliaSetFinder(LejaPoints lp, Viewport viewport) {
+      this.lp = lp;
+      this.allPoints = null;
+      this.viewport = viewport;
+      this.width = viewport.width();
+      this.height = viewport.height();
+      this.useDoubleDouble =
+            MultiShapeCreator.needsDoubleDouble(viewport.spacing());
+      this.cache = TileCache.shared();
+      this.metrics = RenderMetrics.shared().createChild();
+   }
+   
+   /**
+    * @return  true if this instance evaluates the polynomial in
+    *    double-double precision
+    */
+   public boolean usesDoubleDouble() {
+      return this.useDoubleDouble;
+   }
+   
+   /**
+    * @return  the number of columns this instance plots
+    */
+   public int getWidth() {
+      return this.width;
+   }
+   
+   /**
+    * @return  the number of rows this instance plots
+    */
+   public int getHeight() {
+      return this.height;
+   }
+   
+   /**
+    * @return  the point in column x and row y
+    */
+   private Complex getPoint(int x, int y) {
+      if (this.allPoints != null) {
+         return this.allPoints[x][y];
+      }
+      return this.viewport.getPoint(x, y);
    }
    
    /**
     * Determines the color using the obvious method
-    * @param z a Complex number in the Complex plane
+    * @param x the column of the point in the Complex plane
+    * @param y the row of the point in the Complex plane
+    * @param lejaPoints
     * @param originalShape
-    * @return a Color that corresponds to whether or not the Complex number
-    *    is in the Julia set
+    * @param scratch counts the iterations done for the point
+    * @return the index in LejaPlotter.PALETTE of the Color that corresponds to
+    *    whether or not the Complex number is in the Julia set
     */
-   private Color pickColor(Complex z, Set<Complex> originalShape) {
-      Set<Complex> lejaPoints = this.lp.getLejaPoints();
+   private byte pickColor(int x, int y, Set<Complex> lejaPoints,
+         Set<Complex> originalShape, Scratch scratch) {
+      Complex z = this.getPoint(x, y);
       if (lejaPoints.contains(z)) {
-         return LejaPlotter.LEJA_POINT;
+         scratch.tally.skip();
+         return LejaPlotter.LEJA_POINT_INDEX;
       } else if (originalShape.contains(z)) {
-         return LejaPlotter.ORIGINAL_SHAPE;
-      } else if (this.isFarFromJuliaSet(z)) {
-         return LejaPlotter.OUTSIDE_JULIA_SET;
+         scratch.tally.skip();
+         return LejaPlotter.ORIGINAL_SHAPE_INDEX;
+      }
+      return this.pickColor(x, y, escape(this.lp, z.re(), z.im(), scratch.z),
+            scratch);
+   }
+   
+   /**
+    * Same as pickColor(int, int, Set, Set, Scratch) for a Viewport, where
+    *    the points are looked up by pixel, so no Complex is made for a pixel
+    * @param lejaPixels the pixels of the leja points
+    * @param shapePixels   the pixels of the original shape
+    */
+   private byte pickColor(int x, int y, ShapeSet lejaPixels,
+         ShapeSet shapePixels, Scratch scratch) {
+      if (lejaPixels.contains(x, y)) {
+         scratch.tally.skip();
+         return LejaPlotter.LEJA_POINT_INDEX;
+      } else if (shapePixels.contains(x, y)) {
+         scratch.tally.skip();
+         return LejaPlotter.ORIGINAL_SHAPE_INDEX;
+      }
+      int iterations;
+      if (this.useDoubleDouble) {
+         //starts from the exact coordinates rather than the rounded ones
+         double spacing = this.viewport.spacing();
+         scratch.re.setProduct(x - this.viewport.originX(), spacing).
+               add(this.viewport.leftBound());
+         scratch.im.setProduct(-(y - this.viewport.originY()), spacing).
+               add(this.viewport.topBound());
+         iterations = escape(this.lp, scratch.re, scratch.im, scratch.workspace);
+      } else {
+         iterations = escape(this.lp, this.viewport.re(x), this.viewport.im(y),
+               scratch.z);
+      }
+      return this.pickColor(x, y, iterations, scratch);
+   }
+   
+   /**
+    * Counts the work done for the point at (x, y)
+    * @param iterations the number of iterations after which the point
+    *                   escaped, or NUM_ITERATIONS + 1 if it did not
+    * @return the index in LejaPlotter.PALETTE of the Color that corresponds to
+    *    whether or not the point is in the Julia set
+    */
+   private byte pickColor(int x, int y, int iterations, Scratch scratch) {
+      boolean escaped = iterations <= NUM_ITERATIONS;
+      scratch.tally.record(Math.min(iterations, NUM_ITERATIONS), escaped);
+      CostProfile profile = this.profile;
+      if (profile != null) {
+         profile.record(x, y, Math.min(iterations, NUM_ITERATIONS));
       }
-      return LejaPlotter.INSIDE_JULIA_SET;
+      if (escaped) {
+         return LejaPlotter.OUTSIDE_JULIA_SET_INDEX;
+      }
+      return LejaPlotter.INSIDE_JULIA_SET_INDEX;
    }
    
    /**
     * Determines the color using the distance estimation method
     * @param z a Complex number in the Complex plane
-    * @return a Color that corresponds to whether or not the Complex number
-    *    is in the Julia set
+    * @param scratch counts the iterations done for the point
+    * @return the index in LejaPlotter.PALETTE of the Color that corresponds to
+    *    whether or not the Complex number is in the Julia set
     */
-   private Color pickColor(Complex z) {
-      double distance = this.distanceFromJuliaSet(z);
+   private byte pickColor(Complex z, Scratch scratch) {
+      int[] count = new int[1];
+      double distance = this.distanceFromJuliaSet(z, count);
+      scratch.tally.record(count[0], distance > 0);
       if (distance > 0) {
-         return LejaPlotter.OUTSIDE_JULIA_SET;
+         return LejaPlotter.OUTSIDE_JULIA_SET_INDEX;
       }
-      return LejaPlotter.INSIDE_JULIA_SET;
+      return LejaPlotter.INSIDE_JULIA_SET_INDEX;
+   }
+   
+   /**
+    * @param cache   TileCache to look tiles up in before computing them, or
+    *                null to always compute them
+    */
+   public void setTileCache(TileCache cache) {
+      this.cache = cache;
+   }
+   
+   /**
+    * Keeps every finished tile of a render in a RenderCheckpoint in
+    *    directory, so a render that is cut short skips the tiles it finished
+    *    when it is run again with the same parameters. Delete the checkpoint
+    *    with RenderCheckpoint.delete once the picture is saved.
+    * @param directory  the directory of the checkpoint, or null to keep none
+    */
+   public void setCheckpointDirectory(File directory) {
+      this.checkpointDirectory = directory;
+   }
+   
+   /**
+    * @param metrics RenderMetrics to count the progress and work of renders
+    *                in instead of a child of RenderMetrics.shared()
+    */
+   public void setMetrics(RenderMetrics metrics) {
+      this.metrics = metrics;
+   }
+   
+   /**
+    * @return  the RenderMetrics renders of this instance are counted in
+    */
+   public RenderMetrics getMetrics() {
+      return this.metrics;
+   }
+   
+   /**
+    * Starts recording the evaluations of every pixel and the time of every
+    *    tile that the obvious method renders. While profiling, tiles are
+    *    always rendered rather than taken from the TileCache, so every pixel
+    *    is measured.
+    * @return  the CostProfile renders are recorded in from now on
+    */
+   public CostProfile startProfiling() {
+      this.profile = new CostProfile(this.width, this.height,
+            this.lp.getLejaPoints().size(), NUM_ITERATIONS, TILE_SIZE);
+      return this.profile;
+   }
+   
+   /**
+    * Stops recording renders in the CostProfile of startProfiling
+    */
+   public void stopProfiling() {
+      this.profile = null;
    }
    
    /**
@@ -72,22 +299,103 @@ public class JuliaSetFinder {
     * @param points  Complex numbers that should not be plotted
     */
    public Color[][] plotPointsExceptUsingObviousStream(Set<Complex> points) {
-      return Arrays.stream(this.allPoints).parallel().
-            map(zs -> this.mapComplexToColor(zs, points)).toArray(Color[][]::new);
+      return this.plotIndicesUsingObvious(points).toColors();
    }
    
    /**
-    * @param zs   1D array of Complex numbers
-    * @param points  Set of Complex numbers belonging to the original shape
-    * @return  1D array of Color objects
+    * Maps complex numbers in stored Complex plane to indices into
+    *    LejaPlotter.PALETTE using obvious method.
+    * @param points  Complex numbers that should not be plotted
+    * @return  IndexedRaster holding a palette index for every point
     */
-   private Color[] mapComplexToColor(Complex[] zs, Set<Complex> points) {
-      Color[] colors = new Color[zs.length];
-      for (int i = 0; i < zs.length; i++) {
-         colors[i] = this.pickColor(zs[i], points);
+   public IndexedRaster plotIndicesUsingObvious(Set<Complex> points) {
+      return new IndexedRaster(this.width, this.height,
+            this.plotBandUsingObvious(points, 0, this.height));
+   }
+   
+   /**
+    * Same as plotIndicesUsingObvious, but stops at the next tile once limit
+    *    is cancelled or its deadline passes
+    * @param points  Complex numbers that should not be plotted
+    * @param limit   RenderLimit to check before every tile
+    * @return  the tiles that were finished and which tiles those are
+    */
+   public PartialRender plotIndicesUsingObvious(Set<Complex> points,
+         RenderLimit limit) {
+      return this.plotRegionUsingObvious(points, 0, 0, this.width, this.height,
+            limit);
+   }
+   
+   /**
+    * Maps the rows top to top + rows - 1 of the stored Complex plane to
+    *    indices into LejaPlotter.PALETTE using obvious method. Tiles are shared
+    *    with plotIndicesUsingObvious through the TileCache.
+    * @param points  Complex numbers that should not be plotted
+    * @param top  the first row of the band
+    * @param rows the number of rows in the band
+    * @return  the palette indices of the band, row by row
+    */
+   public byte[] plotBandUsingObvious(Set<Complex> points, int top, int rows) {
+      return this.plotRows(getObviousMethod(points),
+            this.getObviousPicker(points), top, rows);
+   }
+   
+   /**
+    * @param points  Complex numbers that should not be plotted
+    * @return  the name of the obvious method for the cache key, which
+    *    includes the shape because it changes which pixels are drawn. The
+    *    shape is hashed the way LejaPoints.getFingerprint is, since two
+    *    shapes whose hashCodes collide would share tiles.
+    */
+   private static String getObviousMethod(Set<Complex> points) {
+      Complex[] sorted = points.toArray(new Complex[points.size()]);
+      Arrays.sort(sorted, Comparator.comparingDouble(Complex::re).
+            thenComparingDouble(Complex::im));
+      StringBuilder description = new StringBuilder();
+      for (Complex z : sorted) {
+         description.append(Double.toHexString(z.re())).append(' ');
+         description.append(Double.toHexString(z.im())).append(' ');
+      }
+      return "obvious " + points.size() + " " +
+            TileCache.hash(description.toString());
+   }
+   
+   private Picker getObviousPicker(Set<Complex> points) {
+      Set<Complex> lejaPoints = this.lp.getLejaPoints();
+      if (this.viewport == null) {
+         return (x, y, scratch) ->
+               this.pickColor(x, y, lejaPoints, points, scratch);
+      }
+      ShapeSet lejaPixels = this.toPixels(lejaPoints);
+      ShapeSet shapePixels = this.toPixels(points);
+      return (x, y, scratch) ->
+            this.pickColor(x, y, lejaPixels, shapePixels, scratch);
+   }
+   
+   /**
+    * @param points  Complex numbers
+    * @return  every pixel of the Viewport whose point is one of points
+    */
+   private ShapeSet toPixels(Set<Complex> points) {
+      ShapeSet pixels = new ShapeSet();
+      for (Complex z : points) {
+         int[] location = this.viewport.locate(z);
+         if (location == null) {
+            continue;
+         }
+         //rounding can give neighbouring pixels the same point
+         for (int x = location[0] - 1; x <= location[0] + 1; x++) {
+            for (int y = location[1] - 1; y <= location[1] + 1; y++) {
+               if (x >= 0 && x < this.width && y >= 0 && y < this.height &&
+                     this.viewport.getPoint(x, y).equals(z)) {
+                  pixels.add(x, y);
+               }
+            }
+         }
       }
-      System.out.println(track++);
-      return colors;
+      //sorted now, so the threads rendering tiles only ever read it
+      pixels.size();
+      return pixels;
    }
    
    /**
@@ -95,48 +403,457 @@ public class JuliaSetFinder {
     *    objects using distance estimation.
     */
    public Color[][] plotPointsExceptUsingDEStream() {
-      return Arrays.stream(this.allPoints).parallel().
-            map(zs -> this.mapComplexToColor(zs)).toArray(Color[][]::new);
+      return this.plotIndicesUsingDE().toColors();
+   }
+   
+   /**
+    * Maps complex numbers in stored Complex plane to indices into
+    *    LejaPlotter.PALETTE using distance estimation.
+    * @return  IndexedRaster holding a palette index for every point
+    */
+   public IndexedRaster plotIndicesUsingDE() {
+      return new IndexedRaster(this.width, this.height,
+            this.plotRows("distance estimation",
+            (x, y, scratch) -> this.pickColor(this.getPoint(x, y), scratch), 0,
+            this.height));
+   }
+   
+   /**
+    * Maps the pixels of the region with top left corner (left, top) to
+    *    indices into LejaPlotter.PALETTE using obvious method, so a render can
+    *    be split between processes (see TileJob). Tiles are shared with
+    *    plotIndicesUsingObvious through the TileCache.
+    * @param points  Complex numbers that should not be plotted
+    * @param left the first column of the region
+    * @param top  the first row of the region
+    * @param regionWidth   the number of columns in the region
+    * @param regionHeight  the number of rows in the region
+    * @return  the palette indices of the region, row by row
+    */
+   public byte[] plotRegionUsingObvious(Set<Complex> points, int left, int top,
+         int regionWidth, int regionHeight) {
+      return this.plotRegion(getObviousMethod(points),
+            this.getObviousPicker(points), left, top, regionWidth, regionHeight,
+            null, null);
+   }
+   
+   /**
+    * Same as plotRegionUsingObvious, but stops at the next tile once limit
+    *    is cancelled or its deadline passes
+    * @param limit   RenderLimit to check before every tile
+    * @return  the tiles of the region that were finished and which tiles
+    *    those are
+    */
+   public PartialRender plotRegionUsingObvious(Set<Complex> points, int left,
+         int top, int regionWidth, int regionHeight, RenderLimit limit) {
+      int tilesAcross = (left + regionWidth - 1) / TILE_SIZE - left / TILE_SIZE + 1;
+      int tilesDown = (top + regionHeight - 1) / TILE_SIZE - top / TILE_SIZE + 1;
+      boolean[] covered = new boolean[tilesAcross * tilesDown];
+      byte[] indices = this.plotRegion(getObviousMethod(points),
+            this.getObviousPicker(points), left, top, regionWidth, regionHeight,
+            limit, covered);
+      PartialRender render = new PartialRender(new IndexedRaster(regionWidth,
+            regionHeight, indices), TILE_SIZE, left % TILE_SIZE,
+            top % TILE_SIZE, covered, null);
+      //a limit that passed after the last tile started stopped nothing
+      return render.isComplete() ? render : new PartialRender(render.getImage(),
+            TILE_SIZE, left % TILE_SIZE, top % TILE_SIZE, covered,
+            limit.getReason());
    }
    
    /**
-    * @param zs   1D array of Complex numbers
-    * @return  1D array of Color objects
+    * Same as plotRegion for the rows top to top + rows - 1
     */
-   private Color[] mapComplexToColor(Complex[] zs) {
-      Color[] colors = new Color[zs.length];
-      for (int i = 0; i < zs.length; i++) {
-         colors[i] = this.pickColor(zs[i]);
+   private byte[] plotRows(String method, Picker picker, int top, int rows) {
+      return this.plotRegion(method, picker, 0, top, this.width, rows, null,
+            null);
+   }
+   
+   /**
+    * Renders a region of the stored Complex plane in TILE_SIZE x TILE_SIZE
+    *    tiles in parallel, taking tiles from the TileCache when it has them.
+    *    Tiles are aligned to the whole plane, so bands, regions and whole
+    *    renders share them.
+    * @param method  String naming the coloring method, for the cache key
+    * @param picker  gives the palette index of the point at (x, y)
+    * @param left the first column to render
+    * @param top  the first row to render
+    * @param columns the number of columns to render
+    * @param rows the number of rows to render
+    * @param limit   RenderLimit to check before every tile, or null
+    * @param covered set to true for every tile that is finished, row of
+    *                tiles by row of tiles, or null
+    * @return  the palette indices of the region, row by row, which are 0 in
+    *    tiles skipped because of limit
+    */
+   @SuppressWarnings("try")
+   private byte[] plotRegion(String method, Picker picker, int left, int top,
+         int columns, int rows, RenderLimit limit, boolean[] covered) {
+      if (left < 0 || columns <= 0 || left + columns > this.width ||
+            top < 0 || rows <= 0 || top + rows > this.height) {
+         throw new IllegalArgumentException();
       }
-      System.out.println(track++);
-      return colors;
+      byte[] indices = new byte[columns * rows];
+      int firstTileColumn = left / TILE_SIZE;
+      int tilesAcross = (left + columns - 1) / TILE_SIZE - firstTileColumn + 1;
+      int firstTileRow = top / TILE_SIZE;
+      int lastTileRow = (top + rows - 1) / TILE_SIZE;
+      int tilesDown = lastTileRow - firstTileRow + 1;
+      //whole tiles are rendered, even where they stick out of the region
+      this.metrics.expect((long) (Math.min(this.width, (firstTileColumn +
+            tilesAcross) * TILE_SIZE) - firstTileColumn * TILE_SIZE) *
+            (Math.min(this.height, (lastTileRow + 1) * TILE_SIZE) -
+            firstTileRow * TILE_SIZE));
+      try (RenderCheckpoint checkpoint = this.openCheckpoint(method);
+            RenderMetrics.Phase phase = this.metrics.phase(RenderMetrics.RENDERING)) {
+         IntStream.range(0, tilesAcross * tilesDown).parallel().forEach(t -> {
+            if (limit != null && limit.shouldStop()) {
+               return;
+            }
+            int tileLeft = (firstTileColumn + t % tilesAcross) * TILE_SIZE;
+            int tileTop = (firstTileRow + t / tilesAcross) * TILE_SIZE;
+            int tileWidth = Math.min(TILE_SIZE, this.width - tileLeft);
+            int tileHeight = Math.min(TILE_SIZE, this.height - tileTop);
+            byte[] tile = this.getTile(method, tileLeft, tileTop, tileWidth,
+                  tileHeight, picker, checkpoint);
+            //copy only the part of the tile that was asked for
+            int fromX = Math.max(left, tileLeft);
+            int toX = Math.min(left + columns, tileLeft + tileWidth);
+            int from = Math.max(top, tileTop);
+            int to = Math.min(top + rows, tileTop + tileHeight);
+            for (int y = from; y < to; y++) {
+               System.arraycopy(tile, (y - tileTop) * tileWidth + fromX - tileLeft,
+                     indices, (y - top) * columns + fromX - left, toX - fromX);
+            }
+            if (covered != null) {
+               covered[t] = true;
+            }
+         });
+      }
+      this.metrics.report();
+      return indices;
    }
    
    /**
-    * @param z a Complex number
-    * @return  true if the Complex number is not in the Julia Set;
-    *    false if it is likely not to be in the Julia Set
+    * Maps complex numbers in stored Complex plane to indices into
+    *    LejaPlotter.PALETTE using obvious method, writing each tile into the
+    *    given MappedRaster as soon as it is rendered, so no more than a few
+    *    tiles are ever on the heap.
+    * @param points  Complex numbers that should not be plotted
+    * @param target  MappedRaster with the same width and height as this
+    *                instance
+    */
+   @SuppressWarnings("try")
+   public void plotIntoUsingObvious(Set<Complex> points, MappedRaster target) {
+      if (target.width() != this.width || target.height() != this.height) {
+         throw new IllegalArgumentException();
+      }
+      String method = getObviousMethod(points);
+      Picker picker = this.getObviousPicker(points);
+      int tilesAcross = (this.width + TILE_SIZE - 1) / TILE_SIZE;
+      int tilesDown = (this.height + TILE_SIZE - 1) / TILE_SIZE;
+      this.metrics.expect((long) this.width * this.height);
+      try (RenderCheckpoint checkpoint = this.openCheckpoint(method);
+            RenderMetrics.Phase phase = this.metrics.phase(RenderMetrics.RENDERING)) {
+         IntStream.range(0, tilesAcross * tilesDown).parallel().forEach(t -> {
+            int left = t % tilesAcross * TILE_SIZE;
+            int top = t / tilesAcross * TILE_SIZE;
+            int tileWidth = Math.min(TILE_SIZE, this.width - left);
+            int tileHeight = Math.min(TILE_SIZE, this.height - top);
+            //tiles never overlap, so they can be written without locking
+            target.writeTile(left, top, tileWidth, tileHeight, this.getTile(
+                  method, left, top, tileWidth, tileHeight, picker, checkpoint));
+         });
+      }
+      this.metrics.report();
+   }
+
+   /**
+    * Records, for every point of the stored Complex plane, how many
+    *    iterations it took to escape and its final |z|, so the render can be
+    *    colored in other ways later (see FieldRecolorer).
+    * With maxIterations equal to NUM_ITERATIONS, the pixels that escape are
+    *    exactly the ones the obvious method colors OUTSIDE_JULIA_SET.
+    * @param maxIterations the most iterations to do for a point
+    * @return  EscapeField of kind MODULUS
+    */
+   @SuppressWarnings("try")
+   public EscapeField computeEscapeField(int maxIterations) {
+      EscapeField field = new EscapeField(this.width, this.height,
+            EscapeField.MODULUS, maxIterations, FAR_ENOUGH);
+      this.metrics.expect((long) this.width * this.height);
+      try (RenderMetrics.Phase phase = this.metrics.phase(RenderMetrics.RENDERING)) {
+         IntStream.range(0, this.height).parallel().forEach(y -> {
+            Scratch scratch = new Scratch();
+            for (int x = 0; x < this.width; x++) {
+               this.escape(x, y, maxIterations, field, scratch);
+            }
+            this.metrics.add(scratch.tally, 0, y);
+         });
+      }
+      this.metrics.report();
+      return field;
+   }
+
+   /**
+    * @return  EscapeField of kind DISTANCE, holding distanceFromJuliaSet of
+    *    every point and the iterations it took
+    */
+   @SuppressWarnings("try")
+   public EscapeField computeDistanceField() {
+      EscapeField field = new EscapeField(this.width, this.height,
+            EscapeField.DISTANCE, DISTANCE_ITERATIONS, FAR_ENOUGH);
+      this.metrics.expect((long) this.width * this.height);
+      try (RenderMetrics.Phase phase = this.metrics.phase(RenderMetrics.RENDERING)) {
+         IntStream.range(0, this.height).parallel().forEach(y -> {
+            RenderMetrics.Tally tally = new RenderMetrics.Tally();
+            int[] count = new int[1];
+            for (int x = 0; x < this.width; x++) {
+               double distance = this.distanceFromJuliaSet(this.getPoint(x, y),
+                     count);
+               field.set(x, y, count[0], distance);
+               tally.record(count[0], distance > 0);
+            }
+            this.metrics.add(tally, 0, y);
+         });
+      }
+      this.metrics.report();
+      return field;
+   }
+
+   /**
+    * Iterates the point at (x, y) like iterationsToEscape does, and stores the
+    *    number of iterations and the final |z| in field
+    */
+   private void escape(int x, int y, int maxIterations, EscapeField field,
+         Scratch scratch) {
+      double abs = 0;
+      int i = 0;
+      if (this.useDoubleDouble) {
+         double spacing = this.viewport.spacing();
+         DoubleDouble re = scratch.re.setProduct(
+               x - this.viewport.originX(), spacing).
+               add(this.viewport.leftBound());
+         DoubleDouble im = scratch.im.setProduct(
+               -(y - this.viewport.originY()), spacing).
+               add(this.viewport.topBound());
+         while (i < maxIterations) {
+            this.lp.polynomial(re, im, scratch.workspace);
+            i++;
+            abs = Math.hypot(re.hi(), im.hi());
+            if (abs > FAR_ENOUGH || Double.isNaN(abs)) {
+               break;
+            }
+         }
+      } else {
+         double[] z = scratch.z;
+         if (this.viewport != null) {
+            z[0] = this.viewport.re(x);
+            z[1] = this.viewport.im(y);
+         } else {
+            z[0] = this.allPoints[x][y].re();
+            z[1] = this.allPoints[x][y].im();
+         }
+         while (i < maxIterations) {
+            this.lp.polynomial(z);
+            i++;
+            abs = Math.hypot(z[0], z[1]);
+            if (abs > FAR_ENOUGH || Double.isNaN(abs)) {
+               break;
+            }
+         }
+      }
+      field.set(x, y, i, abs);
+      scratch.tally.record(i, abs > FAR_ENOUGH || Double.isNaN(abs));
+   }
+
+   /**
+    * @param checkpoint where finished tiles are kept, or null
+    * @return  the palette indices of the given tile, row by row
+    */
+   private byte[] getTile(String method, int left, int top, int tileWidth,
+         int tileHeight, Picker picker, RenderCheckpoint checkpoint) {
+      if (checkpoint == null) {
+         return this.getTile(method, left, top, tileWidth, tileHeight, picker);
+      }
+      //while profiling, every tile is rendered so every pixel is measured
+      if (this.profile == null && checkpoint.isDone(left, top)) {
+         byte[] tile = checkpoint.readTile(left, top, tileWidth, tileHeight);
+         this.metrics.addCachedTile(left, top, tile.length);
+         return tile;
+      }
+      byte[] tile = this.getTile(method, left, top, tileWidth, tileHeight,
+            picker);
+      checkpoint.writeTile(left, top, tileWidth, tileHeight, tile);
+      return tile;
+   }
+   
+   /**
+    * @return  the palette indices of the given tile, row by row, from the
+    *    TileCache or rendered
+    */
+   private byte[] getTile(String method, int left, int top, int tileWidth,
+         int tileHeight, Picker picker) {
+      CostProfile profile = this.profile;
+      TileCache cache = this.cache;
+      String key = null;
+      if (cache != null && profile == null) {
+         key = this.getTileKey(method, left, top, tileWidth, tileHeight);
+         byte[] tile = cache.get(key);
+         if (tile != null) {
+            this.metrics.addCachedTile(left, top, tile.length);
+            return tile;
+         }
+      }
+      byte[] tile = new byte[tileWidth * tileHeight];
+      Scratch scratch = new Scratch();
+      long start = profile == null ? 0 : CostProfile.threadTime();
+      for (int y = 0; y < tileHeight; y++) {
+         for (int x = 0; x < tileWidth; x++) {
+            tile[y * tileWidth + x] = picker.pick(left + x, top + y, scratch);
+         }
+      }
+      if (profile != null) {
+         profile.recordTile(left, top, CostProfile.threadTime() - start);
+      }
+      this.metrics.add(scratch.tally, left, top);
+      if (key != null) {
+         cache.put(key, tile);
+      }
+      return tile;
+   }
+   
+   /**
+    * @param method  String naming the coloring method
+    * @return  the checkpoint of a render of the whole plane with method, or
+    *    null if this instance keeps none
+    */
+   private RenderCheckpoint openCheckpoint(String method) {
+      if (this.checkpointDirectory == null) {
+         return null;
+      }
+      try {
+         return RenderCheckpoint.open(this.checkpointDirectory,
+               this.getTileKey(method, 0, 0, this.width, this.height),
+               this.width, this.height, TILE_SIZE);
+      } catch (IOException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+   
+   /**
+    * A tile is identified by the polynomial, the escape constants, the
+    *    coloring method and the exact values of its corner points. The exact
+    *    bounds and spacing are added when they are known, since rounded grids
+    *    can share corners with grids of a slightly different spacing.
+    * @return  the key of the given tile in a TileCache
     */
-   private boolean isFarFromJuliaSet(Complex z) {
+   private String getTileKey(String method, int left, int top, int tileWidth,
+         int tileHeight) {
+      Complex topLeft = this.getPoint(left, top);
+      Complex bottomRight =
+            this.getPoint(left + tileWidth - 1, top + tileHeight - 1);
+      return this.lp.getFingerprint() + " " + FAR_ENOUGH + " " + NUM_ITERATIONS +
+            " " + method + " " + tileWidth + "x" + tileHeight + " " +
+            Double.toHexString(topLeft.re()) + " " +
+            Double.toHexString(topLeft.im()) + " " +
+            Double.toHexString(bottomRight.re()) + " " +
+            Double.toHexString(bottomRight.im()) + " " +
+            this.getExactBounds(left, top) + " " + this.useDoubleDouble;
+   }
+   
+   /**
+    * @return  the unrounded coordinates of the point in column x and row y and
+    *    the spacing, or an empty String if this instance has no Viewport
+    */
+   private String getExactBounds(int x, int y) {
+      if (this.viewport == null) {
+         return "";
+      }
+      double spacing = this.viewport.spacing();
+      return Double.toHexString(this.viewport.leftBound() +
+            (x - this.viewport.originX()) * spacing) + " " +
+            Double.toHexString(this.viewport.topBound() -
+            (y - this.viewport.originY()) * spacing) + " " +
+            Double.toHexString(spacing);
+   }
+   
+   /**
+    * Iterates re + im i without allocating anything
+    * @param lp   a LejaPoints instance with a predefined polynomial
+    * @param z    where the point is iterated; overwritten
+    * @return  the number of iterations after which the point got far enough
+    *    from 0 that it is not in the Julia Set, or NUM_ITERATIONS + 1 if it
+    *    never did and is likely to be in the Julia Set
+    */
+   private static int escape(LejaPoints lp, double re, double im, double[] z) {
+      z[0] = re;
+      z[1] = im;
       for (int i = 0; i < NUM_ITERATIONS; i++) {
-         z = this.lp.polynomial(z);
-         if (z.abs() > FAR_ENOUGH || Double.isNaN(z.abs())) {
-            return true;
+         lp.polynomial(z);
+         double abs = Math.hypot(z[0], z[1]);
+         if (abs > FAR_ENOUGH || Double.isNaN(abs)) {
+            return i + 1;
          }
       }
-      return false;
+      return NUM_ITERATIONS + 1;
+   }
+   
+   /**
+    * Double-double version of escape(LejaPoints, double, double, double[])
+    * @param re   the real part of the point; overwritten
+    * @param im   the imaginary part of the point; overwritten
+    * @param workspace  where the polynomial is evaluated
+    * @return  the number of iterations after which the point escaped, or
+    *    NUM_ITERATIONS + 1 if it did not
+    */
+   private static int escape(LejaPoints lp, DoubleDouble re, DoubleDouble im,
+         LejaPoints.Workspace workspace) {
+      for (int i = 0; i < NUM_ITERATIONS; i++) {
+         lp.polynomial(re, im, workspace);
+         double abs = Math.hypot(re.hi(), im.hi());
+         if (abs > FAR_ENOUGH || Double.isNaN(abs)) {
+            return i + 1;
+         }
+      }
+      return NUM_ITERATIONS + 1;
+   }
+   
+   /**
+    * Iterates originRe + dx * spacing + (originIm - dy * spacing)i without
+    *    rounding its coordinates, in double-double precision when the
+    *    spacing calls for it, and without allocating anything
+    * @param lp   a LejaPoints instance with a predefined polynomial
+    * @param originRe   the real part of the point at (0, 0)
+    * @param originIm   the imaginary part of the point at (0, 0)
+    * @param dx   the number of columns right of the origin
+    * @param dy   the number of rows below the origin
+    * @param spacing    the distance between two neighbouring points
+    * @param scratch where the point is iterated; its tally is not touched
+    * @return  the number of iterations after which the point escaped, or
+    *    NUM_ITERATIONS + 1 if it did not and is likely to be in the Julia Set
+    */
+   static int iterationsToEscape(LejaPoints lp, double originRe,
+         double originIm, int dx, int dy, double spacing, Scratch scratch) {
+      if (!MultiShapeCreator.needsDoubleDouble(spacing)) {
+         return escape(lp, originRe + dx * spacing, originIm - dy * spacing,
+               scratch.z);
+      }
+      scratch.re.setProduct(dx, spacing).add(originRe);
+      scratch.im.setProduct(-dy, spacing).add(originIm);
+      return escape(lp, scratch.re, scratch.im, scratch.workspace);
    }
    
    /**
-    * 
     * @param z a Complex number
+    * @param count   count[0] is set to the number of iterations done
     * @return  the distance z is from the Julia set
     */
-   private double distanceFromJuliaSet(Complex z) {
+   private double distanceFromJuliaSet(Complex z, int[] count) {
       Complex dz = new Complex(1, 0);
       int cnt = 1;
       if (z.abs() < 10) {
-         while (cnt < 200) {
+         while (cnt < DISTANCE_ITERATIONS) {
             dz = new Complex(2, 0).times(z).times(dz);
             z = this.lp.polynomial(z);
             if (z.abs() > 10 || Double.isNaN(z.abs())) {
@@ -146,6 +863,7 @@ public class JuliaSetFinder {
          }
       }
       double distance = z.abs() * Math.log(z.abs()) / dz.abs();
+      count[0] = cnt;
       return distance;
    }
    
@@ -157,19 +875,21 @@ public class JuliaSetFinder {
     *       the first int represents the x coordinate and
     *       the second int represents the y coordinate;
     *    otherwise, null
+    *    With a Viewport, this is the exact pixel of z; with a 2D array of
+    *    Complex numbers it is only an estimate.
     */
    public int[] findApproximateLocation(Complex z) {
-      Complex topLeft = this.allPoints[0][0];
+      if (this.viewport != null) {
+         return this.viewport.locate(z);
+      }
+      Complex topLeft = this.getPoint(0, 0);
       double leftRe = topLeft.re();
       double topIm = topLeft.im();
-      Complex bottomRight = this.allPoints[this.allPoints.length - 1]
-            [this.allPoints[0].length - 1];
+      Complex bottomRight = this.getPoint(this.width - 1, this.height - 1);
       double rightRe = bottomRight.re();
       double bottomIm = bottomRight.im();
-      int x = (int) ((z.re() - leftRe) / (rightRe - leftRe) *
-            this.allPoints.length);
-      int y = (int) ((topIm - z.im()) / (topIm - bottomIm) *
-            this.allPoints[0].length);
+      int x = (int) ((z.re() - leftRe) / (rightRe - leftRe) * this.width);
+      int y = (int) ((topIm - z.im()) / (topIm - bottomIm) * this.height);
       return new int[] {x,y};
    }
 }
\ No newline at end of file
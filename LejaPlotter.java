@@ -1,6 +1,8 @@
 import java.awt.*;
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 /**
  * This class is the driver program for plotting Julia Sets.
@@ -22,6 +24,8 @@ import java.io.*;
  */
 public class LejaPlotter {
    public static final String LEJA_POINTS_SUFFIX = ".txt";
+   //rows rendered at a time by drawSmallerRangeStreaming
+   private static final int BAND_HEIGHT = 256;
    
    public static final Color OUTSIDE_JULIA_SET = Color.BLUE;
    public static final Color INSIDE_JULIA_SET = Color.RED;
@@ -30,17 +34,33 @@ public class LejaPlotter {
    public static final Color AXIS_POINT = Color.ORANGE;
    public static final Color ZOOM_AREA = Color.GREEN;
    
+   //every color a render can contain; rendered tiles hold indices into this
+   public static final Color[] PALETTE = {OUTSIDE_JULIA_SET, INSIDE_JULIA_SET,
+         ORIGINAL_SHAPE, LEJA_POINT, AXIS_POINT, ZOOM_AREA};
+   public static final byte OUTSIDE_JULIA_SET_INDEX = 0;
+   public static final byte INSIDE_JULIA_SET_INDEX = 1;
+   public static final byte ORIGINAL_SHAPE_INDEX = 2;
+   public static final byte LEJA_POINT_INDEX = 3;
+   public static final byte AXIS_POINT_INDEX = 4;
+   public static final byte ZOOM_AREA_INDEX = 5;
+   
+   @SuppressWarnings("try")
    public static void main(String[] args) {
       int size = 1000;
       int n = 2000;
       double s = 1.0 / n;
       String directory = "Shapes of Julia Sets/";
+      //tiles of earlier runs of the same experiment are not rendered again
+      if (TileCache.getConfiguredDirectory() == null) {
+         System.setProperty(TileCache.DIRECTORY_PROPERTY,
+               directory + "tile cache");
+      }
       String experiment = "fdh changing_n/";
       String fileNamePrefix = "Fish Diamond Heart";
-      Complex[][] allPoints = MultiShapeCreator.getHeartDiamondFishComplexValues(size);
-      Set<Complex> originalShape = getShape(MultiShapeCreator.getHeartDiamondFish(size), allPoints);
-      String pictureInfo =  " - " + allPoints.length + " x " +
-            allPoints[0].length + " - " + n + " leja points out of " +
+      Viewport viewport = MultiShapeCreator.getHeartDiamondFishViewport(size);
+      Set<Complex> originalShape = getShape(MultiShapeCreator.getHeartDiamondFish(size), viewport);
+      String pictureInfo =  " - " + viewport.width() + " x " +
+            viewport.height() + " - " + n + " leja points out of " +
             originalShape.size() + " - s = 1 ÷ " + n + " - ";
       String fileName = directory + experiment + fileNamePrefix + pictureInfo;
       
@@ -48,15 +68,41 @@ public class LejaPlotter {
       int rightX = size * 3 / 2 - size / 11;
       int topY = size + size / 8 + size / 64;
       int bottomY = size + size / 8 + size / 32;
-      LejaPlotter.drawInitialShapeWithZoomArea(fileName, originalShape, allPoints,
-            leftX, rightX, topY, bottomY);
-      LejaPlotter.drawInitialShape(fileName, originalShape, allPoints);
-      LejaPoints lp = new LejaPoints(originalShape, n, s);
-      LejaPlotter.saveLejas(fileName, lp);
-      JuliaSetFinder jsf = new JuliaSetFinder(lp, allPoints);
-      LejaPlotter.drawInitialJuliaSet(fileName, jsf, originalShape);
       int zoom = 100;
-      LejaPlotter.drawSmallerRange(fileName, allPoints, leftX, rightX, topY, bottomY, zoom, lp);
+      //previews and pictures are written while the next step computes
+      try (ExperimentPipeline pipeline = new ExperimentPipeline()) {
+         //both previews are saved under the same name, so they stay in order
+         pipeline.write("shape previews", () -> {
+            LejaPlotter.drawInitialShapeWithZoomArea(fileName, originalShape,
+                  viewport, leftX, rightX, topY, bottomY);
+            LejaPlotter.drawInitialShape(fileName, originalShape, viewport);
+         });
+         //LejaPoints removes its first point from the set it is given, which
+         //the previews are still reading
+         CompletableFuture<LejaPoints> lejas = pipeline.compute(
+               RenderMetrics.LEJA_SELECTION, () -> {
+            try (RenderMetrics.Phase phase =
+                  RenderMetrics.shared().phase(RenderMetrics.LEJA_SELECTION)) {
+               return new LejaPoints(new HashSet<Complex>(originalShape), n, s);
+            }
+         });
+         pipeline.write("saving leja points", lejas,
+               lp -> LejaPlotter.saveLejas(fileName, lp));
+         CompletableFuture<TimedRender> initial = pipeline.compute(
+               "initial render", lejas, lp -> LejaPlotter.render(
+               new JuliaSetFinder(lp, viewport), originalShape));
+         pipeline.write("initial encode", initial,
+               render -> LejaPlotter.saveInitialJuliaSet(fileName, render));
+         CompletableFuture<TimedRender> zoomed = pipeline.compute(
+               "zoom render", lejas, lp -> LejaPlotter.renderSmallerRange(
+               fileName, viewport, leftX, rightX, topY, bottomY, zoom, lp));
+         pipeline.write("zoom encode", zoomed,
+               render -> LejaPlotter.saveSmallerRange(fileName, zoom, render));
+         pipeline.await();
+         System.out.println(pipeline);
+      }
+      System.out.println(TileCache.shared());
+      System.out.println(RenderMetrics.shared());
       System.out.println("All experiments complete!");
    }
    
@@ -68,29 +114,174 @@ public class LejaPlotter {
     */
    public static void drawInitialJuliaSet(String fileName, JuliaSetFinder jsf,
          Set<Complex> originalShape) {
+      LejaPlotter.saveInitialJuliaSet(fileName,
+            LejaPlotter.render(jsf, originalShape));
+   }
+
+   /**
+    * Same as drawInitialJuliaSet, but stops at the next tile once limit is
+    *    cancelled or its deadline passes. A render that was stopped is still
+    *    saved, with the pixels it did not reach in ORIGINAL_SHAPE and how
+    *    much of it was rendered in its name.
+    * @param fileName String to save the Picture to
+    * @param jsf  JuliaSetFinder object used to plot
+    * @param originalShape
+    * @param limit   RenderLimit to check before every tile
+    * @return  the render, with which of its tiles were finished
+    */
+   @SuppressWarnings("try")
+   public static PartialRender drawInitialJuliaSet(String fileName,
+         JuliaSetFinder jsf, Set<Complex> originalShape, RenderLimit limit) {
+      long startTime = System.currentTimeMillis();
+      PartialRender render = jsf.plotIndicesUsingObvious(originalShape, limit);
+      long endTime = System.currentTimeMillis();
+      String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
+      try (RenderMetrics.Phase phase =
+            jsf.getMetrics().phase(RenderMetrics.ENCODING)) {
+         render.save(fileName + elapsedTime + (render.isComplete() ? "" :
+               String.format(Locale.ROOT, " - partial %.1f%%",
+               100 * render.getCoverage())) + "." + ShapeCreator.IMAGE_SUFFIX);
+      }
+      return render;
+   }
+
+   /**
+    * A finished render, with how long it took
+    */
+   private static class TimedRender {
+      final JuliaSetFinder jsf;
+      final IndexedRaster img;
+      final String elapsedTime;
+
+      TimedRender(JuliaSetFinder jsf, IndexedRaster img, String elapsedTime) {
+         this.jsf = jsf;
+         this.img = img;
+         this.elapsedTime = elapsedTime;
+      }
+
+      /**
+       * Saves img, timing it as the ENCODING phase of the metrics of jsf
+       */
+      @SuppressWarnings("try")
+      void save(String fileName) {
+         try (RenderMetrics.Phase phase =
+               this.jsf.getMetrics().phase(RenderMetrics.ENCODING)) {
+            this.img.save(fileName);
+         }
+      }
+   }
+
+   /**
+    * @param jsf  JuliaSetFinder object used to plot
+    * @param originalShape
+    * @return  the filled Julia set of jsf and how long it took to plot
+    */
+   private static TimedRender render(JuliaSetFinder jsf,
+         Set<Complex> originalShape) {
+      long startTime = System.currentTimeMillis();
+      IndexedRaster img = jsf.plotIndicesUsingObvious(originalShape);
+      long endTime = System.currentTimeMillis();
+      return new TimedRender(jsf, img,
+            LejaPlotter.convertElapsedTime(endTime - startTime));
+   }
+
+   /**
+    * Saves the picture drawInitialJuliaSet plots
+    * @param fileName String to save the Picture to
+    */
+   private static void saveInitialJuliaSet(String fileName, TimedRender render) {
+      render.save(fileName + render.elapsedTime + "." + ShapeCreator.IMAGE_SUFFIX);
+   }
+
+   /**
+    * Same as drawInitialJuliaSet, but also saves heatmaps of how many times
+    *    the polynomial was evaluated for every pixel and how long every tile
+    *    took, and statistics about them, next to the picture
+    * @param fileName String to save the Picture to
+    * @param jsf  JuliaSetFinder object used to plot
+    * @param originalShape
+    */
+   public static void drawInitialJuliaSetProfiled(String fileName,
+         JuliaSetFinder jsf, Set<Complex> originalShape) {
+      CostProfile profile = jsf.startProfiling();
       long startTime = System.currentTimeMillis();
-      Color[][] colors = jsf.plotPointsExceptUsingObviousStream(originalShape);
+      IndexedRaster img;
+      try {
+         img = jsf.plotIndicesUsingObvious(originalShape);
+      } finally {
+         jsf.stopProfiling();
+      }
       long endTime = System.currentTimeMillis();
       String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
-      Picture img = LejaPlotter.convertColorsToPicture(colors);
       img.save(fileName + elapsedTime + "." + ShapeCreator.IMAGE_SUFFIX);
+      try {
+         profile.save(fileName + elapsedTime);
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
    }
-   
+
    /**
-    * @param points  a Set containing int[] each of length 2 where:
-    *       the first int represents the x coordinate and
-    *       the second int represents the y coordinate
-    * @param allPoints all the points
-    * @return  Set of Complex numbers from originalPoints that correspond to
-    *             the coordinates in points
+    * Plots a filled Julia set with the original shape and the zoom area drawn
+    *    on top. The shape is not looked up for every point while rendering;
+    *    instead the shape and the box are drawn onto the rows as the PNG is
+    *    written, so no separate pass (or ImageStandardizer.insertBox) is needed.
+    * @param fileName String to save the Picture to
+    * @param jsf  JuliaSetFinder object used to plot
+    * @param shape   the points of the original shape
+    * @param leftX
+    * @param rightX
+    * @param topY
+    * @param bottomY
     */
-   private static Set<Complex> getShape(Set<int[]> points, Complex[][]
-         allPoints) {
-      Set<Complex> complexNumbers = new HashSet<Complex>();
-      for (int[] point : points) {
-         complexNumbers.add(allPoints[point[0]][point[1]]);
+   @SuppressWarnings("try")
+   public static void drawInitialJuliaSetWithZoomArea(String fileName,
+         JuliaSetFinder jsf, ShapeSet shape, int leftX, int rightX, int topY,
+         int bottomY) {
+      long startTime = System.currentTimeMillis();
+      IndexedRaster img = jsf.plotIndicesUsingObvious(new HashSet<Complex>());
+      long endTime = System.currentTimeMillis();
+      String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
+      //leja points are part of the shape, but stay visible on top of it
+      try (RenderMetrics.Phase phase =
+            jsf.getMetrics().phase(RenderMetrics.ENCODING)) {
+         img.save(fileName + elapsedTime + " - zoom area." +
+               ShapeCreator.IMAGE_SUFFIX, Compositor.layers(
+               Compositor.shapeLayer(shape, ORIGINAL_SHAPE_INDEX, LEJA_POINT_INDEX),
+               Compositor.boxLayer(leftX, topY, rightX, bottomY, ZOOM_AREA_INDEX)));
       }
-      return complexNumbers;
+   }
+
+   /**
+    * Saves the escape iterations and final |z| of every point instead of
+    *    colors, so the Julia set can be recolored with FieldRecolorer without
+    *    being rendered again
+    * @param fileName String to save the EscapeField to
+    * @param jsf  JuliaSetFinder object used to plot
+    * @param maxIterations the most iterations to do for a point
+    */
+   public static void drawInitialJuliaSetField(String fileName,
+         JuliaSetFinder jsf, int maxIterations) {
+      long startTime = System.currentTimeMillis();
+      EscapeField field = jsf.computeEscapeField(maxIterations);
+      long endTime = System.currentTimeMillis();
+      String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
+      try {
+         field.save(new File(fileName + elapsedTime + "." +
+               EscapeField.FIELD_SUFFIX));
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * @param points  ShapeSet of coordinates
+    * @param viewport all the points
+    * @return  Set of Complex numbers from viewport that correspond to
+    *             the coordinates in points
+    */
+   private static Set<Complex> getShape(ShapeSet points, Viewport viewport) {
+      return points.toComplex(viewport);
    }
    
    /**
@@ -98,7 +289,7 @@ public class LejaPlotter {
     *    a LejaPoints instance:
     *    we should be able to plot another image
     * @param fileName the name of the file we want to save the picture to
-    * @param allPoints Complex numbers we'd like to zoom in on
+    * @param viewport Complex numbers we'd like to zoom in on
     * @param leftX
     * @param rightX
     * @param topY
@@ -107,29 +298,257 @@ public class LejaPlotter {
     * @param lp   a LejaPoints instance that carries a polynomial we want to
     *             evaluate
     */
-   private static void drawSmallerRange(String fileName, Complex[][] allPoints, int leftX,
+   private static void drawSmallerRange(String fileName, Viewport viewport, int leftX,
          int rightX, int topY, int bottomY, int zoom, LejaPoints lp) {
+      LejaPlotter.saveSmallerRange(fileName, zoom, LejaPlotter.renderSmallerRange(
+            fileName, viewport, leftX, rightX, topY, bottomY, zoom, lp));
+   }
+
+   /**
+    * @return  the picture drawSmallerRange plots and how long it took. Until
+    *    the picture is saved, finished tiles are kept in a checkpoint, so a
+    *    render that is cut short resumes where it stopped.
+    */
+   private static TimedRender renderSmallerRange(String fileName,
+         Viewport viewport, int leftX, int rightX, int topY, int bottomY,
+         int zoom, LejaPoints lp) {
+      JuliaSetFinder jsf = LejaPlotter.createZoomFinder(viewport, leftX, rightX,
+            topY, bottomY, zoom, lp);
+      jsf.setCheckpointDirectory(LejaPlotter.getCheckpointDirectory(fileName,
+            zoom));
+      System.out.println("Drawing zoom at " + zoom + "x with " + jsf.getWidth() +
+            " columns" + (jsf.usesDoubleDouble() ? " in double-double" : ""));
+      return LejaPlotter.render(jsf, new HashSet<Complex>());
+   }
+
+   /**
+    * Saves the picture drawSmallerRange plots
+    * @param fileName the name of the file we want to save the picture to
+    * @param zoom the amount the picture was zoomed by
+    */
+   private static void saveSmallerRange(String fileName, int zoom,
+         TimedRender render) {
+      render.save(fileName + zoom + "x - " + render.elapsedTime + "." +
+            ShapeCreator.IMAGE_SUFFIX);
+      RenderCheckpoint.delete(LejaPlotter.getCheckpointDirectory(fileName, zoom));
+   }
+
+   /**
+    * @return  the directory a zoom keeps its finished tiles in while it is
+    *    rendered
+    */
+   private static File getCheckpointDirectory(String fileName, int zoom) {
+      return new File(fileName + zoom + "x - checkpoint");
+   }
+   
+   /**
+    * Same as drawSmallerRange, but renders BAND_HEIGHT rows at a time and
+    *    passes each band straight to a PngWriter, so memory use does not
+    *    depend on the height of the picture. Finished tiles are kept in a
+    *    checkpoint like drawSmallerRange does.
+    * @param fileName the name of the file we want to save the picture to
+    * @param viewport Complex numbers we'd like to zoom in on
+    * @param leftX
+    * @param rightX
+    * @param topY
+    * @param bottomY
+    * @param zoom the amount to zoom by
+    * @param lp   a LejaPoints instance that carries a polynomial we want to
+    *             evaluate
+    */
+   public static void drawSmallerRangeStreaming(String fileName,
+         Viewport viewport, int leftX, int rightX, int topY, int bottomY,
+         int zoom, LejaPoints lp) {
+      LejaPlotter.drawSmallerRangeStreaming(fileName, viewport, leftX, rightX,
+            topY, bottomY, zoom, lp, new RenderLimit());
+   }
+   
+   /**
+    * Same as drawSmallerRangeStreaming, but stops at the next tile once limit
+    *    is cancelled or its deadline passes. The finished tiles stay in the
+    *    checkpoint, so calling this again picks up where it stopped; a zoom
+    *    too big for one sitting can be rendered a few hours at a time.
+    * @param limit   RenderLimit to check before every tile
+    * @return  true if the picture was saved, false if the render was stopped
+    */
+   public static boolean drawSmallerRangeStreaming(String fileName,
+         Viewport viewport, int leftX, int rightX, int topY, int bottomY,
+         int zoom, LejaPoints lp, RenderLimit limit) {
+      return LejaPlotter.drawSmallerRangeStreaming(fileName, viewport, leftX,
+            rightX, topY, bottomY, zoom, lp, limit,
+            RenderMetrics.shared().createChild());
+   }
+
+   /**
+    * Same as drawSmallerRangeStreaming, but counts the render in metrics, so
+    *    renders running at the same time can report their progress apart
+    * @param metrics RenderMetrics to count the render in
+    * @return  true if the picture was saved, false if the render was stopped
+    */
+   public static boolean drawSmallerRangeStreaming(String fileName,
+         Viewport viewport, int leftX, int rightX, int topY, int bottomY,
+         int zoom, LejaPoints lp, RenderLimit limit, RenderMetrics metrics) {
+      JuliaSetFinder jsf = LejaPlotter.createZoomFinder(viewport, leftX, rightX,
+            topY, bottomY, zoom, lp);
+      jsf.setMetrics(metrics);
+      //every band is new, so caching its tiles would only push out others
+      jsf.setTileCache(null);
+      File checkpoint = LejaPlotter.getCheckpointDirectory(fileName, zoom);
+      jsf.setCheckpointDirectory(checkpoint);
+      int width = jsf.getWidth();
+      int height = jsf.getHeight();
+      System.out.println("Streaming zoom at " + zoom + "x with " + height +
+            " rows" + (jsf.usesDoubleDouble() ? " in double-double" : ""));
+      //the elapsed time is part of the name, so write to a temporary name
+      File partial = new File(fileName + zoom + "x - partial." +
+            ShapeCreator.IMAGE_SUFFIX);
+      long startTime = System.currentTimeMillis();
+      String stopped = null;
+      int rowsDone = 0;
+      try (PngWriter writer = new PngWriter(partial, width, height,
+            LejaPlotter.PALETTE)) {
+         Set<Complex> noShape = new HashSet<Complex>();
+         for (int top = 0; top < height; top += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, height - top);
+            PartialRender band = jsf.plotRegionUsingObvious(noShape, 0, top,
+                  width, rows, limit);
+            if (!band.isComplete()) {
+               stopped = band.getReason();
+               writer.abort();
+               break;
+            }
+            writer.writeRows(band.getImage().getPixels(), rows);
+            rowsDone += rows;
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+         partial.delete();
+         return false;
+      }
+      if (stopped != null) {
+         partial.delete();
+         System.out.println("Stopped zoom at " + zoom + "x after " + rowsDone +
+               " of " + height + " rows (" + stopped + "), finished tiles " +
+               "are kept in " + checkpoint);
+         return false;
+      }
+      long endTime = System.currentTimeMillis();
+      String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
+      File result = new File(fileName + zoom + "x - " + elapsedTime + "." +
+            ShapeCreator.IMAGE_SUFFIX);
+      if (!partial.renameTo(result)) {
+         System.out.println("could not rename " + partial + " to " + result);
+      }
+      RenderCheckpoint.delete(checkpoint);
+      return true;
+   }
+
+   /**
+    * Same as drawSmallerRangeStreaming, but for zooms too big for one PNG:
+    *    the render is kept in a memory-mapped MappedRaster file, and only an
+    *    overview shrunk by overviewFactor is saved as a PNG. Regions of the
+    *    raster can be exported later with MappedRaster.main.
+    */
+   public static void drawSmallerRangeMapped(String fileName, Viewport viewport,
+         int leftX, int rightX, int topY, int bottomY, int zoom, LejaPoints lp,
+         int overviewFactor) {
+      JuliaSetFinder jsf = LejaPlotter.createZoomFinder(viewport, leftX, rightX,
+            topY, bottomY, zoom, lp);
+      //a zoom this big would push every other tile out of the cache
+      jsf.setTileCache(null);
+      int width = jsf.getWidth();
+      int height = jsf.getHeight();
+      File rasterFile = new File(fileName + zoom + "x." +
+            MappedRaster.RASTER_SUFFIX);
+      long startTime = System.currentTimeMillis();
+      try (MappedRaster raster = MappedRaster.create(rasterFile, width, height)) {
+         jsf.plotIntoUsingObvious(new HashSet<Complex>(), raster);
+         long endTime = System.currentTimeMillis();
+         String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
+         raster.exportOverview(overviewFactor, new File(fileName + zoom +
+               "x - overview 1 ÷ " + overviewFactor + " - " + elapsedTime +
+               "." + ShapeCreator.IMAGE_SUFFIX));
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Same as drawSmallerRange, but the zoom is rendered by numWorkers worker
+    *    processes through a TileJob in the directory fileName + zoom +
+    *    "x - job". If that job already exists, the tiles it has finished are
+    *    kept.
+    * @throws IllegalArgumentException if that directory holds the job of a
+    *    different zoom area or polynomial
+    */
+   public static void drawSmallerRangeDistributed(String fileName,
+         Viewport viewport, int leftX, int rightX, int topY, int bottomY,
+         int zoom, LejaPoints lp, int numWorkers) {
+      File directory = new File(fileName + zoom + "x - job");
+      long startTime = System.currentTimeMillis();
+      try {
+         Viewport zoomViewport = LejaPlotter.createZoomViewport(viewport,
+               leftX, rightX, topY, bottomY, zoom);
+         if (!new File(directory, TileJob.MANIFEST).isFile()) {
+            TileJob.create(directory, lp, zoomViewport,
+                  TileJob.DEFAULT_TILE_SIZE);
+         } else if (!TileJob.open(directory).matches(lp, zoomViewport)) {
+            //its tiles would be merged into the wrong picture
+            throw new IllegalArgumentException(directory +
+                  " holds the job of a different zoom area or polynomial");
+         }
+         File partial = new File(fileName + zoom + "x - partial." +
+               ShapeCreator.IMAGE_SUFFIX);
+         int missing = TileJob.runLocally(directory, numWorkers, partial);
+         long endTime = System.currentTimeMillis();
+         String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
+         System.out.println("merged " + directory + ", rendering " + missing +
+               " missing tiles");
+         File result = new File(fileName + zoom + "x - " + elapsedTime + "." +
+               ShapeCreator.IMAGE_SUFFIX);
+         if (!partial.renameTo(result)) {
+            System.out.println("could not rename " + partial + " to " + result);
+         }
+      } catch (IOException | InterruptedException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * @param viewport the picture the zoom area is drawn on
+    * @param leftX
+    * @param rightX
+    * @param topY
+    * @param bottomY
+    * @param zoom the amount to zoom by
+    * @param lp   the LejaPoints whose polynomial is plotted
+    * @return  a JuliaSetFinder for the zoom area of viewport with corners
+    *    (leftX, topY) and (rightX, bottomY), with zoom times as many pixels
+    *    each way
+    */
+   public static JuliaSetFinder createZoomFinder(Viewport viewport, int leftX,
+         int rightX, int topY, int bottomY, int zoom, LejaPoints lp) {
+      return new JuliaSetFinder(lp, LejaPlotter.createZoomViewport(viewport,
+            leftX, rightX, topY, bottomY, zoom));
+   }
+
+   /**
+    * @return  the Viewport of the JuliaSetFinder createZoomFinder makes
+    */
+   public static Viewport createZoomViewport(Viewport viewport, int leftX,
+         int rightX, int topY, int bottomY, int zoom) {
       int width = zoom * (rightX - leftX);
       int height = zoom * (bottomY - topY);
-      Complex topLeft = allPoints[leftX][topY];
-      Complex bottomRight = allPoints[rightX][bottomY];
+      Complex topLeft = viewport.getPoint(leftX, topY);
+      Complex bottomRight = viewport.getPoint(rightX, bottomY);
       double leftBound = topLeft.re();
       double topBound = topLeft.im();
       double spacing = (bottomRight.re() - leftBound) / (rightX - leftX ) /
             zoom;
-      Complex[][] zoomedPoints = MultiShapeCreator.createComplexValues(leftBound, topBound,
-            spacing, width, height);
-      JuliaSetFinder jsf = new JuliaSetFinder(lp, zoomedPoints);
-      System.out.println("Drawing zoom at " + zoom + "x with " +
-            zoomedPoints.length + " columns");
-      long startTime = System.currentTimeMillis();
-      Color[][] colors = jsf.plotPointsExceptUsingObviousStream(new HashSet<Complex>());
-      long endTime = System.currentTimeMillis();
-      String elapsedTime = LejaPlotter.convertElapsedTime(endTime - startTime);
-      Picture img = LejaPlotter.convertColorsToPicture(colors);
-      img.save(fileName + zoom + "x - " + elapsedTime + "." + ShapeCreator.IMAGE_SUFFIX);
+      return MultiShapeCreator.createViewport(leftBound, topBound, spacing,
+            width, height);
    }
-   
+
    /**
     * @param time a long representing the number of milliseconds
     * @return String giving the amount of time in a more human-readable format
@@ -155,18 +574,11 @@ public class LejaPlotter {
     * Draws the initial shape with the given points
     * @param fileName   The name of the file to save the picture as
     * @param points  Complex numbers that should not be plotted
-    * @param allPoints  
+    * @param viewport
     */
    public static void drawInitialShape(String fileName,
-         Set<Complex> originalShape, Complex[][] allPoints) {
-      int width = allPoints.length;
-      int height = allPoints[0].length;
-      Picture img = new Picture(width, height);
-      for (int x = 0; x < width; x++) {
-         for (int y = 0; y < height; y++) {
-            drawOriginalShapePoint(x, y, img, originalShape, allPoints);
-         }
-      }
+         Set<Complex> originalShape, Viewport viewport) {
+      Picture img = drawOriginalShape(originalShape, viewport);
       System.out.println("done printing original shape!");
       img.save(fileName + "- original image." +
             ShapeCreator.IMAGE_SUFFIX);
@@ -176,33 +588,48 @@ public class LejaPlotter {
     * Draws the initial shape with the given points
     * @param fileName   The name of the file to save the picture as
     * @param points  Complex numbers that should not be plotted
-    * @param allPoints
+    * @param viewport
     * @param leftX
     * @param rightX
     * @param topY
     * @param bottomY
     */
    private static void drawInitialShapeWithZoomArea(String fileName,
-         Set<Complex> originalShape, Complex[][] allPoints, int leftX,
+         Set<Complex> originalShape, Viewport viewport, int leftX,
          int rightX, int topY, int bottomY) {
-      int width = allPoints.length;
-      int height = allPoints[0].length;
-      Picture img = new Picture(width, height);
-      for (int x = 0; x < width; x++) {
-         for (int y = 0; y < height; y++) {
-            if ((x == leftX || x == rightX || y == topY || y == bottomY) &&
-                  (x >= leftX && x <= rightX && y >= topY && y <= bottomY)) {
-               img.set(x, y, LejaPlotter.ZOOM_AREA);
-            } else {
-               drawOriginalShapePoint(x, y, img, originalShape, allPoints);
-            }
-         }
-      }
+      Picture img = drawOriginalShape(originalShape, viewport);
+      Compositor.stampBox(img.getARGBPixels(), img.width(), img.height(),
+            leftX, topY, rightX, bottomY, LejaPlotter.ZOOM_AREA.getRGB() & 0xFFFFFF);
       System.out.println("done printing original shape!");
       img.save(fileName + "- original image." +
             ShapeCreator.IMAGE_SUFFIX);
    }
    
+   /**
+    * Draws every point of viewport the way drawOriginalShapePoint does, a row
+    *    per task in parallel
+    * @return  Picture of the original shape and the axes
+    */
+   private static Picture drawOriginalShape(Set<Complex> originalShape,
+         Viewport viewport) {
+      int width = viewport.width();
+      Picture img = new Picture(width, viewport.height());
+      int[] pixels = img.getARGBPixels();
+      int shapeColor = LejaPlotter.ORIGINAL_SHAPE.getRGB() & 0xFFFFFF;
+      int axisColor = LejaPlotter.AXIS_POINT.getRGB() & 0xFFFFFF;
+      IntStream.range(0, viewport.height()).parallel().forEach(y -> {
+         for (int x = 0; x < width; x++) {
+            Complex z = viewport.getPoint(x, y);
+            if (originalShape.contains(z)) {
+               pixels[y * width + x] = shapeColor;
+            } else if (z.re() == 0 || z.im() == 0) {
+               pixels[y * width + x] = axisColor;
+            }
+         }
+      });
+      return img;
+   }
+   
    /**
     * Draws a point according to how the original shape should look.
     * 
@@ -210,35 +637,18 @@ public class LejaPlotter {
     * @param y y-coordinate
     * @param img  Picture instance to draw to
     * @param originalShape points that are in the original shape
-    * @param allPoints  Complex plane to pick our point from
+    * @param viewport  Complex plane to pick our point from
     */
    public static void drawOriginalShapePoint(int x, int y, Picture img,
-         Set<Complex> originalShape, Complex[][] allPoints) {
-      Complex z = allPoints[x][y];
+         Set<Complex> originalShape, Viewport viewport) {
+      Complex z = viewport.getPoint(x, y);
       if (originalShape.contains(z)) {
-         img.set(x, y, LejaPlotter.ORIGINAL_SHAPE);
+         img.setARGB(x, y, LejaPlotter.ORIGINAL_SHAPE.getRGB());
       } else if (z.re() == 0 || z.im() == 0) {
-         img.set(x, y, LejaPlotter.AXIS_POINT);
+         img.setARGB(x, y, LejaPlotter.AXIS_POINT.getRGB());
       }
    }
    
-   /**
-    * 
-    * @param colors 2D array of Color objects we want to map to a Picture
-    * @return  Picture instance
-    */
-   private static Picture convertColorsToPicture(Color[][] colors) {
-      int width = colors.length;
-      int height = colors[0].length;
-      Picture img = new Picture(width, height);
-      for (int x = 0; x < width; x++) {
-         for (int y = 0; y < height; y++) {
-            img.set(x, y, colors[x][y]);
-         }
-      }
-      return img;
-   }
-   
    /**
     * @param fileName   name of the file we want to save the LejaPoints
     *                   instance to
@@ -11,12 +11,39 @@ public class LejaPoints {
    //map of every point in the shape to a double representing their max
    // helps in calculating the next leja point
    private Map<Complex, Double> allPoints;
+   //used instead of allPoints when the points are given as arrays: the
+   //coordinates of the points that are not leja points yet, and their
+   //products, in the first numCandidates entries
+   private double[] candidateRe;
+   private double[] candidateIm;
+   private double[] candidateProducts;
+   private int numCandidates;
    private List<Complex> lejaPoints;
+   //coordinates of lejaPoints, so the double-double polynomial does not
+   //have to unpack a Complex for every factor
+   private double[] lejaRe;
+   private double[] lejaIm;
+   //hash of capE, the constant and every leja point, computed on first use
+   private String fingerprint;
    private final double capE;
    private final double POLYNOMIAL_CONSTANT;
    private static final String CAP_E_FILE = "capE:";
    private static final String CONSTANT_FILE = "constant:";
    
+   /**
+    * Numbers polynomial(DoubleDouble, DoubleDouble, Workspace) works in, so it
+    *    does not allocate any; a Workspace may only be used by one thread at
+    *    a time
+    */
+   public static class Workspace {
+      private final DoubleDouble resultRe = new DoubleDouble();
+      private final DoubleDouble resultIm = new DoubleDouble();
+      private final DoubleDouble diffRe = new DoubleDouble();
+      private final DoubleDouble diffIm = new DoubleDouble();
+      private final DoubleDouble product = new DoubleDouble();
+      private final DoubleDouble cross = new DoubleDouble();
+   }
+   
    /**
     * @param fileName String that contains the information in the proper
     *    format for us to create a LejaPoints instance
@@ -49,6 +76,7 @@ public class LejaPoints {
             lineReader.close();
          }
          fileReader.close();
+         this.cacheLejaCoordinates();
       } catch (FileNotFoundException e) {
          throw new IllegalArgumentException("File does not exist");
       }
@@ -101,6 +129,45 @@ public class LejaPoints {
       }
       this.capE = this.getNextLejaPoint(exp);
       this.POLYNOMIAL_CONSTANT = Math.exp(-1 * n * s / 2);
+      this.cacheLejaCoordinates();
+      System.out.println("lejaPolynomialConstant: " + this.POLYNOMIAL_CONSTANT);
+      System.out.println("cap(E): " + this.capE);
+   }
+   
+   /**
+    * Initializes this LejaPoints instance from the coordinates of the points,
+    *    as given by ShapeSet.toCandidates, without building a Complex and a
+    *    map entry for every point. The first point is the first leja point.
+    * 
+    * @param candidates the real parts and the imaginary parts of all points
+    *                   representing a shape we'd like to create
+    * @param numLejaPoints the number of leja points to select from points
+    * @param S very small constant to counteract the magnitude of numLejaPoints
+    * @throws IllegalArgumentException if numLejaPoints is greater than the
+    *    number of points
+    */
+   public LejaPoints(double[][] candidates, int n, double s) {
+      int numPoints = candidates[0].length;
+      if (candidates[1].length != numPoints || n > numPoints || numPoints < 2) {
+         throw new IllegalArgumentException();
+      }
+      this.lejaPoints = new ArrayList<Complex>();
+      this.lejaPoints.add(new Complex(candidates[0][0], candidates[1][0]));
+      this.numCandidates = numPoints - 1;
+      this.candidateRe = Arrays.copyOfRange(candidates[0], 1, numPoints);
+      this.candidateIm = Arrays.copyOfRange(candidates[1], 1, numPoints);
+      this.candidateProducts = new double[this.numCandidates];
+      Arrays.fill(this.candidateProducts, 1.0);
+      double exp = 1.0 / n;
+      for (int i = 1; i < n - 1; i++) {
+         this.getNextLejaPoint(exp);
+      }
+      this.capE = this.getNextLejaPoint(exp);
+      this.POLYNOMIAL_CONSTANT = Math.exp(-1 * n * s / 2);
+      this.candidateRe = null;
+      this.candidateIm = null;
+      this.candidateProducts = null;
+      this.cacheLejaCoordinates();
       System.out.println("lejaPolynomialConstant: " + this.POLYNOMIAL_CONSTANT);
       System.out.println("cap(E): " + this.capE);
    }
@@ -113,6 +180,9 @@ public class LejaPoints {
     * @throws IllegalStateException if lejaPoints is empty
     */
    private double getNextLejaPoint(double exp) {
+      if (this.allPoints == null) {
+         return this.getNextLejaPointFromArrays(exp);
+      }
       if (this.lejaPoints.isEmpty() || this.allPoints.keySet().isEmpty()) {
          throw new IllegalStateException();
       }
@@ -137,6 +207,53 @@ public class LejaPoints {
       return max;
    }
    
+   /**
+    * getNextLejaPoint for points given as arrays. The chosen point is
+    *    replaced by the last candidate, so the arrays never shift.
+    * @param exp
+    * @return capE
+    * @throws IllegalStateException if there are no candidates left
+    */
+   private double getNextLejaPointFromArrays(double exp) {
+      if (this.numCandidates == 0) {
+         throw new IllegalStateException();
+      }
+      Complex lastLejaPoint = this.lejaPoints.get(this.lejaPoints.size() - 1);
+      double lastRe = lastLejaPoint.re();
+      double lastIm = lastLejaPoint.im();
+      double max = -1;
+      int next = 0;
+      for (int i = 0; i < this.numCandidates; i++) {
+         double diff = Math.hypot(this.candidateRe[i] - lastRe,
+               this.candidateIm[i] - lastIm);
+         double product = this.candidateProducts[i] * Math.pow(diff, exp);
+         this.candidateProducts[i] = product;
+         if (max < product) {
+            max = product;
+            next = i;
+         }
+      }
+      this.lejaPoints.add(new Complex(this.candidateRe[next],
+            this.candidateIm[next]));
+      int last = --this.numCandidates;
+      this.candidateRe[next] = this.candidateRe[last];
+      this.candidateIm[next] = this.candidateIm[last];
+      this.candidateProducts[next] = this.candidateProducts[last];
+      return max;
+   }
+   
+   /**
+    * Copies the leja points into lejaRe and lejaIm
+    */
+   private void cacheLejaCoordinates() {
+      this.lejaRe = new double[this.lejaPoints.size()];
+      this.lejaIm = new double[this.lejaPoints.size()];
+      for (int i = 0; i < this.lejaRe.length; i++) {
+         this.lejaRe[i] = this.lejaPoints.get(i).re();
+         this.lejaIm[i] = this.lejaPoints.get(i).im();
+      }
+   }
+   
    /**
     * @return  the leja points
     */
@@ -147,6 +264,24 @@ public class LejaPoints {
       return lejaCopy;
    }
    
+   /**
+    * @return  a hash of capE, the polynomial constant and the leja points in
+    *    order, which identifies the polynomial of this instance
+    */
+   public synchronized String getFingerprint() {
+      if (this.fingerprint == null) {
+         StringBuilder description = new StringBuilder();
+         description.append(Double.toHexString(this.capE)).append(' ');
+         description.append(Double.toHexString(this.POLYNOMIAL_CONSTANT));
+         for (int i = 0; i < this.lejaRe.length; i++) {
+            description.append(' ').append(Double.toHexString(this.lejaRe[i]));
+            description.append(' ').append(Double.toHexString(this.lejaIm[i]));
+         }
+         this.fingerprint = TileCache.hash(description.toString());
+      }
+      return this.fingerprint;
+   }
+   
    /**
     * This polynomial is defined by Malik Younsi. For more information, please
     *    refer to his research
@@ -156,15 +291,71 @@ public class LejaPoints {
     *          function
     */
    public Complex polynomial(Complex z) {
-      Complex result = z;
-      for (Complex leja : this.lejaPoints) {
-         result = result.times(z.minus(leja));
-         double re = result.re() / this.capE;
-         double im = result.im() / this.capE;
-         result = new Complex(re, im);
-      }
-      return new Complex(result.re() * this.POLYNOMIAL_CONSTANT,
-            result.im() * this.POLYNOMIAL_CONSTANT);
+      double[] result = {z.re(), z.im()};
+      this.polynomial(result);
+      return new Complex(result[0], result[1]);
+   }
+   
+   /**
+    * Same polynomial as polynomial(Complex), with the same rounding, but
+    *    without creating a Complex for every factor
+    * 
+    * @param z z[0] is the real part of z and z[1] the imaginary part; they
+    *          are overwritten with P(z)
+    */
+   public void polynomial(double[] z) {
+      double zRe = z[0];
+      double zIm = z[1];
+      double re = zRe;
+      double im = zIm;
+      for (int i = 0; i < this.lejaRe.length; i++) {
+         double diffRe = zRe - this.lejaRe[i];
+         double diffIm = zIm - this.lejaIm[i];
+         double productRe = re * diffRe - im * diffIm;
+         double productIm = re * diffIm + im * diffRe;
+         re = productRe / this.capE;
+         im = productIm / this.capE;
+      }
+      z[0] = re * this.POLYNOMIAL_CONSTANT;
+      z[1] = im * this.POLYNOMIAL_CONSTANT;
+   }
+   
+   /**
+    * Same polynomial as polynomial(Complex), evaluated in double-double
+    *    arithmetic (about 106 bits) for zooms whose pixel spacing is too
+    *    small for a double to tell neighbouring pixels apart.
+    * 
+    * @param re   the real part of z; overwritten with the real part of P(z)
+    * @param im   the imaginary part of z; overwritten with the imaginary part
+    *             of P(z)
+    */
+   public void polynomial(DoubleDouble re, DoubleDouble im) {
+      this.polynomial(re, im, new Workspace());
+   }
+   
+   /**
+    * Same as polynomial(DoubleDouble, DoubleDouble), working in the numbers of
+    *    workspace instead of allocating new ones
+    */
+   public void polynomial(DoubleDouble re, DoubleDouble im,
+         Workspace workspace) {
+      DoubleDouble resultRe = workspace.resultRe.set(re);
+      DoubleDouble resultIm = workspace.resultIm.set(im);
+      DoubleDouble diffRe = workspace.diffRe;
+      DoubleDouble diffIm = workspace.diffIm;
+      DoubleDouble product = workspace.product;
+      DoubleDouble cross = workspace.cross;
+      for (int i = 0; i < this.lejaRe.length; i++) {
+         diffRe.set(re).add(-this.lejaRe[i]);
+         diffIm.set(im).add(-this.lejaIm[i]);
+         //(a + bi)(c + di) = (ac - bd) + (ad + bc)i
+         product.set(resultIm).multiply(diffIm);
+         cross.set(resultIm).multiply(diffRe);
+         resultIm.set(resultRe).multiply(diffIm).add(cross).divide(this.capE);
+         resultRe.multiply(diffRe).subtract(product).divide(this.capE);
+      }
+      re.set(resultRe).multiply(this.POLYNOMIAL_CONSTANT);
+      im.set(resultIm).multiply(this.POLYNOMIAL_CONSTANT);
    }
    
    /**
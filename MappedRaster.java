@@ -0,0 +1,271 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * A raster of palette indices (see LejaPlotter.PALETTE) stored in a
+ *    memory-mapped file instead of on the heap, so a render can have more
+ *    pixels than fit in a Java array or in memory.
+ *
+ * The file starts with a HEADER_SIZE byte header holding the width and
+ *    height, followed by one byte per pixel, row by row. Because a single
+ *    mapping is limited to 2^31 bytes, the pixels are mapped in segments of
+ *    whole rows.
+ *
+ * Tiles may be written concurrently from many threads without locking, as
+ *    long as they do not overlap. Regions, or a downsampled overview, are
+ *    exported to PNG a band at a time.
+ *
+ * @author RyanPachauri
+ */
+public class MappedRaster implements Closeable {
+   public static final String RASTER_SUFFIX = "raster";
+   private static final int MAGIC = 0x4A524153;//"JRAS"
+   private static final int HEADER_SIZE = 16;
+   private static final long MAX_SEGMENT_BYTES = 1L << 30;
+   //rows exported to PNG at a time
+   private static final int EXPORT_ROWS = 256;
+
+   private final RandomAccessFile file;
+   private final int width;
+   private final int height;
+   private final int rowsPerSegment;
+   private final MappedByteBuffer[] segments;
+
+   /**
+    * Creates (or overwrites) a raster file where every pixel has index 0
+    * @param file    the file to keep the pixels in
+    * @param width   the width of the raster
+    * @param height  the height of the raster
+    * @throws IOException if the file cannot be created or mapped
+    */
+   public static MappedRaster create(File file, int width, int height)
+         throws IOException {
+      if (width <= 0 || height <= 0 || width > MAX_SEGMENT_BYTES) {
+         throw new IllegalArgumentException(width + " x " + height);
+      }
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      raf.setLength(0);
+      raf.setLength(HEADER_SIZE + (long) width * height);
+      raf.writeInt(MAGIC);
+      raf.writeInt(width);
+      raf.writeInt(height);
+      return new MappedRaster(raf, width, height);
+   }
+
+   /**
+    * Opens an existing raster file
+    * @param file    a file made by create
+    * @throws IOException if the file cannot be read or is not a raster
+    */
+   public static MappedRaster open(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+         raf.close();
+         throw new IOException(file + " is not a raster file");
+      }
+      int width = raf.readInt();
+      int height = raf.readInt();
+      if (raf.length() != HEADER_SIZE + (long) width * height) {
+         raf.close();
+         throw new IOException(file + " has the wrong length");
+      }
+      return new MappedRaster(raf, width, height);
+   }
+
+   private MappedRaster(RandomAccessFile file, int width, int height)
+         throws IOException {
+      this.file = file;
+      this.width = width;
+      this.height = height;
+      this.rowsPerSegment = (int) Math.min(height, MAX_SEGMENT_BYTES / width);
+      int numSegments = (height + this.rowsPerSegment - 1) / this.rowsPerSegment;
+      this.segments = new MappedByteBuffer[numSegments];
+      FileChannel channel = file.getChannel();
+      for (int i = 0; i < numSegments; i++) {
+         int rows = Math.min(this.rowsPerSegment, height - i * this.rowsPerSegment);
+         long start = HEADER_SIZE + (long) i * this.rowsPerSegment * width;
+         this.segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+               (long) rows * width);
+      }
+   }
+
+   public int width() {
+      return this.width;
+   }
+
+   public int height() {
+      return this.height;
+   }
+
+   /**
+    * @return  the number of pixels in this raster
+    */
+   public long size() {
+      return (long) this.width * this.height;
+   }
+
+   /**
+    * @return  the palette index of pixel (x, y)
+    */
+   public byte get(int x, int y) {
+      this.validate(x, y, 1, 1);
+      return this.segments[y / this.rowsPerSegment].get(this.offset(x, y));
+   }
+
+   /**
+    * Writes a tile of palette indices. Threads writing tiles that do not
+    *    overlap do not need to synchronize with each other.
+    * @param left the column of the left edge of the tile
+    * @param top  the row of the top edge of the tile
+    * @param tileWidth  the width of the tile
+    * @param tileHeight the height of the tile
+    * @param tile the palette indices of the tile, row by row
+    */
+   public void writeTile(int left, int top, int tileWidth, int tileHeight,
+         byte[] tile) {
+      this.validate(left, top, tileWidth, tileHeight);
+      for (int y = 0; y < tileHeight; y++) {
+         //each thread positions its own view of the shared mapping
+         ByteBuffer view = this.segments[(top + y) / this.rowsPerSegment].
+               duplicate();
+         view.position(this.offset(left, top + y));
+         view.put(tile, y * tileWidth, tileWidth);
+      }
+   }
+
+   /**
+    * @return  the palette indices of the given region, row by row
+    * @throws IllegalArgumentException if the region does not fit in a byte[]
+    */
+   public byte[] readRegion(int left, int top, int regionWidth,
+         int regionHeight) {
+      this.validate(left, top, regionWidth, regionHeight);
+      if ((long) regionWidth * regionHeight > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException(regionWidth + " x " + regionHeight);
+      }
+      byte[] region = new byte[regionWidth * regionHeight];
+      for (int y = 0; y < regionHeight; y++) {
+         ByteBuffer view = this.segments[(top + y) / this.rowsPerSegment].
+               duplicate();
+         view.position(this.offset(left, top + y));
+         view.get(region, y * regionWidth, regionWidth);
+      }
+      return region;
+   }
+
+   /**
+    * Saves the given region as an indexed-color PNG, EXPORT_ROWS rows at a
+    *    time
+    * @throws IOException if the PNG cannot be written
+    */
+   public void exportRegion(int left, int top, int regionWidth,
+         int regionHeight, File png) throws IOException {
+      this.validate(left, top, regionWidth, regionHeight);
+      try (PngWriter writer = new PngWriter(png, regionWidth, regionHeight,
+            LejaPlotter.PALETTE)) {
+         for (int y = 0; y < regionHeight; y += EXPORT_ROWS) {
+            int rows = Math.min(EXPORT_ROWS, regionHeight - y);
+            writer.writeRows(this.readRegion(left, top + y, regionWidth, rows),
+                  rows);
+         }
+      }
+   }
+
+   /**
+    * Saves the whole raster, shrunk by the given factor, as an indexed-color
+    *    PNG. Each pixel of the overview gets the most common index of the
+    *    factor x factor block it covers.
+    * @param factor  how many pixels of this raster make up a side of a pixel
+    *                of the overview
+    * @throws IOException if the PNG cannot be written
+    */
+   public void exportOverview(int factor, File png) throws IOException {
+      if (factor < 1) {
+         throw new IllegalArgumentException();
+      }
+      int overviewWidth = (this.width + factor - 1) / factor;
+      int overviewHeight = (this.height + factor - 1) / factor;
+      byte[] row = new byte[overviewWidth];
+      int[][] counts = new int[overviewWidth][LejaPlotter.PALETTE.length];
+      try (PngWriter writer = new PngWriter(png, overviewWidth, overviewHeight,
+            LejaPlotter.PALETTE)) {
+         for (int oy = 0; oy < overviewHeight; oy++) {
+            for (int[] count : counts) {
+               java.util.Arrays.fill(count, 0);
+            }
+            int rows = Math.min(factor, this.height - oy * factor);
+            byte[] block = this.readRegion(0, oy * factor, this.width, rows);
+            for (int y = 0; y < rows; y++) {
+               for (int x = 0; x < this.width; x++) {
+                  counts[x / factor][block[y * this.width + x]]++;
+               }
+            }
+            for (int ox = 0; ox < overviewWidth; ox++) {
+               int best = 0;
+               for (int i = 1; i < counts[ox].length; i++) {
+                  if (counts[ox][i] > counts[ox][best]) {
+                     best = i;
+                  }
+               }
+               row[ox] = (byte) best;
+            }
+            writer.writeRows(row, 1);
+         }
+      }
+   }
+
+   /**
+    * Writes all pixels to disk
+    */
+   public void flush() {
+      for (MappedByteBuffer segment : this.segments) {
+         segment.force();
+      }
+   }
+
+   public void close() throws IOException {
+      this.flush();
+      this.file.close();
+   }
+
+   /**
+    * @return  the offset of pixel (x, y) within its segment
+    */
+   private int offset(int x, int y) {
+      return (y % this.rowsPerSegment) * this.width + x;
+   }
+
+   private void validate(int left, int top, int regionWidth, int regionHeight) {
+      if (left < 0 || top < 0 || regionWidth < 0 || regionHeight < 0 ||
+            left + regionWidth > this.width || top + regionHeight > this.height) {
+         throw new IndexOutOfBoundsException(regionWidth + " x " + regionHeight +
+               " at (" + left + ", " + top + ") is outside " + this.width +
+               " x " + this.height);
+      }
+   }
+
+   /**
+    * Usage:
+    *    java MappedRaster file.raster overview factor out.png
+    *    java MappedRaster file.raster region left top width height out.png
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length == 4 && args[1].equals("overview")) {
+         try (MappedRaster raster = open(new File(args[0]))) {
+            raster.exportOverview(Integer.parseInt(args[2]), new File(args[3]));
+         }
+      } else if (args.length == 7 && args[1].equals("region")) {
+         try (MappedRaster raster = open(new File(args[0]))) {
+            raster.exportRegion(Integer.parseInt(args[2]),
+                  Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                  Integer.parseInt(args[5]), new File(args[6]));
+         }
+      } else {
+         System.out.println("usage: java MappedRaster file.raster overview " +
+               "factor out.png");
+         System.out.println("       java MappedRaster file.raster region " +
+               "left top width height out.png");
+      }
+   }
+}
@@ -1,5 +1,3 @@
-import java.util.Set;
-
 /**
  * This class creates multiple shapes that would be used in Julia Sets
  * @author RyanPachauri
@@ -10,39 +8,46 @@ public class MultiShapeCreator {
    private static final double SPACING = 0.005;
    //how many decimal places to round to
    private static final int ROUNDING = 3;
+   //below this spacing, neighbouring pixels near |z| ~ 1 are only a few
+   //thousand ulps apart, so the escape loop has to run in double-double
+   public static final double DOUBLE_DOUBLE_SPACING = 1e-12;
    
    /**
     * @Precondition: For this method, we are assuming that the dimensions of
     *    the Complex Plane are s.t. width = 3 * height and height = size
     * @param size the size of each letter
-    * @return a set of <int[]> corresponding to coordinates that would make
+    * @return a ShapeSet of the coordinates that would make
     *          up this shape
     */
-   public static Set<int[]> getLinearISM(int size) {
-      Set<int[]> originalShape = ShapeCreator.getI(0, 0, size);
-      originalShape.addAll(ShapeCreator.getS(size, 0, size));
-      originalShape.addAll(ShapeCreator.getM(size * 2, 0, size));
+   public static ShapeSet getLinearISM(int size) {
+      ShapeSet originalShape = ShapeCreator.getI(0, 0, size);
+      originalShape.addAll(ShapeCreator.getContour("S", size, 0, size));
+      originalShape.addAll(ShapeCreator.getContour("M", size * 2, 0, size));
       return originalShape;
    }
    
-   public static Complex[][] getLinearISMComplexValues(int size) {
+   public static Viewport getLinearISMViewport(int size) {
       int height = size;
       int width = 3 * height;
-      return createComplexValues(width, height);
+      return createViewport(width, height);
+   }
+   
+   public static Complex[][] getLinearISMComplexValues(int size) {
+      return getLinearISMViewport(size).toComplexValues();
    }
    
    /**
     * @Precondition: For this method, we are assuming that the dimensions of
     *    the Complex Plane are s.t. width = 3 * height and height = size
     * @param size the size of each letter
-    * @return a set of <int[]> corresponding to coordinates that would make
+    * @return a ShapeSet of the coordinates that would make
     *          up this shape
     */
-   public static Set<int[]> getLinearKLMY(int size) {
-      Set<int[]> originalShape = ShapeCreator.getK(0, 0, size);
-      originalShape.addAll(ShapeCreator.getL(size, 0, size));
-      originalShape.addAll(ShapeCreator.getM(size * 2, 0, size));
-      originalShape.addAll(ShapeCreator.getY(size * 3, 0, size));
+   public static ShapeSet getLinearKLMY(int size) {
+      ShapeSet originalShape = ShapeCreator.getContour("K", 0, 0, size);
+      originalShape.addAll(ShapeCreator.getContour("L", size, 0, size));
+      originalShape.addAll(ShapeCreator.getContour("M", size * 2, 0, size));
+      originalShape.addAll(ShapeCreator.getContour("Y", size * 3, 0, size));
       return originalShape;
    }
    
@@ -51,83 +56,112 @@ public class MultiShapeCreator {
     *    the Complex Plane are s.t. width = 3 * height and height = size
     * @param size the height, which is 1/4 the width
     */
-   public static Complex[][] getLinearKLMYComplexValues(int size) {
+   public static Viewport getLinearKLMYViewport(int size) {
       int height = size;
       int width = 4 * height;
-      return createComplexValues(size * 4 / 3, height / 2, width, height);
+      return createViewport(size * 4 / 3, height / 2, width, height);
+   }
+   
+   public static Complex[][] getLinearKLMYComplexValues(int size) {
+      return getLinearKLMYViewport(size).toComplexValues();
    }
    
-   public static Set<int[]> getStaggeredKLMY(int size) {
-      Set<int[]> originalShape = ShapeCreator.getK(0, size, size);
-      originalShape.addAll(ShapeCreator.getL(size, 0, size));
-      originalShape.addAll(ShapeCreator.getM(size * 2, size, size));
-      originalShape.addAll(ShapeCreator.getY(size * 3, 0, size));
+   public static ShapeSet getStaggeredKLMY(int size) {
+      ShapeSet originalShape = ShapeCreator.getContour("K", 0, size, size);
+      originalShape.addAll(ShapeCreator.getContour("L", size, 0, size));
+      originalShape.addAll(ShapeCreator.getContour("M", size * 2, size, size));
+      originalShape.addAll(ShapeCreator.getContour("Y", size * 3, 0, size));
       return originalShape;
    }
    
+   public static Viewport getStaggeredKLMYViewport(int size) {
+      return createViewport(size * 3 / 2, size * 25 / 32, size * 4, size * 2);
+   }
+   
    public static Complex[][] getStaggeredKLMYComplexValues(int size) {
-      return createComplexValues(size * 3 / 2, size * 25 / 32, size * 4, size * 2);
+      return getStaggeredKLMYViewport(size).toComplexValues();
    }
    
-   public static Set<int[]> getStaggeredKLMY2(int size) {
-      Set<int[]> originalShape = ShapeCreator.getK(0, 0, size);
-      originalShape.addAll(ShapeCreator.getL(size, size, size));
-      originalShape.addAll(ShapeCreator.getM(size * 2, 0, size));
-      originalShape.addAll(ShapeCreator.getY(size * 3, size, size));
+   public static ShapeSet getStaggeredKLMY2(int size) {
+      ShapeSet originalShape = ShapeCreator.getContour("K", 0, 0, size);
+      originalShape.addAll(ShapeCreator.getContour("L", size, size, size));
+      originalShape.addAll(ShapeCreator.getContour("M", size * 2, 0, size));
+      originalShape.addAll(ShapeCreator.getContour("Y", size * 3, size, size));
       return originalShape;
    }
    
+   public static Viewport getStaggeredKLMYViewport2(int size) {
+      return createViewport(size * 3 / 2, size * 57 / 32, size * 4, size * 2);
+   }
+   
    public static Complex[][] getStaggeredKLMYComplexValues2(int size) {
-      return createComplexValues(size * 3 / 2, size * 57 / 32, size * 4, size * 2);
+      return getStaggeredKLMYViewport2(size).toComplexValues();
    }
    
-   public static Set<int[]> getHeartDiamondFish(int size) {
-      Set<int[]> originalShape = ShapeCreator.getHeart(0, 0, size * 5 / 4);
-      originalShape.addAll(ShapeCreator.getDiamond(size, size, size));
-      originalShape.addAll(ShapeCreator.getFish(size * 2, 0, size));
+   public static ShapeSet getHeartDiamondFish(int size) {
+      ShapeSet originalShape = ShapeCreator.getContour("heart", 0, 0, size * 5 / 4);
+      originalShape.addAll(ShapeCreator.getContour("diamond", size, size, size));
+      originalShape.addAll(ShapeCreator.getContour("fish", size * 2, 0, size));
       return originalShape;
    }
    
+   public static Viewport getHeartDiamondFishViewport(int size) {
+      return createViewport(size * 3 / 2, size * 4 / 3, size * 3, size * 2);
+   }
+   
    public static Complex[][] getHeartDiamondFishComplexValues(int size) {
-      return createComplexValues(size * 3 / 2, size * 4 / 3, size * 3, size * 2);
+      return getHeartDiamondFishViewport(size).toComplexValues();
    }
    
    public static Complex[][] createComplexValues(int width, int height) {
-      return createComplexValues(width / 2, height / 2, width, height);
+      return createViewport(width, height).toComplexValues();
    }
    
    public static Complex[][] createComplexValues(int originX, int originY,
          int width, int height) {
-      Complex[][] points = new Complex[width][height];
-      for (int x = 0; x < width; x++) {
-         for (int y = 0; y < height; y++) {
-            double re = round((x - originX) * SPACING, ROUNDING);
-            double im = round((originY - y) * SPACING, ROUNDING);
-            points[x][y] = new Complex(re, im);
-         }
-      }
-      return points;
+      return createViewport(originX, originY, width, height).toComplexValues();
    }
    
    public static Complex[][] createComplexValues(double leftBound, double topBound,
          double spacing, int width, int height) {
-      Complex[][] points = new Complex[width][height];
-      int rounding = findNumDecimals(spacing);
-      for (int x = 0; x < width; x++) {
-         for (int y = 0; y < height; y++) {
-            double re = round(x * spacing + leftBound, rounding);
-            double im = round(topBound - y * spacing, rounding);
-            points[x][y] = new Complex(re, im);
-         }
-      }
-      return points;
+      return createViewport(leftBound, topBound, spacing, width, height).
+            toComplexValues();
    }
    
-   private static double round(double d, int numDigits) {
-      int multiplier = (int) Math.pow(10, numDigits);
-      int x = (int) (d * multiplier);
-      double y = (double) x / multiplier;
-      return y;
+   /**
+    * @return  a Viewport with the points of createComplexValues(width, height)
+    */
+   public static Viewport createViewport(int width, int height) {
+      return createViewport(width / 2, height / 2, width, height);
+   }
+   
+   /**
+    * @return  a Viewport with the points of
+    *    createComplexValues(originX, originY, width, height)
+    */
+   public static Viewport createViewport(int originX, int originY,
+         int width, int height) {
+      return new Viewport(originX, originY, 0.0, 0.0, SPACING, ROUNDING,
+            width, height);
+   }
+   
+   /**
+    * @return  a Viewport with the points of
+    *    createComplexValues(leftBound, topBound, spacing, width, height)
+    */
+   public static Viewport createViewport(double leftBound, double topBound,
+         double spacing, int width, int height) {
+      return new Viewport(0, 0, leftBound, topBound, spacing,
+            findNumDecimals(spacing), width, height);
+   }
+   
+   /**
+    * @param spacing the distance between two neighbouring pixels
+    * @return  true if points spaced this closely should be evaluated in
+    *    double-double precision rather than with doubles
+    */
+   public static boolean needsDoubleDouble(double spacing) {
+      return spacing < DOUBLE_DOUBLE_SPACING;
    }
    
    /**
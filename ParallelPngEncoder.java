@@ -0,0 +1,359 @@
+import java.awt.Color;
+import java.io.*;
+import java.util.stream.IntStream;
+import java.util.zip.*;
+
+/**
+ * Encodes a whole image as a PNG using every core, the way pigz compresses
+ *    gzip files.
+ *
+ * The rows are split into groups of at least GROUP_BYTES bytes, and each group
+ *    is filtered and deflated on its own thread. Every group but the last ends
+ *    with a sync flush, which ends on a byte boundary, so the compressed groups
+ *    can simply be concatenated into one zlib stream. Each group is primed with
+ *    the last 32KB of the group before it, so the result compresses about as
+ *    well as a single deflater would, and the Adler-32 checksums of the groups
+ *    are combined rather than computed again. The output is an ordinary PNG
+ *    that any decoder can read.
+ *
+ * @author RyanPachauri
+ */
+public class ParallelPngEncoder {
+   private static final byte[] SIGNATURE =
+         {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+   //the least number of uncompressed bytes compressed by one thread
+   private static final int GROUP_BYTES = 1 << 18;
+   //the most a deflater can look back
+   private static final int WINDOW_SIZE = 1 << 15;
+   private static final int IDAT_SIZE = 1 << 16;
+   private static final int COLOR_TYPE_RGB = 2;
+   private static final int COLOR_TYPE_INDEXED = 3;
+   private static final int ADLER_BASE = 65521;
+
+   /**
+    * Supplies the raw bytes of a row, before filtering
+    */
+   private interface RowSource {
+      void getRow(int y, byte[] row);
+   }
+
+   private final int width;
+   private final int height;
+   private final int bytesPerPixel;
+   private final boolean adaptiveFiltering;
+   private final RowSource source;
+
+   private ParallelPngEncoder(int width, int height, int bytesPerPixel,
+         boolean adaptiveFiltering, RowSource source) {
+      if (width <= 0 || height <= 0) {
+         throw new IllegalArgumentException();
+      }
+      this.width = width;
+      this.height = height;
+      this.bytesPerPixel = bytesPerPixel;
+      this.adaptiveFiltering = adaptiveFiltering;
+      this.source = source;
+   }
+
+   /**
+    * Writes an RGB image as a truecolor PNG
+    * @param rgb  the color of every pixel as 0xRRGGBB, row by row; the alpha
+    *             byte is ignored
+    * @param width   the width of the image
+    * @param height  the height of the image
+    * @param file the file to write the PNG to
+    * @throws IOException if the file cannot be written
+    */
+   public static void writeRGB(int[] rgb, int width, int height, File file)
+         throws IOException {
+      if (rgb.length < (long) width * height) {
+         throw new IllegalArgumentException();
+      }
+      ParallelPngEncoder encoder = new ParallelPngEncoder(width, height, 3, true,
+            (y, row) -> {
+         for (int x = 0, i = y * width; x < width; x++, i++) {
+            row[3 * x] = (byte) (rgb[i] >> 16);
+            row[3 * x + 1] = (byte) (rgb[i] >> 8);
+            row[3 * x + 2] = (byte) rgb[i];
+         }
+      });
+      try (OutputStream out = new FileOutputStream(file)) {
+         encoder.write(out, COLOR_TYPE_RGB, null);
+      }
+   }
+
+   /**
+    * Writes palette indices as an indexed-color PNG
+    * @param indices the palette index of every pixel, row by row
+    * @param width   the width of the image
+    * @param height  the height of the image
+    * @param palette the colors the palette indices refer to (at most 256)
+    * @param file the file to write the PNG to
+    * @throws IOException if the file cannot be written
+    */
+   public static void writeIndexed(byte[] indices, int width, int height,
+         Color[] palette, File file) throws IOException {
+      writeIndexed(indices, width, height, palette, null, file);
+   }
+
+   /**
+    * Writes palette indices as an indexed-color PNG, drawing layer onto each
+    *    row as it is compressed; indices itself is not changed
+    * @param indices the palette index of every pixel, row by row
+    * @param width   the width of the image
+    * @param height  the height of the image
+    * @param palette the colors the palette indices refer to (at most 256)
+    * @param layer   what to draw over the rows, or null
+    * @param file the file to write the PNG to
+    * @throws IOException if the file cannot be written
+    */
+   public static void writeIndexed(byte[] indices, int width, int height,
+         Color[] palette, Compositor.IndexLayer layer, File file)
+         throws IOException {
+      if (indices.length < (long) width * height || palette.length == 0 ||
+            palette.length > 256) {
+         throw new IllegalArgumentException();
+      }
+      //palette images compress best unfiltered
+      ParallelPngEncoder encoder = new ParallelPngEncoder(width, height, 1, false,
+            (y, row) -> {
+         System.arraycopy(indices, y * width, row, 0, width);
+         if (layer != null) {
+            layer.apply(y, row);
+         }
+      });
+      try (OutputStream out = new FileOutputStream(file)) {
+         encoder.write(out, COLOR_TYPE_INDEXED, palette);
+      }
+   }
+
+   private void write(OutputStream out, int colorType, Color[] palette)
+         throws IOException {
+      int rowBytes = 1 + this.width * this.bytesPerPixel;
+      int rowsPerGroup = Math.max(1, GROUP_BYTES / rowBytes);
+      int numGroups = (this.height + rowsPerGroup - 1) / rowsPerGroup;
+      Group[] groups = IntStream.range(0, numGroups).parallel().
+            mapToObj(g -> this.compress(g * rowsPerGroup,
+            Math.min(rowsPerGroup, this.height - g * rowsPerGroup),
+            g == numGroups - 1)).toArray(Group[]::new);
+
+      DataOutputStream output =
+            new DataOutputStream(new BufferedOutputStream(out));
+      output.write(SIGNATURE);
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream headerData = new DataOutputStream(header);
+      headerData.writeInt(this.width);
+      headerData.writeInt(this.height);
+      headerData.writeByte(8);//bit depth
+      headerData.writeByte(colorType);
+      headerData.writeByte(0);//deflate
+      headerData.writeByte(0);//adaptive filtering
+      headerData.writeByte(0);//no interlace
+      PngWriter.writeChunk(output, "IHDR", header.toByteArray(), 0,
+            header.size());
+      if (palette != null) {
+         byte[] colors = new byte[palette.length * 3];
+         for (int i = 0; i < palette.length; i++) {
+            colors[3 * i] = (byte) palette[i].getRed();
+            colors[3 * i + 1] = (byte) palette[i].getGreen();
+            colors[3 * i + 2] = (byte) palette[i].getBlue();
+         }
+         PngWriter.writeChunk(output, "PLTE", colors, 0, colors.length);
+      }
+
+      //zlib header for deflate with a 32KB window and default compression
+      ByteArrayOutputStream idat = new ByteArrayOutputStream(IDAT_SIZE);
+      idat.write(0x78);
+      idat.write(0x9C);
+      long adler = 1;
+      for (Group group : groups) {
+         adler = combineAdler(adler, group.adler, group.length);
+         writeIdat(output, idat, group.compressed, group.compressed.length);
+      }
+      byte[] trailer = {(byte) (adler >> 24), (byte) (adler >> 16),
+            (byte) (adler >> 8), (byte) adler};
+      writeIdat(output, idat, trailer, trailer.length);
+      if (idat.size() > 0) {
+         PngWriter.writeChunk(output, "IDAT", idat.toByteArray(), 0, idat.size());
+      }
+      PngWriter.writeChunk(output, "IEND", new byte[0], 0, 0);
+      output.flush();
+   }
+
+   /**
+    * Appends data to pending, writing out an IDAT chunk whenever pending
+    *    holds IDAT_SIZE bytes
+    */
+   private static void writeIdat(DataOutputStream output,
+         ByteArrayOutputStream pending, byte[] data, int length)
+         throws IOException {
+      int offset = 0;
+      while (offset < length) {
+         int n = Math.min(length - offset, IDAT_SIZE - pending.size());
+         pending.write(data, offset, n);
+         offset += n;
+         if (pending.size() == IDAT_SIZE) {
+            PngWriter.writeChunk(output, "IDAT", pending.toByteArray(), 0,
+                  IDAT_SIZE);
+            pending.reset();
+         }
+      }
+   }
+
+   /**
+    * The compressed bytes of a group of rows and the Adler-32 checksum of
+    *    its uncompressed bytes
+    */
+   private static class Group {
+      final byte[] compressed;
+      final long adler;
+      final long length;
+
+      Group(byte[] compressed, long adler, long length) {
+         this.compressed = compressed;
+         this.adler = adler;
+         this.length = length;
+      }
+   }
+
+   /**
+    * Filters and deflates rows top to top + rows - 1
+    * @param last true if this is the last group, which finishes the stream
+    */
+   private Group compress(int top, int rows, boolean last) {
+      int rowBytes = 1 + this.width * this.bytesPerPixel;
+      //the rows before this group are filtered again to prime the deflater
+      int dictionaryRows = Math.min(top, (WINDOW_SIZE + rowBytes - 1) / rowBytes);
+      byte[] data = this.filterRows(top - dictionaryRows, dictionaryRows + rows);
+      int start = dictionaryRows * rowBytes;
+      int length = rows * rowBytes;
+
+      Adler32 adler = new Adler32();
+      adler.update(data, start, length);
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try {
+         if (start > 0) {
+            int dictionaryLength = Math.min(start, WINDOW_SIZE);
+            deflater.setDictionary(data, start - dictionaryLength,
+                  dictionaryLength);
+         }
+         deflater.setInput(data, start, length);
+         if (last) {
+            deflater.finish();
+         }
+         ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4);
+         byte[] buffer = new byte[IDAT_SIZE];
+         int mode = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+         while (true) {
+            int n = deflater.deflate(buffer, 0, buffer.length, mode);
+            compressed.write(buffer, 0, n);
+            if (last ? deflater.finished() : n < buffer.length) {
+               break;
+            }
+         }
+         return new Group(compressed.toByteArray(), adler.getValue(), length);
+      } finally {
+         deflater.end();
+      }
+   }
+
+   /**
+    * @return  rows top to top + rows - 1, each led by its filter type byte
+    */
+   private byte[] filterRows(int top, int rows) {
+      int lineBytes = this.width * this.bytesPerPixel;
+      byte[] filtered = new byte[rows * (lineBytes + 1)];
+      byte[] previous = new byte[lineBytes];
+      byte[] current = new byte[lineBytes];
+      if (top > 0) {
+         this.source.getRow(top - 1, previous);
+      }
+      for (int y = 0; y < rows; y++) {
+         this.source.getRow(top + y, current);
+         this.filterRow(current, previous, filtered, y * (lineBytes + 1));
+         byte[] swap = previous;
+         previous = current;
+         current = swap;
+      }
+      return filtered;
+   }
+
+   /**
+    * Writes the filter type and filtered bytes of row to out. With adaptive
+    *    filtering, the filter with the least sum of absolute values is used,
+    *    as the PNG specification suggests.
+    */
+   private void filterRow(byte[] row, byte[] previous, byte[] out, int offset) {
+      int bpp = this.bytesPerPixel;
+      int best = 0;
+      if (this.adaptiveFiltering) {
+         long bestSum = Long.MAX_VALUE;
+         for (int filter = 0; filter <= 4; filter++) {
+            long sum = 0;
+            for (int i = 0; i < row.length && sum < bestSum; i++) {
+               sum += Math.abs((byte) filter(filter, row, previous, i, bpp));
+            }
+            if (sum < bestSum) {
+               bestSum = sum;
+               best = filter;
+            }
+         }
+      }
+      out[offset] = (byte) best;
+      for (int i = 0; i < row.length; i++) {
+         out[offset + 1 + i] = (byte) filter(best, row, previous, i, bpp);
+      }
+   }
+
+   /**
+    * @return  byte i of row after applying the given PNG filter type
+    */
+   private static int filter(int type, byte[] row, byte[] previous, int i,
+         int bpp) {
+      int x = row[i] & 0xFF;
+      int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+      int b = previous[i] & 0xFF;
+      switch (type) {
+         case 1:
+            return x - a;
+         case 2:
+            return x - b;
+         case 3:
+            return x - ((a + b) >> 1);
+         case 4:
+            int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+            return x - paeth(a, b, c);
+         default:
+            return x;
+      }
+   }
+
+   private static int paeth(int a, int b, int c) {
+      int p = a + b - c;
+      int pa = Math.abs(p - a);
+      int pb = Math.abs(p - b);
+      int pc = Math.abs(p - c);
+      if (pa <= pb && pa <= pc) {
+         return a;
+      }
+      return pb <= pc ? b : c;
+   }
+
+   /**
+    * @param adler1  the Adler-32 checksum of some bytes
+    * @param adler2  the Adler-32 checksum of the bytes after them
+    * @param length2 the number of bytes adler2 covers
+    * @return  the Adler-32 checksum of both runs of bytes together
+    */
+   static long combineAdler(long adler1, long adler2, long length2) {
+      long remainder = length2 % ADLER_BASE;
+      long sum1 = adler1 & 0xFFFF;
+      long sum2 = remainder * sum1 % ADLER_BASE;
+      sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+      sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) +
+            ADLER_BASE - remainder;
+      sum1 %= ADLER_BASE;
+      sum2 %= ADLER_BASE;
+      return sum1 | (sum2 << 16);
+   }
+}
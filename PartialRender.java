@@ -0,0 +1,146 @@
+/**
+ * A render that may have been stopped early by a RenderLimit: the palette
+ *    indices of the tiles that were finished and a mask of which tiles those
+ *    are. Pixels of tiles that were not finished are OUTSIDE_JULIA_SET_INDEX.
+ *
+ * @author RyanPachauri
+ */
+public class PartialRender {
+   private final IndexedRaster img;
+   private final int tileSize;
+   //where the first tile starts, left of and above the first pixel
+   private final int offsetX;
+   private final int offsetY;
+   private final int tilesAcross;
+   //true for every tile that was finished, row of tiles by row of tiles
+   private final boolean[] covered;
+   private final String reason;
+
+   /**
+    * @param img  the render, with the pixels of unfinished tiles left 0
+    * @param tileSize   the width and height of the tiles it was rendered in
+    * @param offsetX the columns the first tile starts left of the render
+    * @param offsetY the rows the first tile starts above the render
+    * @param covered true for every finished tile
+    * @param reason  why the render stopped early, or null if it did not
+    */
+   public PartialRender(IndexedRaster img, int tileSize, int offsetX,
+         int offsetY, boolean[] covered, String reason) {
+      this.img = img;
+      this.tileSize = tileSize;
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+      this.tilesAcross = (offsetX + img.width() + tileSize - 1) / tileSize;
+      if (covered.length != this.tilesAcross *
+            ((offsetY + img.height() + tileSize - 1) / tileSize)) {
+         throw new IllegalArgumentException();
+      }
+      this.covered = covered;
+      this.reason = reason;
+   }
+
+   public IndexedRaster getImage() {
+      return this.img;
+   }
+
+   /**
+    * @return  why the render stopped early, or null if it is complete
+    */
+   public String getReason() {
+      return this.reason;
+   }
+
+   /**
+    * @return  true if every tile was finished
+    */
+   public boolean isComplete() {
+      for (boolean tile : this.covered) {
+         if (!tile) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @return  true if the pixel in column x and row y was rendered
+    */
+   public boolean isCovered(int x, int y) {
+      return this.covered[(y + this.offsetY) / this.tileSize * this.tilesAcross +
+            (x + this.offsetX) / this.tileSize];
+   }
+
+   /**
+    * @return  the number of pixels that were rendered
+    */
+   public long countCoveredPixels() {
+      long count = 0;
+      for (int t = 0; t < this.covered.length; t++) {
+         if (this.covered[t]) {
+            int left = Math.max(0, t % this.tilesAcross * this.tileSize - this.offsetX);
+            int top = Math.max(0, t / this.tilesAcross * this.tileSize - this.offsetY);
+            int right = Math.min(this.img.width(),
+                  (t % this.tilesAcross + 1) * this.tileSize - this.offsetX);
+            int bottom = Math.min(this.img.height(),
+                  (t / this.tilesAcross + 1) * this.tileSize - this.offsetY);
+            count += (long) (right - left) * (bottom - top);
+         }
+      }
+      return count;
+   }
+
+   /**
+    * @return  the part of the pixels that were rendered, from 0 to 1
+    */
+   public double getCoverage() {
+      return (double) this.countCoveredPixels() /
+            ((long) this.img.width() * this.img.height());
+   }
+
+   /**
+    * @return  the coverage mask, with 1 for every pixel that was rendered and
+    *    0 for every other pixel
+    */
+   public IndexedRaster getCoverageMask() {
+      IndexedRaster mask = new IndexedRaster(this.img.width(), this.img.height());
+      for (int y = 0; y < this.img.height(); y++) {
+         for (int x = 0; x < this.img.width(); x++) {
+            if (this.isCovered(x, y)) {
+               mask.set(x, y, (byte) 1);
+            }
+         }
+      }
+      return mask;
+   }
+
+   /**
+    * @param index   the palette index to draw with
+    * @return  a layer that draws over every pixel that was not rendered
+    */
+   public Compositor.IndexLayer uncoveredLayer(byte index) {
+      return (y, row) -> {
+         for (int x = 0; x < this.img.width(); x++) {
+            if (!this.isCovered(x, y)) {
+               row[x] = index;
+            }
+         }
+      };
+   }
+
+   /**
+    * Saves the render as an indexed-color PNG, with the pixels that were not
+    *    rendered drawn in ORIGINAL_SHAPE
+    * @param fileName   the name of the file, which should end in .png
+    */
+   public void save(String fileName) {
+      this.img.save(fileName, this.isComplete() ? null :
+            this.uncoveredLayer(LejaPlotter.ORIGINAL_SHAPE_INDEX));
+   }
+
+   public String toString() {
+      return String.format(java.util.Locale.ROOT,
+            "%d x %d render, %.1f%% covered%s", this.img.width(),
+            this.img.height(), 100 * this.getCoverage(),
+            this.reason == null ? "" : " (" + this.reason + ")");
+   }
+}
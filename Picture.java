@@ -25,6 +25,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -97,9 +98,8 @@ public final class Picture implements ActionListener {
         height = picture.height();
         image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         filename = picture.filename;
-        for (int col = 0; col < width(); col++)
-            for (int row = 0; row < height(); row++)
-                image.setRGB(col, row, picture.get(col, row).getRGB());
+        isOriginUpperLeft = picture.isOriginUpperLeft;
+        System.arraycopy(picture.getARGBPixels(), 0, getARGBPixels(), 0, width * height);
     }
 
    /**
@@ -135,6 +135,7 @@ public final class Picture implements ActionListener {
 
             width  = image.getWidth(null);
             height = image.getHeight(null);
+            image  = toIntRGB(image);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("could not open image file: " + filename, ioe);
@@ -162,9 +163,27 @@ public final class Picture implements ActionListener {
         }
         width  = image.getWidth(null);
         height = image.getHeight(null);
+        image  = toIntRGB(image);
         filename = file.getName();
     }
 
+   /**
+     * Copies the RGB values of an image into a {@code TYPE_INT_RGB} image so
+     * its pixels can be accessed as an {@code int[]}. Alpha is dropped rather
+     * than composited, which is what {@link #get} has always done.
+     */
+    private static BufferedImage toIntRGB(BufferedImage source) {
+        if (source.getType() == BufferedImage.TYPE_INT_RGB) return source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        BufferedImage copy = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+        source.getRGB(0, 0, w, h, pixels, 0, w);
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] &= 0xFFFFFF;
+        return copy;
+    }
+
    /**
      * Returns a JLabel containing this picture, for embedding in a JPanel,
      * JFrame or other GUI widget.
@@ -285,6 +304,132 @@ public final class Picture implements ActionListener {
         else                   image.setRGB(col, height - row - 1, color.getRGB());
     }
 
+   /**
+     * Returns the array backing this picture, for passes over the whole image
+     * that would be slowed down by {@link #get} and {@link #set}.
+     * Pixel ({@code col}, {@code row}) is at index {@code row * width + col}
+     * with the origin in the upper left, regardless of
+     * {@code setOriginLowerLeft()}. Each entry is {@code 0xRRGGBB}; the alpha
+     * byte is not used and should be written as 0.
+     *
+     * @return the backing array of this picture
+     */
+    public int[] getARGBPixels() {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+   /**
+     * Returns the color of pixel ({@code col}, {@code row}) as an
+     * ARGB int without creating a {@code Color}.
+     *
+     * @param col the column index
+     * @param row the row index
+     * @return the color of pixel ({@code col}, {@code row}), with alpha 255
+     * @throws IndexOutOfBoundsException unless both {@code 0 <= col < width} and {@code 0 <= row < height}
+     */
+    public int getARGB(int col, int row) {
+        validateCol(col);
+        validateRow(row);
+        return 0xFF000000 | getARGBPixels()[toRow(row) * width + col];
+    }
+
+   /**
+     * Sets the color of pixel ({@code col}, {@code row}) to an ARGB int.
+     * The alpha byte is ignored.
+     *
+     * @param col the column index
+     * @param row the row index
+     * @param argb the color
+     * @throws IndexOutOfBoundsException unless both {@code 0 <= col < width} and {@code 0 <= row < height}
+     */
+    public void setARGB(int col, int row, int argb) {
+        validateCol(col);
+        validateRow(row);
+        getARGBPixels()[toRow(row) * width + col] = argb & 0xFFFFFF;
+    }
+
+   /**
+     * Reads a row of pixels.
+     *
+     * @param row the row index
+     * @param argb array to read into, or {@code null} to allocate one
+     * @return the colors of the row as ARGB ints with alpha 255
+     * @throws IndexOutOfBoundsException unless {@code 0 <= row < height}
+     */
+    public int[] getRow(int row, int[] argb) {
+        return getRegion(0, row, width, 1, argb);
+    }
+
+   /**
+     * Writes a row of pixels. The alpha bytes are ignored.
+     *
+     * @param row the row index
+     * @param argb the colors of the row as ARGB ints
+     * @throws IndexOutOfBoundsException unless {@code 0 <= row < height}
+     */
+    public void setRow(int row, int[] argb) {
+        setRegion(0, row, width, 1, argb);
+    }
+
+   /**
+     * Reads a rectangle of pixels, row by row.
+     *
+     * @param col the column of the left edge of the region
+     * @param row the row of the top edge of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @param argb array of at least {@code w * h} ints to read into, or
+     *        {@code null} to allocate one
+     * @return the colors of the region as ARGB ints with alpha 255
+     * @throws IndexOutOfBoundsException unless the region is inside the picture
+     */
+    public int[] getRegion(int col, int row, int w, int h, int[] argb) {
+        validateRegion(col, row, w, h);
+        if (argb == null) argb = new int[w * h];
+        int[] pixels = getARGBPixels();
+        for (int r = 0; r < h; r++) {
+            int from = toRow(row + r) * width + col;
+            for (int c = 0; c < w; c++)
+                argb[r * w + c] = 0xFF000000 | pixels[from + c];
+        }
+        return argb;
+    }
+
+   /**
+     * Writes a rectangle of pixels, row by row. The alpha bytes are ignored.
+     *
+     * @param col the column of the left edge of the region
+     * @param row the row of the top edge of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @param argb the colors of the region as ARGB ints
+     * @throws IndexOutOfBoundsException unless the region is inside the picture
+     */
+    public void setRegion(int col, int row, int w, int h, int[] argb) {
+        validateRegion(col, row, w, h);
+        int[] pixels = getARGBPixels();
+        for (int r = 0; r < h; r++) {
+            int to = toRow(row + r) * width + col;
+            for (int c = 0; c < w; c++)
+                pixels[to + c] = argb[r * w + c] & 0xFFFFFF;
+        }
+    }
+
+    private void validateRegion(int col, int row, int w, int h) {
+        if (w < 0 || h < 0) throw new IllegalArgumentException("region must have nonnegative size");
+        if (w == 0 || h == 0) return;
+        validateCol(col);
+        validateCol(col + w - 1);
+        validateRow(row);
+        validateRow(row + h - 1);
+    }
+
+    // the row of the backing array that holds row of the picture
+    private int toRow(int row) {
+        if (isOriginUpperLeft) return row;
+        else                   return height - row - 1;
+    }
+
    /**
      * Returns true if this picture is equal to the argument picture.
      *
@@ -299,9 +444,11 @@ public final class Picture implements ActionListener {
         Picture that = (Picture) other;
         if (this.width()  != that.width())  return false;
         if (this.height() != that.height()) return false;
-        for (int col = 0; col < width(); col++)
-            for (int row = 0; row < height(); row++)
-                if (!this.get(col, row).equals(that.get(col, row))) return false;
+        for (int row = 0; row < height(); row++) {
+            int[] thisRow = this.getRow(row, null);
+            int[] thatRow = that.getRow(row, null);
+            if (!java.util.Arrays.equals(thisRow, thatRow)) return false;
+        }
         return true;
     }
 
@@ -338,7 +485,16 @@ public final class Picture implements ActionListener {
         filename = file.getName();
         if (frame != null) frame.setTitle(filename);
         String suffix = filename.substring(filename.lastIndexOf('.') + 1);
-        if ("jpg".equalsIgnoreCase(suffix) || "png".equalsIgnoreCase(suffix)) {
+        if ("png".equalsIgnoreCase(suffix)) {
+            try {
+                // deflates groups of rows on every core
+                ParallelPngEncoder.writeRGB(getARGBPixels(), width, height, file);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        else if ("jpg".equalsIgnoreCase(suffix)) {
             try {
                 ImageIO.write(image, suffix, file);
             }
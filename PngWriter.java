@@ -0,0 +1,203 @@
+import java.awt.Color;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+
+/**
+ * Writes an indexed-color PNG a few rows at a time, so an image never has to
+ *    be held in memory as a whole.
+ *
+ * Rows are given as one palette index per pixel. Compressed data is written
+ *    out in IDAT chunks of at most IDAT_SIZE bytes as soon as the deflater
+ *    produces it, so memory stays bounded by the rows passed to writeRows.
+ *
+ * @author RyanPachauri
+ */
+public class PngWriter implements Closeable {
+   private static final byte[] SIGNATURE =
+         {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+   private static final int IDAT_SIZE = 1 << 16;
+   private static final int COLOR_TYPE_INDEXED = 3;
+
+   private final DataOutputStream output;
+   private final Deflater deflater;
+   private final DeflaterOutputStream idat;
+   private final int width;
+   private final int height;
+   private int rowsWritten;
+   private boolean closed;
+
+   /**
+    * Writes the PNG header and palette to the given file
+    * @param file    the file to write the PNG to
+    * @param width   the width of the image
+    * @param height  the height of the image
+    * @param palette the colors the palette indices refer to (at most 256)
+    * @throws IOException if the file cannot be written
+    */
+   public PngWriter(File file, int width, int height, Color[] palette)
+         throws IOException {
+      this(new FileOutputStream(file), width, height, palette);
+   }
+
+   /**
+    * Writes the PNG header and palette to the given stream
+    * @param out  the stream to write the PNG to; it is closed by close()
+    * @param width   the width of the image
+    * @param height  the height of the image
+    * @param palette the colors the palette indices refer to (at most 256)
+    * @throws IOException if the stream cannot be written
+    */
+   public PngWriter(OutputStream out, int width, int height, Color[] palette)
+         throws IOException {
+      if (width <= 0 || height <= 0 || palette.length == 0 ||
+            palette.length > 256) {
+         throw new IllegalArgumentException();
+      }
+      this.output = new DataOutputStream(new BufferedOutputStream(out));
+      this.width = width;
+      this.height = height;
+      this.rowsWritten = 0;
+      this.output.write(SIGNATURE);
+
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream headerData = new DataOutputStream(header);
+      headerData.writeInt(width);
+      headerData.writeInt(height);
+      headerData.writeByte(8);//bit depth
+      headerData.writeByte(COLOR_TYPE_INDEXED);
+      headerData.writeByte(0);//deflate
+      headerData.writeByte(0);//adaptive filtering
+      headerData.writeByte(0);//no interlace
+      writeChunk(this.output, "IHDR", header.toByteArray(), 0, header.size());
+
+      byte[] colors = new byte[palette.length * 3];
+      for (int i = 0; i < palette.length; i++) {
+         colors[3 * i] = (byte) palette[i].getRed();
+         colors[3 * i + 1] = (byte) palette[i].getGreen();
+         colors[3 * i + 2] = (byte) palette[i].getBlue();
+      }
+      writeChunk(this.output, "PLTE", colors, 0, colors.length);
+      this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+      this.idat = new DeflaterOutputStream(new IdatOutputStream(this.output),
+            this.deflater, IDAT_SIZE);
+   }
+
+   /**
+    * Writes the next rows of the image
+    * @param indices palette indices of whole rows, row by row
+    * @param rows    the number of rows in indices
+    * @throws IOException if the stream cannot be written
+    */
+   public void writeRows(byte[] indices, int rows) throws IOException {
+      if (rows < 0 || this.rowsWritten + rows > this.height ||
+            indices.length < (long) rows * this.width) {
+         throw new IllegalArgumentException();
+      }
+      for (int y = 0; y < rows; y++) {
+         this.idat.write(0);//filter type None
+         this.idat.write(indices, y * this.width, this.width);
+      }
+      this.rowsWritten += rows;
+   }
+
+   /**
+    * Gives up on the image: closes the underlying stream without finishing
+    *    it, so the file holds an incomplete PNG the caller should delete.
+    *    Closing afterwards does nothing.
+    * @throws IOException if the stream cannot be closed
+    */
+   public void abort() throws IOException {
+      if (this.closed) {
+         return;
+      }
+      this.closed = true;
+      this.deflater.end();
+      this.output.close();
+   }
+
+   /**
+    * Finishes the image and closes the underlying stream, unless it was
+    *    aborted
+    * @throws IllegalStateException if fewer rows than the height were written
+    */
+   public void close() throws IOException {
+      if (this.closed) {
+         return;
+      }
+      this.closed = true;
+      if (this.rowsWritten != this.height) {
+         this.deflater.end();
+         this.output.close();
+         throw new IllegalStateException("wrote " + this.rowsWritten +
+               " of " + this.height + " rows");
+      }
+      this.idat.finish();
+      this.idat.flush();
+      this.deflater.end();
+      writeChunk(this.output, "IEND", new byte[0], 0, 0);
+      this.output.close();
+   }
+
+   /**
+    * Writes a PNG chunk: length, type, data and the CRC of type and data
+    */
+   static void writeChunk(DataOutputStream out, String type, byte[] data,
+         int offset, int length) throws IOException {
+      byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+      CRC32 crc = new CRC32();
+      crc.update(typeBytes);
+      crc.update(data, offset, length);
+      out.writeInt(length);
+      out.write(typeBytes);
+      out.write(data, offset, length);
+      out.writeInt((int) crc.getValue());
+   }
+
+   /**
+    * Collects compressed bytes and writes them out as IDAT chunks
+    */
+   private static class IdatOutputStream extends OutputStream {
+      private final DataOutputStream out;
+      private final byte[] buffer;
+      private int size;
+
+      public IdatOutputStream(DataOutputStream out) {
+         this.out = out;
+         this.buffer = new byte[IDAT_SIZE];
+         this.size = 0;
+      }
+
+      public void write(int b) throws IOException {
+         if (this.size == this.buffer.length) {
+            this.flushChunk();
+         }
+         this.buffer[this.size++] = (byte) b;
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+         while (len > 0) {
+            if (this.size == this.buffer.length) {
+               this.flushChunk();
+            }
+            int n = Math.min(len, this.buffer.length - this.size);
+            System.arraycopy(b, off, this.buffer, this.size, n);
+            this.size += n;
+            off += n;
+            len -= n;
+         }
+      }
+
+      public void flush() throws IOException {
+         this.flushChunk();
+         this.out.flush();
+      }
+
+      private void flushChunk() throws IOException {
+         if (this.size > 0) {
+            writeChunk(this.out, "IDAT", this.buffer, 0, this.size);
+            this.size = 0;
+         }
+      }
+   }
+}
@@ -0,0 +1,198 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.*;
+
+/**
+ * Times LejaPoints.polynomial in the three precisions we can render with:
+ *    plain doubles, double-double and BigDecimal (with a 34 digit, ~113 bit
+ *    MathContext, the closest BigDecimal gets to double-double).
+ *
+ * The BigDecimal results are also used as the reference to report how far
+ *    the double and double-double evaluations drift.
+ *
+ * @author RyanPachauri
+ */
+public class PrecisionBenchmark {
+
+   private static final int SIZE = 400;
+   private static final int N = 200;
+   private static final int NUM_SAMPLES = 200;
+   private static final int WARMUP_ROUNDS = 5;
+   private static final int ROUNDS = 10;
+   private static final MathContext CONTEXT = MathContext.DECIMAL128;
+
+   public static void main(String[] args) {
+      Set<Complex> square = ShapeCreator.getSquare(SIZE).toComplex(
+            MultiShapeCreator.createViewport(SIZE, SIZE));
+      LejaPoints lp = new LejaPoints(square, N, 1.0 / N);
+      BigLejaPolynomial reference = new BigLejaPolynomial(lp);
+
+      Random random = new Random(SIZE);
+      Complex[] samples = new Complex[NUM_SAMPLES];
+      for (int i = 0; i < NUM_SAMPLES; i++) {
+         samples[i] = new Complex(random.nextDouble() - 0.5,
+               random.nextDouble() - 0.5);
+      }
+
+      for (int i = 0; i < WARMUP_ROUNDS; i++) {
+         timeDouble(lp, samples);
+         timeDoubleDouble(lp, samples);
+         timeBigDecimal(reference, samples);
+      }
+      double doubleNs = 0;
+      double doubleDoubleNs = 0;
+      double bigDecimalNs = 0;
+      for (int i = 0; i < ROUNDS; i++) {
+         doubleNs += timeDouble(lp, samples);
+         doubleDoubleNs += timeDoubleDouble(lp, samples);
+         bigDecimalNs += timeBigDecimal(reference, samples);
+      }
+      doubleNs /= ROUNDS;
+      doubleDoubleNs /= ROUNDS;
+      bigDecimalNs /= ROUNDS;
+
+      System.out.println("n = " + N + ", " + NUM_SAMPLES + " samples, " +
+            ROUNDS + " rounds");
+      System.out.printf("double:        %10.1f ns/eval  1.0x%n", doubleNs);
+      System.out.printf("double-double: %10.1f ns/eval  %.1fx%n",
+            doubleDoubleNs, doubleDoubleNs / doubleNs);
+      System.out.printf("BigDecimal:    %10.1f ns/eval  %.1fx%n",
+            bigDecimalNs, bigDecimalNs / doubleNs);
+      reportError(lp, reference, samples);
+   }
+
+   /**
+    * @return  the average number of nanoseconds per evaluation
+    */
+   private static double timeDouble(LejaPoints lp, Complex[] samples) {
+      double sink = 0;
+      long start = System.nanoTime();
+      for (Complex z : samples) {
+         sink += lp.polynomial(z).re();
+      }
+      long elapsed = System.nanoTime() - start;
+      blackhole(sink);
+      return (double) elapsed / samples.length;
+   }
+
+   private static double timeDoubleDouble(LejaPoints lp, Complex[] samples) {
+      DoubleDouble re = new DoubleDouble();
+      DoubleDouble im = new DoubleDouble();
+      double sink = 0;
+      long start = System.nanoTime();
+      for (Complex z : samples) {
+         re.set(z.re());
+         im.set(z.im());
+         lp.polynomial(re, im);
+         sink += re.hi();
+      }
+      long elapsed = System.nanoTime() - start;
+      blackhole(sink);
+      return (double) elapsed / samples.length;
+   }
+
+   private static double timeBigDecimal(BigLejaPolynomial reference,
+         Complex[] samples) {
+      double sink = 0;
+      long start = System.nanoTime();
+      for (Complex z : samples) {
+         sink += reference.evaluate(z)[0].doubleValue();
+      }
+      long elapsed = System.nanoTime() - start;
+      blackhole(sink);
+      return (double) elapsed / samples.length;
+   }
+
+   /**
+    * Prints the largest relative error of the double and double-double
+    *    evaluations against the BigDecimal evaluation
+    */
+   private static void reportError(LejaPoints lp, BigLejaPolynomial reference,
+         Complex[] samples) {
+      double doubleError = 0;
+      double doubleDoubleError = 0;
+      DoubleDouble re = new DoubleDouble();
+      DoubleDouble im = new DoubleDouble();
+      for (Complex z : samples) {
+         BigDecimal[] exact = reference.evaluate(z);
+         double scale = Math.hypot(exact[0].doubleValue(),
+               exact[1].doubleValue());
+         if (scale == 0) {
+            continue;
+         }
+         Complex w = lp.polynomial(z);
+         doubleError = Math.max(doubleError, Math.hypot(
+               exact[0].subtract(new BigDecimal(w.re())).doubleValue(),
+               exact[1].subtract(new BigDecimal(w.im())).doubleValue()) / scale);
+         re.set(z.re());
+         im.set(z.im());
+         lp.polynomial(re, im);
+         BigDecimal ddRe = new BigDecimal(re.hi()).add(new BigDecimal(re.lo()));
+         BigDecimal ddIm = new BigDecimal(im.hi()).add(new BigDecimal(im.lo()));
+         doubleDoubleError = Math.max(doubleDoubleError, Math.hypot(
+               exact[0].subtract(ddRe).doubleValue(),
+               exact[1].subtract(ddIm).doubleValue()) / scale);
+      }
+      System.out.println("max relative error of double:        " + doubleError);
+      System.out.println("max relative error of double-double: " +
+            doubleDoubleError);
+   }
+
+   private static void blackhole(double sink) {
+      if (sink == 42.4242) {
+         System.out.println(sink);
+      }
+   }
+
+   /**
+    * The polynomial of a LejaPoints instance evaluated with BigDecimal
+    */
+   private static class BigLejaPolynomial {
+      private final BigDecimal[] lejaRe;
+      private final BigDecimal[] lejaIm;
+      private final BigDecimal capE;
+      private final BigDecimal constant;
+
+      public BigLejaPolynomial(LejaPoints lp) {
+         //export is the only way to read capE and the constant back out
+         java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+         lp.export(new java.io.PrintStream(bytes));
+         Scanner reader = new Scanner(bytes.toString());
+         reader.next();
+         this.capE = new BigDecimal(reader.nextDouble());
+         reader.next();
+         this.constant = new BigDecimal(reader.nextDouble());
+         List<BigDecimal> re = new ArrayList<BigDecimal>();
+         List<BigDecimal> im = new ArrayList<BigDecimal>();
+         while (reader.hasNextDouble()) {
+            re.add(new BigDecimal(reader.nextDouble()));
+            im.add(new BigDecimal(reader.nextDouble()));
+         }
+         reader.close();
+         this.lejaRe = re.toArray(new BigDecimal[re.size()]);
+         this.lejaIm = im.toArray(new BigDecimal[im.size()]);
+      }
+
+      /**
+       * @return  {re, im} of P(z)
+       */
+      public BigDecimal[] evaluate(Complex z) {
+         BigDecimal zRe = new BigDecimal(z.re());
+         BigDecimal zIm = new BigDecimal(z.im());
+         BigDecimal re = zRe;
+         BigDecimal im = zIm;
+         for (int i = 0; i < this.lejaRe.length; i++) {
+            BigDecimal diffRe = zRe.subtract(this.lejaRe[i], CONTEXT);
+            BigDecimal diffIm = zIm.subtract(this.lejaIm[i], CONTEXT);
+            BigDecimal newRe = re.multiply(diffRe, CONTEXT).
+                  subtract(im.multiply(diffIm, CONTEXT), CONTEXT);
+            BigDecimal newIm = re.multiply(diffIm, CONTEXT).
+                  add(im.multiply(diffRe, CONTEXT), CONTEXT);
+            re = newRe.divide(this.capE, CONTEXT);
+            im = newIm.divide(this.capE, CONTEXT);
+         }
+         return new BigDecimal[] {re.multiply(this.constant, CONTEXT),
+               im.multiply(this.constant, CONTEXT)};
+      }
+   }
+}
@@ -0,0 +1,199 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Keeps the finished tiles of a long render in a directory as they are
+ *    done, so a render cut short by a crash or an OutOfMemoryError picks up
+ *    where it stopped when it is run again with the same parameters, losing
+ *    at most the tiles that were being rendered (see
+ *    JuliaSetFinder.setCheckpointDirectory).
+ *
+ * The directory holds:
+ *    checkpoint.properties   the render the checkpoint belongs to
+ *    pixels.raster           a MappedRaster of the render
+ *    done                    a byte per tile, 1 once the tile is in the raster
+ * Both files are memory-mapped, so what was written is kept even if the JVM
+ *    dies right after; flush and close also write it to disk. The pixels of a
+ *    tile are written before its done byte.
+ *
+ * @author RyanPachauri
+ */
+public class RenderCheckpoint implements Closeable {
+   private static final String PROPERTIES = "checkpoint.properties";
+   private static final String PIXELS = "pixels." + MappedRaster.RASTER_SUFFIX;
+   private static final String DONE = "done";
+   private static final int VERSION = 1;
+
+   private final File directory;
+   private final MappedRaster pixels;
+   private final RandomAccessFile doneFile;
+   private final MappedByteBuffer done;
+   private final int tileSize;
+   private final int tilesAcross;
+   private final int numTiles;
+
+   private RenderCheckpoint(File directory, MappedRaster pixels,
+         RandomAccessFile doneFile, int tileSize) throws IOException {
+      this.directory = directory;
+      this.pixels = pixels;
+      this.doneFile = doneFile;
+      this.tileSize = tileSize;
+      this.tilesAcross = (pixels.width() + tileSize - 1) / tileSize;
+      this.numTiles = this.tilesAcross *
+            ((pixels.height() + tileSize - 1) / tileSize);
+      this.done = doneFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+            this.numTiles);
+   }
+
+   /**
+    * Opens the checkpoint in directory, or starts a new one if it has none
+    * @param render  describes everything the pixels of the render depend on
+    * @param width   the width of the render
+    * @param height  the height of the render
+    * @param tileSize   the width and height of the tiles of the render
+    * @throws IllegalArgumentException if directory holds the checkpoint of a
+    *    different render
+    */
+   public static RenderCheckpoint open(File directory, String render, int width,
+         int height, int tileSize) throws IOException {
+      if (tileSize <= 0) {
+         throw new IllegalArgumentException();
+      }
+      String hash = TileCache.hash(render);
+      File properties = new File(directory, PROPERTIES);
+      File pixels = new File(directory, PIXELS);
+      File done = new File(directory, DONE);
+      if (properties.isFile()) {
+         Properties saved = new Properties();
+         try (InputStream in = new FileInputStream(properties)) {
+            saved.load(in);
+         }
+         if (!hash.equals(saved.getProperty("render")) ||
+               Integer.parseInt(saved.getProperty("version")) != VERSION ||
+               Integer.parseInt(saved.getProperty("tileSize")) != tileSize) {
+            throw new IllegalArgumentException(directory +
+                  " holds the checkpoint of a different render");
+         }
+         MappedRaster raster = MappedRaster.open(pixels);
+         if (raster.width() != width || raster.height() != height) {
+            raster.close();
+            throw new IOException(pixels + " has the wrong size");
+         }
+         return new RenderCheckpoint(directory, raster,
+               new RandomAccessFile(done, "rw"), tileSize);
+      }
+
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+         throw new IOException("Cannot create " + directory);
+      }
+      RandomAccessFile doneFile = new RandomAccessFile(done, "rw");
+      //every tile starts out not done
+      doneFile.setLength(0);
+      RenderCheckpoint checkpoint = new RenderCheckpoint(directory,
+            MappedRaster.create(pixels, width, height), doneFile, tileSize);
+      Properties saved = new Properties();
+      saved.setProperty("version", "" + VERSION);
+      saved.setProperty("render", hash);
+      saved.setProperty("width", "" + width);
+      saved.setProperty("height", "" + height);
+      saved.setProperty("tileSize", "" + tileSize);
+      //written last, so a checkpoint with properties is complete
+      File partial = new File(directory, PROPERTIES + ".tmp");
+      try (OutputStream out = new FileOutputStream(partial)) {
+         saved.store(out, "render checkpoint");
+      }
+      Files.move(partial.toPath(), properties.toPath(),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      return checkpoint;
+   }
+
+   /**
+    * Deletes the checkpoint in directory, once the render it was for is saved
+    */
+   public static void delete(File directory) {
+      for (String name : new String[] {PIXELS, DONE, PROPERTIES}) {
+         new File(directory, name).delete();
+      }
+      directory.delete();
+   }
+
+   /**
+    * @return  the index of the tile with top left corner (left, top)
+    */
+   private int index(int left, int top) {
+      return top / this.tileSize * this.tilesAcross + left / this.tileSize;
+   }
+
+   /**
+    * @return  true if the tile with top left corner (left, top) is done
+    */
+   public boolean isDone(int left, int top) {
+      return this.done.get(this.index(left, top)) != 0;
+   }
+
+   /**
+    * @return  the palette indices of a tile, row by row
+    */
+   public byte[] readTile(int left, int top, int tileWidth, int tileHeight) {
+      return this.pixels.readRegion(left, top, tileWidth, tileHeight);
+   }
+
+   /**
+    * Stores a finished tile. Tiles that do not overlap may be written from
+    *    many threads at once.
+    * @param tile the palette indices of the tile, row by row
+    */
+   public void writeTile(int left, int top, int tileWidth, int tileHeight,
+         byte[] tile) {
+      this.pixels.writeTile(left, top, tileWidth, tileHeight, tile);
+      this.done.put(this.index(left, top), (byte) 1);
+   }
+
+   public int getNumTiles() {
+      return this.numTiles;
+   }
+
+   /**
+    * @return  the number of tiles that are done
+    */
+   public int countDone() {
+      int count = 0;
+      for (int i = 0; i < this.numTiles; i++) {
+         if (this.done.get(i) != 0) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Writes every finished tile to disk, pixels first
+    */
+   public void flush() {
+      this.pixels.flush();
+      this.done.force();
+   }
+
+   /**
+    * Writes every finished tile to disk and closes the files of this
+    *    checkpoint
+    * @throws IllegalStateException if the files cannot be closed
+    */
+   public void close() {
+      try {
+         this.pixels.close();
+         this.done.force();
+         this.doneFile.close();
+      } catch (IOException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   public String toString() {
+      return "checkpoint " + this.directory + ": " + this.countDone() + " of " +
+            this.numTiles + " tiles done";
+   }
+}
@@ -0,0 +1,91 @@
+/**
+ * Tells a render to stop early: when cancel is called, or when its deadline
+ *    passes. Renders check it before every tile, so they stop within a tile
+ *    of being told to and return the tiles they finished (see PartialRender).
+ *
+ * One RenderLimit can be shared by several renders, so cancelling it stops
+ *    a whole batch.
+ *
+ * @author RyanPachauri
+ */
+public class RenderLimit {
+   public static final String CANCELLED = "cancelled";
+   public static final String DEADLINE = "deadline passed";
+
+   //in System.nanoTime, or Long.MAX_VALUE for none
+   private final long deadline;
+   private volatile boolean cancelled;
+
+   /**
+    * A RenderLimit with no deadline, which only stops renders once cancelled
+    */
+   public RenderLimit() {
+      this.deadline = Long.MAX_VALUE;
+   }
+
+   /**
+    * @param timeoutMillis the milliseconds from now renders may take
+    */
+   public RenderLimit(long timeoutMillis) {
+      if (timeoutMillis < 0) {
+         throw new IllegalArgumentException();
+      }
+      this.deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+   }
+
+   /**
+    * Stops every render checking this instance at its next tile
+    */
+   public void cancel() {
+      this.cancelled = true;
+   }
+
+   public boolean isCancelled() {
+      return this.cancelled;
+   }
+
+   /**
+    * @return  true if this instance has a deadline that has passed
+    */
+   public boolean isExpired() {
+      return this.deadline != Long.MAX_VALUE &&
+            System.nanoTime() - this.deadline >= 0;
+   }
+
+   /**
+    * @return  true if renders should stop
+    */
+   public boolean shouldStop() {
+      return this.cancelled || this.isExpired();
+   }
+
+   /**
+    * @return  why renders should stop, or null if they should go on
+    */
+   public String getReason() {
+      if (this.cancelled) {
+         return CANCELLED;
+      }
+      return this.isExpired() ? DEADLINE : null;
+   }
+
+   /**
+    * @return  the milliseconds left until the deadline, 0 if it has passed,
+    *    or Long.MAX_VALUE if there is none
+    */
+   public long getRemainingMillis() {
+      if (this.deadline == Long.MAX_VALUE) {
+         return Long.MAX_VALUE;
+      }
+      return Math.max(0, (this.deadline - System.nanoTime()) / 1_000_000);
+   }
+
+   public String toString() {
+      String reason = this.getReason();
+      if (reason != null) {
+         return "render limit: " + reason;
+      }
+      return "render limit: " + (this.deadline == Long.MAX_VALUE ?
+            "no deadline" : this.getRemainingMillis() + " ms left");
+   }
+}
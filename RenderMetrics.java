@@ -0,0 +1,480 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.*;
+
+/**
+ * Counters of how far along renders are and where their time goes, safe to
+ *    update from every thread of a parallel render.
+ *
+ * Threads do not touch the shared counters for every pixel: each tile (or
+ *    row) is counted in its own Tally, which is added to the LongAdders of
+ *    this instance once it is done. Listeners are told about progress at most
+ *    once every REPORT_INTERVAL, by whichever thread finishes a tile after the
+ *    interval is up, so watching a render does not slow it down.
+ *
+ * Every tile and every timed phase is also a JFR event (julia.Tile and
+ *    julia.Phase). They cost nothing unless a flight recording that enables
+ *    them is running, e.g. with
+ *    java -XX:StartFlightRecording:filename=render.jfr LejaPlotter
+ *
+ * @author RyanPachauri
+ */
+public class RenderMetrics {
+   //the names of the phases of an experiment
+   public static final String LEJA_SELECTION = "leja selection";
+   public static final String RENDERING = "rendering";
+   public static final String ENCODING = "encoding";
+   //escapes after this many iterations or more share the last bucket
+   public static final int HISTOGRAM_SIZE = 256;
+   //the least time between two progress reports
+   private static final long REPORT_INTERVAL = 1_000_000_000L;
+
+   //every JuliaSetFinder counts into a child of these metrics unless told
+   //otherwise
+   private static final RenderMetrics SHARED = new RenderMetrics();
+   static {
+      SHARED.addListener(new ConsoleListener());
+   }
+
+   private final LongAdder pixels;
+   private final LongAdder expectedPixels;
+   private final LongAdder evaluations;
+   private final LongAdder tiles;
+   private final LongAdder cachedTiles;
+   private final LongAdder notEscaped;
+   private final LongAdder[] histogram;
+   private final ConcurrentHashMap<String, LongAdder> phaseNanos;
+   private final List<Listener> listeners;
+   private final AtomicLong nextReport;
+   private volatile long startTime;
+   //the metrics the counts of this instance are added to as well, or null
+   private final RenderMetrics parent;
+
+   /**
+    * Is told how a render is going
+    */
+   public interface Listener {
+      /**
+       * Called at most once every REPORT_INTERVAL while pixels are rendered,
+       *    and when a render is done
+       */
+      void progress(RenderMetrics metrics);
+
+      /**
+       * Called when a timed phase ends
+       * @param nanos   how long the phase took
+       */
+      default void phaseFinished(RenderMetrics metrics, String phase,
+            long nanos) {
+      }
+   }
+
+   /**
+    * Prints progress the way JuliaSetFinder used to, but once a second
+    *    instead of once a tile
+    */
+   public static class ConsoleListener implements Listener {
+      //printed in front of every line, to tell renders running at once apart
+      private final String prefix;
+
+      public ConsoleListener() {
+         this("");
+      }
+
+      /**
+       * @param prefix  what every line starts with, like the name of a job
+       */
+      public ConsoleListener(String prefix) {
+         this.prefix = prefix;
+      }
+
+      public void progress(RenderMetrics metrics) {
+         long expected = metrics.getExpectedPixels();
+         System.out.printf(Locale.ROOT, "%s%d of %d pixels (%.1f%%), %.0f pixels/s%n",
+               this.prefix, metrics.getPixels(), expected, expected == 0 ?
+               100.0 : 100.0 * metrics.getPixels() / expected,
+               metrics.getPixelsPerSecond());
+      }
+
+      public void phaseFinished(RenderMetrics metrics, String phase,
+            long nanos) {
+         System.out.printf(Locale.ROOT, "%s%s took %.3f s%n", this.prefix,
+               phase, nanos / 1e9);
+      }
+   }
+
+   /**
+    * Counts of one tile or row, kept by the one thread rendering it
+    */
+   public static class Tally {
+      private long pixels;
+      private long evaluations;
+      private long notEscaped;
+      private final long[] histogram = new long[HISTOGRAM_SIZE];
+
+      /**
+       * Counts a pixel the polynomial was iterated for
+       * @param iterations the number of times the polynomial was evaluated
+       * @param escaped    true if the point escaped after that many
+       */
+      public void record(int iterations, boolean escaped) {
+         this.pixels++;
+         this.evaluations += iterations;
+         if (escaped) {
+            this.histogram[Math.min(iterations, HISTOGRAM_SIZE - 1)]++;
+         } else {
+            this.notEscaped++;
+         }
+      }
+
+      /**
+       * Counts a pixel that was colored without iterating, like a leja point
+       */
+      public void skip() {
+         this.pixels++;
+      }
+   }
+
+   /**
+    * A timed phase, ended by close
+    */
+   public class Phase implements AutoCloseable {
+      private final String name;
+      private final long start;
+      private final PhaseEvent event;
+
+      private Phase(String name) {
+         this.name = name;
+         this.event = new PhaseEvent();
+         this.event.name = name;
+         this.event.begin();
+         this.start = System.nanoTime();
+      }
+
+      public void close() {
+         long nanos = System.nanoTime() - this.start;
+         this.event.commit();
+         RenderMetrics.this.addPhaseTime(this.name, nanos);
+      }
+   }
+
+   @Name("julia.Tile")
+   @Label("Tile")
+   @Category("Julia sets")
+   @StackTrace(false)
+   static class TileEvent extends Event {
+      @Label("Left")
+      int left;
+      @Label("Top")
+      int top;
+      @Label("Pixels")
+      long pixels;
+      @Label("Polynomial Evaluations")
+      long evaluations;
+      @Label("From Cache")
+      boolean cached;
+   }
+
+   @Name("julia.Phase")
+   @Label("Phase")
+   @Category("Julia sets")
+   static class PhaseEvent extends Event {
+      @Label("Name")
+      String name;
+   }
+
+   public RenderMetrics() {
+      this(null);
+   }
+
+   private RenderMetrics(RenderMetrics parent) {
+      this.parent = parent;
+      this.pixels = new LongAdder();
+      this.expectedPixels = new LongAdder();
+      this.evaluations = new LongAdder();
+      this.tiles = new LongAdder();
+      this.cachedTiles = new LongAdder();
+      this.notEscaped = new LongAdder();
+      this.histogram = new LongAdder[HISTOGRAM_SIZE];
+      for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+         this.histogram[i] = new LongAdder();
+      }
+      this.phaseNanos = new ConcurrentHashMap<String, LongAdder>();
+      this.listeners = new CopyOnWriteArrayList<Listener>();
+      this.nextReport = new AtomicLong();
+      this.reset();
+   }
+
+   /**
+    * @return  the metrics the renders of every JuliaSetFinder are added to by
+    *    default, whose listeners print progress to System.out
+    */
+   public static RenderMetrics shared() {
+      return SHARED;
+   }
+
+   /**
+    * Every JuliaSetFinder counts its renders in a child of the shared
+    *    metrics, so the progress and pixels/s it reports are of its own
+    *    renders and not of every render since the process started.
+    * @return  new metrics whose counts are added to this instance as well,
+    *    and that report to their own listeners and then to the listeners of
+    *    this instance; listeners added to the child only hear about it
+    */
+   public RenderMetrics createChild() {
+      return new RenderMetrics(this);
+   }
+
+   public void addListener(Listener listener) {
+      this.listeners.add(listener);
+   }
+
+   public void removeListener(Listener listener) {
+      this.listeners.remove(listener);
+   }
+
+   /**
+    * Sets every counter back to 0 and starts measuring pixels/s again. The
+    *    counts already added to the parent of this instance stay there.
+    */
+   public void reset() {
+      this.pixels.reset();
+      this.expectedPixels.reset();
+      this.evaluations.reset();
+      this.tiles.reset();
+      this.cachedTiles.reset();
+      this.notEscaped.reset();
+      for (LongAdder bucket : this.histogram) {
+         bucket.reset();
+      }
+      this.phaseNanos.clear();
+      this.startTime = System.nanoTime();
+      this.nextReport.set(this.startTime + REPORT_INTERVAL);
+   }
+
+   /**
+    * Adds pixels that are about to be rendered to the total progress is
+    *    measured against
+    */
+   public void expect(long pixels) {
+      this.expectedPixels.add(pixels);
+      if (this.parent != null) {
+         this.parent.expect(pixels);
+      }
+   }
+
+   /**
+    * Adds the counts of a finished tile or row
+    * @param left the column of the left edge of the tile, for JFR
+    * @param top  the row of the top edge of the tile, for JFR
+    */
+   public void add(Tally tally, int left, int top) {
+      this.count(tally);
+      TileEvent event = new TileEvent();
+      if (event.shouldCommit()) {
+         event.left = left;
+         event.top = top;
+         event.pixels = tally.pixels;
+         event.evaluations = tally.evaluations;
+         event.commit();
+      }
+      this.reportIfDue();
+   }
+
+   /**
+    * Counts a tile that was taken from a TileCache instead of rendered
+    */
+   public void addCachedTile(int left, int top, long pixels) {
+      this.countCachedTile(pixels);
+      TileEvent event = new TileEvent();
+      if (event.shouldCommit()) {
+         event.left = left;
+         event.top = top;
+         event.pixels = pixels;
+         event.cached = true;
+         event.commit();
+      }
+      this.reportIfDue();
+   }
+
+   private void count(Tally tally) {
+      this.pixels.add(tally.pixels);
+      this.evaluations.add(tally.evaluations);
+      this.notEscaped.add(tally.notEscaped);
+      for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+         if (tally.histogram[i] != 0) {
+            this.histogram[i].add(tally.histogram[i]);
+         }
+      }
+      this.tiles.increment();
+      if (this.parent != null) {
+         this.parent.count(tally);
+      }
+   }
+
+   private void countCachedTile(long pixels) {
+      this.pixels.add(pixels);
+      this.tiles.increment();
+      this.cachedTiles.increment();
+      if (this.parent != null) {
+         this.parent.countCachedTile(pixels);
+      }
+   }
+
+   /**
+    * Starts timing a phase; use in a try-with-resources statement. The
+    *    phase is never referenced in the body, which javac warns about with
+    *    -Xlint:try, so the method holding the statement should be annotated
+    *    with @SuppressWarnings("try").
+    * @param name the name of the phase, like RENDERING
+    */
+   public Phase phase(String name) {
+      return new Phase(name);
+   }
+
+   /**
+    * Adds time spent in a phase
+    */
+   public void addPhaseTime(String name, long nanos) {
+      this.countPhaseTime(name, nanos);
+      this.phaseFinished(this, name, nanos);
+   }
+
+   /**
+    * Tells the listeners of this instance and of its ancestors that a phase
+    *    of metrics ended
+    */
+   private void phaseFinished(RenderMetrics metrics, String name, long nanos) {
+      for (Listener listener : this.listeners) {
+         listener.phaseFinished(metrics, name, nanos);
+      }
+      if (this.parent != null) {
+         this.parent.phaseFinished(metrics, name, nanos);
+      }
+   }
+
+   private void countPhaseTime(String name, long nanos) {
+      this.phaseNanos.computeIfAbsent(name, key -> new LongAdder()).add(nanos);
+      if (this.parent != null) {
+         this.parent.countPhaseTime(name, nanos);
+      }
+   }
+
+   private void reportIfDue() {
+      long next = this.nextReport.get();
+      long now = System.nanoTime();
+      //only the thread that moves nextReport on reports
+      if (now >= next && this.nextReport.compareAndSet(next, now + REPORT_INTERVAL)) {
+         this.report();
+      }
+   }
+
+   /**
+    * Tells every listener how far along the render is right away
+    */
+   public void report() {
+      this.progress(this);
+   }
+
+   /**
+    * Tells the listeners of this instance and of its ancestors how far along
+    *    metrics are
+    */
+   private void progress(RenderMetrics metrics) {
+      for (Listener listener : this.listeners) {
+         listener.progress(metrics);
+      }
+      if (this.parent != null) {
+         this.parent.progress(metrics);
+      }
+   }
+
+   public long getPixels() {
+      return this.pixels.sum();
+   }
+
+   public long getExpectedPixels() {
+      return this.expectedPixels.sum();
+   }
+
+   /**
+    * @return  the pixels done per second since this instance was created or
+    *    reset
+    */
+   public double getPixelsPerSecond() {
+      double seconds = (System.nanoTime() - this.startTime) / 1e9;
+      return seconds > 0 ? this.getPixels() / seconds : 0;
+   }
+
+   /**
+    * @return  the number of times the polynomial was evaluated
+    */
+   public long getPolynomialEvaluations() {
+      return this.evaluations.sum();
+   }
+
+   public long getTiles() {
+      return this.tiles.sum();
+   }
+
+   public long getCachedTiles() {
+      return this.cachedTiles.sum();
+   }
+
+   /**
+    * @return  how many pixels escaped after each number of iterations; the
+    *    last bucket also holds every pixel that took longer
+    */
+   public long[] getEscapeHistogram() {
+      long[] counts = new long[HISTOGRAM_SIZE];
+      for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+         counts[i] = this.histogram[i].sum();
+      }
+      return counts;
+   }
+
+   /**
+    * @return  the number of iterated pixels that never escaped
+    */
+   public long getNotEscaped() {
+      return this.notEscaped.sum();
+   }
+
+   /**
+    * @return  the nanoseconds spent in the phase, or 0 if it was never timed
+    */
+   public long getPhaseNanos(String name) {
+      LongAdder nanos = this.phaseNanos.get(name);
+      return nanos == null ? 0 : nanos.sum();
+   }
+
+   /**
+    * @return  the nanoseconds spent in every phase that was timed
+    */
+   public Map<String, Long> getPhaseNanos() {
+      Map<String, Long> phases = new TreeMap<String, Long>();
+      for (Map.Entry<String, LongAdder> entry : this.phaseNanos.entrySet()) {
+         phases.put(entry.getKey(), entry.getValue().sum());
+      }
+      return phases;
+   }
+
+   public String toString() {
+      StringBuilder result = new StringBuilder();
+      result.append("render metrics: ").append(this.getPixels()).
+            append(" pixels in ").append(this.getTiles()).append(" tiles (").
+            append(this.getCachedTiles()).append(" cached), ").
+            append(this.getPolynomialEvaluations()).
+            append(" polynomial evaluations, ").append(this.getNotEscaped()).
+            append(" pixels did not escape");
+      for (Map.Entry<String, Long> phase : this.getPhaseNanos().entrySet()) {
+         result.append(String.format(Locale.ROOT, ", %s %.3f s",
+               phase.getKey(), phase.getValue() / 1e9));
+      }
+      return result.toString();
+   }
+}
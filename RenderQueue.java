@@ -0,0 +1,603 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queued experiments (changing_n, changing_s, zooms, ...) a few at a
+ *    time without running out of memory.
+ *
+ * A job is a properties file:
+ *    name        the name of the job, used in the names of its files
+ *    experiment  jobs of different experiments share the machine fairly
+ *    shape       square, ISM, KLMY, staggered KLMY, staggered KLMY 2 or
+ *                Fish Diamond Heart
+ *    size        the size given to MultiShapeCreator
+ *    n           the number of leja points
+ *    s           defaults to 1 / n
+ *    lejaFile    leja points to use instead of choosing them (optional)
+ *    render      initial (the default), zoom or none
+ *    zoomArea    leftX rightX topY bottomY, for a zoom
+ *    zoom        the amount to zoom by, for a zoom
+ *    output      what the names of its files start with, by default
+ *                "experiment/name - "
+ *    timeLimit   the most seconds the job may take (optional)
+ * Leja points that are chosen are saved like LejaPlotter.saveLejas does.
+ *    Zooms are rendered with drawSmallerRangeStreaming, so they keep a
+ *    checkpoint and only a band of rows on the heap. A job that reaches its
+ *    time limit stops at the next tile: an initial render is saved with what
+ *    it finished, and a zoom fails but keeps its checkpoint, so submitting it
+ *    again continues it.
+ *
+ * The queue is a directory with a directory for every state of a job:
+ *    pending/  running/  done/  failed/
+ * A job is a file that moves from pending to running to done or failed, with
+ *    the sequence number it was submitted with in front of its name, so a
+ *    queue can be stopped at any time and run again: jobs that were running
+ *    go back to pending, and zooms pick up from their checkpoints. Failed
+ *    jobs keep the error they failed with as the property error.
+ *
+ * Before a job starts, its peak heap is estimated from the size of its
+ *    Viewport, its zoom and n (see estimateBytes). A job is only started while
+ *    the estimates of the running jobs and its own fit in the memory budget,
+ *    except that a job bigger than the budget runs once nothing else does.
+ *    The next job is the oldest one of the experiment with the fewest running
+ *    jobs, so a long sweep does not hold up everything queued after it; if it
+ *    does not fit yet, no other job overtakes it. Running jobs render on the
+ *    common ForkJoinPool, whose workers take the tiles of every running job in
+ *    turn. Each job counts its render in its own RenderMetrics, and its
+ *    progress lines start with its name.
+ *
+ * Usage:
+ *    java RenderQueue submit queue job.properties...
+ *    java RenderQueue run queue [maxRunning] [budgetMB]
+ *       runs jobs until the queue is empty, picking up jobs submitted while
+ *       it runs
+ *    java RenderQueue status queue
+ *
+ * @author RyanPachauri
+ */
+public class RenderQueue {
+   public static final String JOB_SUFFIX = ".properties";
+   private static final String PENDING = "pending";
+   private static final String RUNNING = "running";
+   private static final String DONE = "done";
+   private static final String FAILED = "failed";
+   private static final String LOCK = "queue.lock";
+   //how often the queue is checked for new jobs while waiting
+   private static final long POLL_MILLIS = 1000;
+
+   //what every job needs besides its pictures: leja points, tiles being
+   //rendered and the buffers of the PNG encoder
+   private static final long JOB_BYTES = 16L << 20;
+   //the letters of a shape are scaled as ARGB images the size of their part
+   //of the Viewport
+   private static final int SHAPE_BYTES_PER_PIXEL = 4;
+   //a shape is its boundary, which never takes up more than this part of the
+   //Viewport, and every point of it takes a long in the ShapeSet, two
+   //doubles as a candidate and three more while leja points are chosen
+   private static final double SHAPE_FILL = 0.02;
+   private static final int CANDIDATE_BYTES = 48;
+   //a leja point with its cached coordinates
+   private static final int LEJA_POINT_BYTES = 64;
+   //the palette indices of the picture and the PNG they are compressed to
+   private static final int RENDER_BYTES_PER_PIXEL = 2;
+   //drawSmallerRangeStreaming holds a band of this many rows
+   private static final int BAND_ROWS = 256;
+
+   private final File directory;
+   private final int maxRunning;
+   private final long budgetBytes;
+   private final Map<String, Integer> runningByExperiment;
+   //the order experiments last started a job in, so ties go to the one that
+   //waited longest
+   private final Map<String, Long> lastStarted;
+   private long admittedBytes;
+   private int numRunning;
+   private long startCount;
+
+   /**
+    * A job read from its file
+    */
+   public static class Job {
+      final String name;
+      final String experiment;
+      final String shape;
+      final int size;
+      final int n;
+      final double s;
+      final String lejaFile;
+      final String render;
+      final int[] zoomArea;
+      final int zoom;
+      final String output;
+      //0 for none
+      final long timeLimitMillis;
+
+      /**
+       * @throws IllegalArgumentException if the job is missing a property or
+       *    has one that is not valid
+       */
+      Job(Properties properties, String defaultName) {
+         try {
+            this.name = properties.getProperty("name", defaultName);
+            this.experiment = properties.getProperty("experiment", "default");
+            this.shape = properties.getProperty("shape");
+            this.size = Integer.parseInt(properties.getProperty("size"));
+            this.n = Integer.parseInt(properties.getProperty("n"));
+            this.s = properties.containsKey("s") ?
+                  Double.parseDouble(properties.getProperty("s")) : 1.0 / this.n;
+            this.lejaFile = properties.getProperty("lejaFile");
+            this.render = properties.getProperty("render", "initial");
+            this.output = properties.getProperty("output",
+                  this.experiment + "/" + this.name + " - ");
+            this.timeLimitMillis = (long) (1000 * Double.parseDouble(
+                  properties.getProperty("timeLimit", "0")));
+            if (this.render.equals("zoom")) {
+               String[] area = properties.getProperty("zoomArea").trim()
+                     .split("\\s+");
+               this.zoomArea = new int[4];
+               for (int i = 0; i < 4; i++) {
+                  this.zoomArea[i] = Integer.parseInt(area[i]);
+               }
+               this.zoom = Integer.parseInt(properties.getProperty("zoom"));
+            } else {
+               this.zoomArea = null;
+               this.zoom = 1;
+            }
+            //fails for a shape that does not exist
+            this.getViewport();
+         } catch (NullPointerException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("job " + defaultName +
+                  " is missing a property", e);
+         }
+         if (this.size <= 0 || this.n < 2 || this.zoom <= 0 ||
+               this.timeLimitMillis < 0 ||
+               !Arrays.asList("initial", "zoom", "none").contains(this.render) ||
+               (this.render.equals("none") && this.lejaFile != null)) {
+            throw new IllegalArgumentException("job " + this.name +
+                  " is not valid");
+         }
+      }
+
+      /**
+       * @return  the job in file
+       */
+      public static Job load(File file) throws IOException {
+         Properties properties = new Properties();
+         try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+         }
+         String name = file.getName();
+         if (name.endsWith(JOB_SUFFIX)) {
+            name = name.substring(0, name.length() - JOB_SUFFIX.length());
+         }
+         //the sequence number the queue puts in front
+         return new Job(properties, name.replaceFirst("^\\d+ ", ""));
+      }
+
+      Viewport getViewport() {
+         switch (this.shape) {
+            case "square":
+               return MultiShapeCreator.createViewport(this.size, this.size);
+            case "ISM":
+               return MultiShapeCreator.getLinearISMViewport(this.size);
+            case "KLMY":
+               return MultiShapeCreator.getLinearKLMYViewport(this.size);
+            case "staggered KLMY":
+               return MultiShapeCreator.getStaggeredKLMYViewport(this.size);
+            case "staggered KLMY 2":
+               return MultiShapeCreator.getStaggeredKLMYViewport2(this.size);
+            case "Fish Diamond Heart":
+               return MultiShapeCreator.getHeartDiamondFishViewport(this.size);
+            default:
+               throw new IllegalArgumentException("unknown shape " + this.shape);
+         }
+      }
+
+      ShapeSet getShape() {
+         switch (this.shape) {
+            case "square":
+               return ShapeCreator.getSquare(this.size);
+            case "ISM":
+               return MultiShapeCreator.getLinearISM(this.size);
+            case "KLMY":
+               return MultiShapeCreator.getLinearKLMY(this.size);
+            case "staggered KLMY":
+               return MultiShapeCreator.getStaggeredKLMY(this.size);
+            case "staggered KLMY 2":
+               return MultiShapeCreator.getStaggeredKLMY2(this.size);
+            case "Fish Diamond Heart":
+               return MultiShapeCreator.getHeartDiamondFish(this.size);
+            default:
+               throw new IllegalArgumentException("unknown shape " + this.shape);
+         }
+      }
+
+      /**
+       * @return  about the most heap this job takes while it runs
+       */
+      public long estimateBytes() {
+         Viewport viewport = this.getViewport();
+         long pixels = (long) viewport.width() * viewport.height();
+         long bytes = JOB_BYTES + (long) LEJA_POINT_BYTES * this.n;
+         if (this.lejaFile == null) {
+            bytes += pixels * SHAPE_BYTES_PER_PIXEL +
+                  (long) (pixels * SHAPE_FILL) * CANDIDATE_BYTES;
+         }
+         if (this.render.equals("initial")) {
+            bytes += pixels * RENDER_BYTES_PER_PIXEL;
+         } else if (this.render.equals("zoom")) {
+            long columns = (long) this.zoom * (this.zoomArea[1] - this.zoomArea[0]);
+            bytes += columns * BAND_ROWS * RENDER_BYTES_PER_PIXEL;
+         }
+         return bytes;
+      }
+
+      /**
+       * Chooses or loads the leja points of this job and renders it
+       */
+      void run() {
+         RenderLimit limit = this.timeLimitMillis > 0 ?
+               new RenderLimit(this.timeLimitMillis) : new RenderLimit();
+         //jobs run at the same time, so each counts and reports on its own
+         RenderMetrics metrics = new RenderMetrics();
+         metrics.addListener(new RenderMetrics.ConsoleListener(this.name + ": "));
+         File parent = new File(this.output).getParentFile();
+         if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + parent);
+         }
+         Viewport viewport = this.getViewport();
+         LejaPoints lp;
+         if (this.lejaFile != null) {
+            lp = new LejaPoints(this.lejaFile);
+         } else {
+            lp = new LejaPoints(this.getShape().toCandidates(viewport), this.n,
+                  this.s);
+            LejaPlotter.saveLejas(this.output, lp);
+         }
+         if (this.render.equals("initial")) {
+            JuliaSetFinder jsf = new JuliaSetFinder(lp, viewport);
+            jsf.setMetrics(metrics);
+            PartialRender render = LejaPlotter.drawInitialJuliaSet(this.output,
+                  jsf, new HashSet<Complex>(), limit);
+            if (!render.isComplete()) {
+               System.out.println(this.name + " stopped: " + render);
+            }
+         } else if (this.render.equals("zoom") &&
+               !LejaPlotter.drawSmallerRangeStreaming(this.output, viewport,
+               this.zoomArea[0], this.zoomArea[1], this.zoomArea[2],
+               this.zoomArea[3], this.zoom, lp, limit, metrics)) {
+            String reason = limit.getReason();
+            throw new IllegalStateException(reason == null ?
+                  "zoom could not be saved" : "zoom stopped (" + reason +
+                  "); submit it again to continue");
+         }
+         System.out.println(this.name + ": " + metrics);
+      }
+
+      public String toString() {
+         return this.name + " (" + this.experiment + ", " + this.shape + " " +
+               this.size + ", n = " + this.n + ", " + (this.render.equals("zoom") ?
+               "zoom " + this.zoom + "x" : this.render) + ", about " +
+               this.estimateBytes() / (1 << 20) + " MB)";
+      }
+   }
+
+   /**
+    * @param directory  the queue
+    * @param maxRunning the most jobs to run at once
+    * @param budgetBytes   the most heap the estimates of running jobs may add
+    *                      up to
+    */
+   public RenderQueue(File directory, int maxRunning, long budgetBytes) {
+      if (maxRunning < 1 || budgetBytes <= 0) {
+         throw new IllegalArgumentException();
+      }
+      this.directory = directory;
+      this.maxRunning = maxRunning;
+      this.budgetBytes = budgetBytes;
+      this.runningByExperiment = new HashMap<String, Integer>();
+      this.lastStarted = new HashMap<String, Long>();
+      for (String state : new String[] {PENDING, RUNNING, DONE, FAILED}) {
+         File stateDirectory = new File(directory, state);
+         if (!stateDirectory.isDirectory() && !stateDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create " + stateDirectory);
+         }
+      }
+   }
+
+   /**
+    * Adds a copy of the job in file to the end of the queue
+    * @return  the file of the queued job
+    * @throws IllegalArgumentException if the job is not valid
+    */
+   public synchronized File submit(File file) throws IOException {
+      Job.load(file);
+      String name = file.getName();
+      if (!name.endsWith(JOB_SUFFIX)) {
+         name += JOB_SUFFIX;
+      }
+      //written under another name, so the scheduler never reads half a job
+      File queued = new File(this.getDirectory(PENDING),
+            String.format(Locale.ROOT, "%06d %s", this.nextNumber(), name));
+      File partial = new File(this.directory, queued.getName() + ".tmp");
+      Files.copy(file.toPath(), partial.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      Files.move(partial.toPath(), queued.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return queued;
+   }
+
+   /**
+    * @return  one more than the largest sequence number of any job
+    */
+   private int nextNumber() {
+      int largest = 0;
+      for (String state : new String[] {PENDING, RUNNING, DONE, FAILED}) {
+         for (File job : this.list(state)) {
+            largest = Math.max(largest, getNumber(job));
+         }
+      }
+      return largest + 1;
+   }
+
+   private static int getNumber(File job) {
+      String name = job.getName();
+      int space = name.indexOf(' ');
+      try {
+         return Integer.parseInt(space < 0 ? name : name.substring(0, space));
+      } catch (NumberFormatException e) {
+         return 0;
+      }
+   }
+
+   private File getDirectory(String state) {
+      return new File(this.directory, state);
+   }
+
+   /**
+    * @return  the jobs in state, oldest first
+    */
+   private List<File> list(String state) {
+      File[] files = this.getDirectory(state).listFiles(
+            (dir, name) -> name.endsWith(JOB_SUFFIX));
+      List<File> jobs = new ArrayList<File>(files == null ?
+            Collections.<File>emptyList() : Arrays.asList(files));
+      jobs.sort(Comparator.comparingInt(RenderQueue::getNumber));
+      return jobs;
+   }
+
+   private File move(File job, String state) throws IOException {
+      File moved = new File(this.getDirectory(state), job.getName());
+      Files.move(job.toPath(), moved.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return moved;
+   }
+
+   /**
+    * Runs jobs until none are pending or running. Jobs a run that was
+    *    stopped left running are run again first.
+    * @return  the number of jobs that failed
+    * @throws IllegalStateException if another process is running the queue
+    */
+   public int run() throws IOException, InterruptedException {
+      try (FileChannel lockFile = FileChannel.open(
+            new File(this.directory, LOCK).toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+            FileLock lock = lockFile.tryLock()) {
+         if (lock == null) {
+            throw new IllegalStateException(this.directory +
+                  " is run by another process");
+         }
+         for (File job : this.list(RUNNING)) {
+            System.out.println("resuming " + job.getName());
+            this.move(job, PENDING);
+         }
+         AtomicInteger count = new AtomicInteger();
+         ExecutorService runners = Executors.newFixedThreadPool(this.maxRunning,
+               task -> new Thread(task, "job " + count.incrementAndGet()));
+         AtomicInteger failures = new AtomicInteger();
+         try {
+            synchronized (this) {
+               while (true) {
+                  File next = this.pickNext();
+                  if (next == null) {
+                     if (this.numRunning == 0 && this.list(PENDING).isEmpty()) {
+                        break;
+                     }
+                     //woken when a job finishes
+                     this.wait(POLL_MILLIS);
+                     continue;
+                  }
+                  this.start(next, runners, failures);
+               }
+            }
+         } finally {
+            runners.shutdown();
+         }
+         return failures.get();
+      }
+   }
+
+   /**
+    * @return  the next pending job if it can start now, or null
+    */
+   private File pickNext() throws IOException {
+      if (this.numRunning >= this.maxRunning) {
+         return null;
+      }
+      //the oldest job of every experiment
+      Map<String, File> oldest = new LinkedHashMap<String, File>();
+      Map<String, Job> jobs = new HashMap<String, Job>();
+      for (File file : this.list(PENDING)) {
+         Job job;
+         try {
+            job = Job.load(file);
+         } catch (IllegalArgumentException e) {
+            fail(this.move(file, FAILED), e);
+            continue;
+         }
+         if (!oldest.containsKey(job.experiment)) {
+            oldest.put(job.experiment, file);
+            jobs.put(job.experiment, job);
+         }
+      }
+      String fairest = null;
+      for (String experiment : oldest.keySet()) {
+         if (fairest == null || this.compareTurns(experiment, fairest) < 0) {
+            fairest = experiment;
+         }
+      }
+      if (fairest == null) {
+         return null;
+      }
+      long bytes = jobs.get(fairest).estimateBytes();
+      if (this.numRunning > 0 && this.admittedBytes + bytes > this.budgetBytes) {
+         return null;
+      }
+      return oldest.get(fairest);
+   }
+
+   /**
+    * @return  less than 0 if experiment should start a job before other
+    */
+   private int compareTurns(String experiment, String other) {
+      int running = this.runningByExperiment.getOrDefault(experiment, 0);
+      int otherRunning = this.runningByExperiment.getOrDefault(other, 0);
+      if (running != otherRunning) {
+         return Integer.compare(running, otherRunning);
+      }
+      return Long.compare(this.lastStarted.getOrDefault(experiment, -1L),
+            this.lastStarted.getOrDefault(other, -1L));
+   }
+
+   /**
+    * Moves file to running and runs its job on runners
+    */
+   private void start(File file, ExecutorService runners,
+         AtomicInteger failures) throws IOException {
+      Job job = Job.load(file);
+      long bytes = job.estimateBytes();
+      File running = this.move(file, RUNNING);
+      this.numRunning++;
+      this.admittedBytes += bytes;
+      this.runningByExperiment.merge(job.experiment, 1, Integer::sum);
+      this.lastStarted.put(job.experiment, this.startCount++);
+      System.out.println("starting " + job + ", " + this.admittedBytes /
+            (1 << 20) + " of " + this.budgetBytes / (1 << 20) + " MB admitted" +
+            (bytes > this.budgetBytes ? ", more than the budget" : ""));
+      runners.execute(() -> {
+         long startTime = System.currentTimeMillis();
+         Throwable failure = null;
+         try {
+            job.run();
+         } catch (Throwable e) {
+            //any failure has to reach the bookkeeping below, or run would
+            //wait forever for a job that is no longer running
+            failure = e;
+         }
+         long seconds = (System.currentTimeMillis() - startTime) / 1000;
+         synchronized (this) {
+            this.numRunning--;
+            this.admittedBytes -= bytes;
+            this.runningByExperiment.merge(job.experiment, -1, Integer::sum);
+            try {
+               if (failure == null) {
+                  this.move(running, DONE);
+                  System.out.println("finished " + job.name + " in " + seconds +
+                        " s");
+               } else {
+                  failure.printStackTrace();
+                  failures.incrementAndGet();
+                  fail(this.move(running, FAILED), failure);
+               }
+            } catch (IOException e) {
+               e.printStackTrace();
+            }
+            this.notifyAll();
+         }
+      });
+   }
+
+   /**
+    * Records why the job in file failed in it
+    */
+   private static void fail(File file, Throwable failure) throws IOException {
+      System.out.println("failed " + file.getName() + ": " + failure);
+      Properties properties = new Properties();
+      try (InputStream in = new FileInputStream(file)) {
+         properties.load(in);
+      }
+      properties.setProperty("error", String.valueOf(failure));
+      try (OutputStream out = new FileOutputStream(file)) {
+         properties.store(out, "failed");
+      }
+   }
+
+   public String toString() {
+      StringBuilder result = new StringBuilder("render queue " + this.directory);
+      for (String state : new String[] {PENDING, RUNNING, DONE, FAILED}) {
+         List<File> jobs = this.list(state);
+         result.append(System.lineSeparator()).append("   ").append(state)
+               .append(": ").append(jobs.size());
+         if (state.equals(DONE)) {
+            continue;
+         }
+         for (File job : jobs) {
+            String description;
+            try {
+               description = Job.load(job).toString();
+            } catch (IOException | IllegalArgumentException e) {
+               description = e.getMessage();
+            }
+            result.append(System.lineSeparator()).append("      ")
+                  .append(getNumber(job)).append(" ").append(description);
+         }
+      }
+      return result.toString();
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 2) {
+         System.out.println("usage: java RenderQueue submit queue job.properties...");
+         System.out.println("       java RenderQueue run queue [maxRunning] " +
+               "[budgetMB]");
+         System.out.println("       java RenderQueue status queue");
+         return;
+      }
+      File directory = new File(args[1]);
+      int maxRunning = Math.max(2, Runtime.getRuntime().availableProcessors());
+      //the rest is left for the shared TileCache and ShapeCache
+      long budget = Runtime.getRuntime().maxMemory() / 2;
+      switch (args[0]) {
+         case "submit":
+            RenderQueue queue = new RenderQueue(directory, maxRunning, budget);
+            for (int i = 2; i < args.length; i++) {
+               try {
+                  System.out.println("queued " + queue.submit(new File(args[i])));
+               } catch (IllegalArgumentException e) {
+                  System.out.println("not queued " + args[i] + ": " +
+                        e.getMessage());
+               }
+            }
+            break;
+         case "run":
+            if (args.length > 2) {
+               maxRunning = Integer.parseInt(args[2]);
+            }
+            if (args.length > 3) {
+               budget = Long.parseLong(args[3]) << 20;
+            }
+            int failures = new RenderQueue(directory, maxRunning, budget).run();
+            System.out.println("queue is empty, " + failures + " jobs failed");
+            break;
+         case "status":
+            System.out.println(new RenderQueue(directory, maxRunning, budget));
+            break;
+         default:
+            System.out.println("unknown command " + args[0]);
+      }
+   }
+}
@@ -0,0 +1,269 @@
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Runs fixed scenes end to end the way LejaPlotter.main does (load the
+ *    shape, choose leja points, render the Julia set and encode it), reports
+ *    the speed and peak heap of every stage, and compares every picture with
+ *    its golden image, so an optimization is checked for speed and for
+ *    correctness at once.
+ *
+ * Scenes are small versions of the experiments we run: the square, ISM, KLMY,
+ *    Fish Diamond Heart and a zoom into Fish Diamond Heart. Everything in a
+ *    scene is deterministic, so a picture that differs from its golden image
+ *    means the output has changed.
+ *
+ * Usage:
+ *    java SceneBenchmark [results.json] [update]
+ *    with update, the golden images are replaced by the new pictures
+ *
+ * @author RyanPachauri
+ */
+public class SceneBenchmark {
+   private static final int SIZE = 200;
+   private static final int N = 100;
+   private static final String DIRECTORY = "scene benchmark/";
+   private static final String GOLDEN_DIRECTORY = DIRECTORY + "golden/";
+   private static final String OUTPUT_DIRECTORY = DIRECTORY + "output/";
+   private static final String DEFAULT_RESULTS = DIRECTORY + "results.json";
+
+   /**
+    * A picture to render, with the shape its leja points are chosen from
+    */
+   private static class Scene {
+      final String name;
+      final Supplier<ShapeSet> shape;
+      final Viewport viewport;
+      //the zoom area of viewport that is rendered, or null for all of it
+      final int[] zoomArea;
+      final int zoom;
+
+      Scene(String name, Supplier<ShapeSet> shape, Viewport viewport) {
+         this(name, shape, viewport, null, 1);
+      }
+
+      Scene(String name, Supplier<ShapeSet> shape, Viewport viewport,
+            int[] zoomArea, int zoom) {
+         this.name = name;
+         this.shape = shape;
+         this.viewport = viewport;
+         this.zoomArea = zoomArea;
+         this.zoom = zoom;
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      File output = new File(args.length > 0 ? args[0] : DEFAULT_RESULTS);
+      boolean update = args.length > 1 && args[1].equals("update");
+      new File(GOLDEN_DIRECTORY).mkdirs();
+      new File(OUTPUT_DIRECTORY).mkdirs();
+
+      List<String> results = new ArrayList<String>();
+      int numDifferent = 0;
+      for (Scene scene : scenes()) {
+         System.out.println(scene.name);
+         File picture = new File(OUTPUT_DIRECTORY + scene.name + "." +
+               ShapeCreator.IMAGE_SUFFIX);
+         runScene(scene, picture, results);
+         //a picture of one color would match a render that colors every
+         //pixel the same, so it is never made a golden image
+         if (!hasInsideAndOutside(picture)) {
+            System.out.println("   has no pixels inside or no pixels outside " +
+                  "the Julia set");
+            numDifferent++;
+            continue;
+         }
+         File golden = new File(GOLDEN_DIRECTORY + scene.name + "." +
+               ShapeCreator.IMAGE_SUFFIX);
+         if (update || !golden.isFile()) {
+            copy(picture, golden);
+            System.out.println("   golden image written");
+            continue;
+         }
+         long different = countDifferentPixels(picture, golden);
+         System.out.println("   " + (different == 0 ? "matches golden image" :
+               different + " pixels differ from golden image"));
+         results.add(String.format(Locale.ROOT, "{\"scene\": %s, " +
+               "\"stage\": \"golden\", \"differentPixels\": %d}",
+               Benchmarks.quote(scene.name), different));
+         if (different != 0) {
+            numDifferent++;
+         }
+      }
+      Benchmarks.writeJson(output, "scenes", results);
+      System.out.println("results written to " + output);
+      if (numDifferent > 0) {
+         System.out.println(numDifferent + " scenes differ from their golden " +
+               "images or are of one color");
+         System.exit(1);
+      }
+   }
+
+   private static List<Scene> scenes() {
+      List<Scene> scenes = new ArrayList<Scene>();
+      scenes.add(new Scene("square", () -> ShapeCreator.getSquare(SIZE),
+            MultiShapeCreator.createViewport(SIZE, SIZE)));
+      scenes.add(new Scene("ISM", () -> MultiShapeCreator.getLinearISM(SIZE),
+            MultiShapeCreator.getLinearISMViewport(SIZE)));
+      scenes.add(new Scene("KLMY", () -> MultiShapeCreator.getLinearKLMY(SIZE),
+            MultiShapeCreator.getLinearKLMYViewport(SIZE)));
+      scenes.add(new Scene("Fish Diamond Heart",
+            () -> MultiShapeCreator.getHeartDiamondFish(SIZE),
+            MultiShapeCreator.getHeartDiamondFishViewport(SIZE)));
+      //near the zoom area of LejaPlotter.main, which at this size falls
+      //entirely inside the Julia set; this one crosses its boundary
+      int[] zoomArea = {267, 270, 211, 214};
+      scenes.add(new Scene("Fish Diamond Heart zoom",
+            () -> MultiShapeCreator.getHeartDiamondFish(SIZE),
+            MultiShapeCreator.getHeartDiamondFishViewport(SIZE), zoomArea, 100));
+      return scenes;
+   }
+
+   /**
+    * Runs the stages of scene, saving its picture to picture and adding the
+    *    results of every stage to results
+    */
+   private static void runScene(Scene scene, File picture, List<String> results)
+         throws Exception {
+      ShapeSet[] shape = new ShapeSet[1];
+      LejaPoints[] lp = new LejaPoints[1];
+      IndexedRaster[] img = new IndexedRaster[1];
+
+      //images scaled for an earlier scene are not reused, but contours traced
+      //for one are, as in any run that draws the same letter twice
+      ShapeCache.shared().clear();
+      long[] stage = measure(() -> shape[0] = scene.shape.get());
+      report(results, scene, "shape", stage, shape[0].size(), 1, "points/s");
+
+      double[][] candidates = shape[0].toCandidates(scene.viewport);
+      stage = measure(() -> lp[0] = new LejaPoints(candidates, N, 1.0 / N));
+      report(results, scene, "leja", stage, N, 1, "leja points/s");
+
+      JuliaSetFinder jsf = scene.zoomArea == null ?
+            new JuliaSetFinder(lp[0], scene.viewport) :
+            LejaPlotter.createZoomFinder(scene.viewport, scene.zoomArea[0],
+            scene.zoomArea[1], scene.zoomArea[2], scene.zoomArea[3],
+            scene.zoom, lp[0]);
+      //every scene is rendered from scratch
+      jsf.setTileCache(null);
+      long pixels = (long) jsf.getWidth() * jsf.getHeight();
+      stage = measure(() ->
+            img[0] = jsf.plotIndicesUsingObvious(new HashSet<Complex>()));
+      report(results, scene, "render", stage, pixels, 1e6, "Mpixel/s");
+
+      String fileName = picture.getPath();
+      stage = measure(() -> {
+         if (scene.zoomArea == null) {
+            img[0].save(fileName, Compositor.shapeLayer(shape[0],
+                  LejaPlotter.ORIGINAL_SHAPE_INDEX, LejaPlotter.LEJA_POINT_INDEX));
+         } else {
+            img[0].save(fileName);
+         }
+      });
+      report(results, scene, "encode", stage, pixels, 1e6, "Mpixel/s");
+   }
+
+   /**
+    * Runs body quietly after a garbage collection
+    * @return  the nanoseconds body took and the peak heap while it ran
+    */
+   private static long[] measure(Benchmarks.Body body) throws Exception {
+      System.gc();
+      List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+         if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+            pool.resetPeakUsage();
+            pools.add(pool);
+         }
+      }
+      long start = System.nanoTime();
+      Benchmarks.quietly(body);
+      long time = System.nanoTime() - start;
+      //the peaks of the pools need not be at the same moment, so this is an
+      //upper bound
+      long peak = 0;
+      for (MemoryPoolMXBean pool : pools) {
+         peak += pool.getPeakUsage().getUsed();
+      }
+      return new long[] {time, peak};
+   }
+
+   /**
+    * Prints and adds to results how fast a stage went
+    * @param stage   the nanoseconds and peak heap of the stage
+    * @param work    how much the stage did
+    * @param unit    work is divided by unit for the throughput
+    */
+   private static void report(List<String> results, Scene scene, String name,
+         long[] stage, long work, double unit, String throughputUnit) {
+      double seconds = stage[0] / 1e9;
+      double throughput = work / unit / seconds;
+      System.out.printf(Locale.ROOT, "   %-7s %9.3f s %12.2f %-14s peak heap %5d MB%n",
+            name, seconds, throughput, throughputUnit, stage[1] >> 20);
+      results.add(String.format(Locale.ROOT, "{\"scene\": %s, \"stage\": %s, " +
+            "\"seconds\": %.6f, \"throughput\": %.3f, \"throughputUnit\": %s, " +
+            "\"peakHeap\": %d}", Benchmarks.quote(scene.name),
+            Benchmarks.quote(name), seconds, throughput,
+            Benchmarks.quote(throughputUnit), stage[1]));
+   }
+
+   /**
+    * @return  the number of pixels that differ between the two pictures, or
+    *    the number of pixels of the bigger one if their sizes differ
+    */
+   private static long countDifferentPixels(File picture, File golden)
+         throws IOException {
+      BufferedImage a = ImageIO.read(picture);
+      BufferedImage b = ImageIO.read(golden);
+      if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+         return Math.max((long) a.getWidth() * a.getHeight(),
+               (long) b.getWidth() * b.getHeight());
+      }
+      int width = a.getWidth();
+      int height = a.getHeight();
+      int[] pixelsA = a.getRGB(0, 0, width, height, null, 0, width);
+      int[] pixelsB = b.getRGB(0, 0, width, height, null, 0, width);
+      long different = 0;
+      for (int i = 0; i < pixelsA.length; i++) {
+         if (pixelsA[i] != pixelsB[i]) {
+            different++;
+         }
+      }
+      return different;
+   }
+
+   /**
+    * @return  true if picture has pixels inside and pixels outside the
+    *    Julia set
+    */
+   private static boolean hasInsideAndOutside(File picture) throws IOException {
+      BufferedImage image = ImageIO.read(picture);
+      int inside = LejaPlotter.INSIDE_JULIA_SET.getRGB();
+      int outside = LejaPlotter.OUTSIDE_JULIA_SET.getRGB();
+      boolean hasInside = false;
+      boolean hasOutside = false;
+      for (int y = 0; y < image.getHeight(); y++) {
+         for (int x = 0; x < image.getWidth(); x++) {
+            int rgb = image.getRGB(x, y);
+            hasInside |= rgb == inside;
+            hasOutside |= rgb == outside;
+         }
+      }
+      return hasInside && hasOutside;
+   }
+
+   private static void copy(File from, File to) throws IOException {
+      try (InputStream in = new FileInputStream(from);
+            OutputStream out = new FileOutputStream(to)) {
+         byte[] buffer = new byte[1 << 16];
+         for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+         }
+      }
+   }
+}
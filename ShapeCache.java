@@ -0,0 +1,216 @@
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Process-wide cache of shapes scaled to a size, so sweeps over n and s and
+ *    MultiShapeCreator layouts that use the same letter more than once only
+ *    scale the image and find its boundary once.
+ *
+ * Each entry holds which pixels of the scaled image are inside the shape and
+ *    the boundary ShapeCreator makes of them, with the top left corner of the
+ *    image at (0, 0). Entries are evicted least recently used first once they
+ *    take more than the memory budget.
+ *
+ * Different shapes are loaded concurrently; threads asking for a shape that
+ *    is being loaded wait for it instead of loading it again. Shapes are only
+ *    read from original_shapes/: a scaled image already there is used, and
+ *    otherwise the image is scaled in memory and never written back.
+ *
+ * @author RyanPachauri
+ */
+public class ShapeCache {
+   private static final ShapeCache SHARED = new ShapeCache(64L << 20);
+
+   private final long maxBytes;
+   private final LinkedHashMap<String, Entry> entries;
+   private long bytes;
+   private final ConcurrentHashMap<String, FutureTask<Entry>> loading;
+
+   /**
+    * A shape scaled to a size
+    */
+   public static class Entry {
+      private final int size;
+      private final BitSet inside;
+      private final ShapeSet boundary;
+
+      private Entry(int size, BitSet inside, ShapeSet boundary) {
+         this.size = size;
+         this.inside = inside;
+         this.boundary = boundary;
+      }
+
+      /**
+       * @return  the width and height of the scaled image
+       */
+      public int getSize() {
+         return this.size;
+      }
+
+      /**
+       * @return  true if pixel (x, y) of the scaled image is in the shape
+       */
+      public boolean isInside(int x, int y) {
+         return this.inside.get(y * this.size + x);
+      }
+
+      /**
+       * @return  a new ShapeSet of the boundary, moved by (startX, startY)
+       */
+      public ShapeSet getBoundary(int startX, int startY) {
+         return this.boundary.translate(startX, startY);
+      }
+
+      private long getBytes() {
+         return this.inside.size() / 8 + 8L * this.boundary.size();
+      }
+   }
+
+   /**
+    * @param maxBytes   roughly the most memory the cached shapes may take
+    */
+   public ShapeCache(long maxBytes) {
+      this.maxBytes = maxBytes;
+      //access order makes the eldest entry the least recently used one
+      this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+      this.bytes = 0;
+      this.loading = new ConcurrentHashMap<String, FutureTask<Entry>>();
+   }
+
+   /**
+    * @return  the cache ShapeCreator uses
+    */
+   public static ShapeCache shared() {
+      return SHARED;
+   }
+
+   /**
+    * @param directory  the directory holding shape + ".png"
+    * @param shape   the name of the shape
+    * @param size    the size of the shape
+    * @return  the shape scaled to the given size
+    */
+   public Entry get(File directory, String shape, int size) {
+      String key = directory.getPath() + "/" + shape + " " + size;
+      synchronized (this) {
+         Entry entry = this.entries.get(key);
+         if (entry != null) {
+            return entry;
+         }
+      }
+      FutureTask<Entry> task = new FutureTask<Entry>(
+            () -> load(directory, shape, size));
+      FutureTask<Entry> running = this.loading.putIfAbsent(key, task);
+      if (running == null) {
+         running = task;
+         try {
+            task.run();
+         } finally {
+            this.loading.remove(key, task);
+         }
+      }
+      try {
+         Entry entry = running.get();
+         this.put(key, entry);
+         return entry;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+         throw new IllegalStateException("could not load " + shape, e.getCause());
+      }
+   }
+
+   private synchronized void put(String key, Entry entry) {
+      if (this.entries.containsKey(key)) {
+         return;
+      }
+      this.entries.put(key, entry);
+      this.bytes += entry.getBytes();
+      Iterator<Entry> eldest = this.entries.values().iterator();
+      //the newest entry is kept even if it alone is over the budget
+      while (this.bytes > this.maxBytes && this.entries.size() > 1) {
+         this.bytes -= eldest.next().getBytes();
+         eldest.remove();
+      }
+   }
+
+   /**
+    * Removes every shape from this cache
+    */
+   public synchronized void clear() {
+      this.entries.clear();
+      this.bytes = 0;
+   }
+
+   /**
+    * Scales the image of the shape and finds its boundary the way
+    *    ShapeCreator always has: a pixel in the shape is on the boundary if it
+    *    is on the edge of the image or one of its four neighbours is not in
+    *    the shape
+    */
+   private static Entry load(File directory, String shape, int size)
+         throws IOException {
+      int[] pixels = readScaledImage(directory, shape, size);
+      int inImage = ImageStandardizer.IN_IMAGE.getRGB() & 0xFFFFFF;
+      BitSet inside = new BitSet(size * size);
+      for (int i = 0; i < pixels.length; i++) {
+         if (pixels[i] == inImage) {
+            inside.set(i);
+         }
+      }
+      ShapeSet boundary = new ShapeSet();
+      for (int x = 0; x < size; x++) {
+         for (int y = 0; y < size; y++) {
+            int i = y * size + x;
+            if (inside.get(i) && (x == 0 || y == 0 || x == size - 1 ||
+                  y == size - 1 || !inside.get(i - 1) || !inside.get(i + 1) ||
+                  !inside.get(i - size) || !inside.get(i + size))) {
+               boundary.add(x, y);
+            }
+         }
+      }
+      //sorted now, so threads sharing the entry only ever read it
+      boundary.normalize();
+      return new Entry(size, inside, boundary);
+   }
+
+   /**
+    * @return  the RGB values of the image of the shape scaled to size x size,
+    *    row by row
+    */
+   private static int[] readScaledImage(File directory, String shape, int size)
+         throws IOException {
+      File scaled = new File(directory, shape + " size = " + size + "." +
+            ShapeCreator.IMAGE_SUFFIX);
+      BufferedImage image;
+      if (scaled.isFile()) {
+         image = ImageIO.read(scaled);
+      } else {
+         BufferedImage original = ImageIO.read(new File(directory, shape + "." +
+               ShapeCreator.IMAGE_SUFFIX));
+         if (original == null) {
+            throw new IOException("could not read " + shape);
+         }
+         Image scaledImage =
+               original.getScaledInstance(size, size, Image.SCALE_SMOOTH);
+         int type = original.getType() == BufferedImage.TYPE_CUSTOM ?
+               BufferedImage.TYPE_INT_ARGB : original.getType();
+         image = new BufferedImage(size, size, type);
+         image.getGraphics().drawImage(scaledImage, 0, 0, null);
+      }
+      if (image == null || image.getWidth() < size || image.getHeight() < size) {
+         throw new IOException("could not read " + shape + " at size " + size);
+      }
+      int[] pixels = image.getRGB(0, 0, size, size, null, 0, size);
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] &= 0xFFFFFF;
+      }
+      return pixels;
+   }
+}
@@ -0,0 +1,273 @@
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The outline of a shape as closed polylines with sub-pixel precision,
+ *    traced once from the full-size image with marching squares, so the
+ *    shape can be drawn at any size without rescaling and thresholding the
+ *    image again.
+ *
+ * A pixel's darkness is 1 for IN_IMAGE and 0 for NOT_IN_IMAGE (or a
+ *    transparent pixel), and the outline is where the darkness crosses
+ *    THRESHOLD, found by interpolating between pixel centers. Coordinates are
+ *    stored as fractions of the width and height of the image, so scaling a
+ *    contour to a size squeezes the image into a size x size square the way
+ *    ShapeCreator always has.
+ *
+ * Rows of the image are traced in parallel; the segments are then joined
+ *    into polylines. Contours are cached for the life of the process.
+ *
+ * @author RyanPachauri
+ */
+public class ShapeContour {
+   private static final double THRESHOLD = 0.5;
+   private static final ConcurrentHashMap<String, ShapeContour> CACHE =
+         new ConcurrentHashMap<String, ShapeContour>();
+
+   //every polyline as x0, y0, x1, y1, ..., with the last point joined back
+   //to the first
+   private final List<double[]> polylines;
+
+   private ShapeContour(List<double[]> polylines) {
+      this.polylines = polylines;
+   }
+
+   /**
+    * @param image   file of a black shape surrounded by white
+    * @return  the contour of the image, traced the first time it is asked for
+    */
+   public static ShapeContour get(File image) {
+      return CACHE.computeIfAbsent(image.getPath(), path -> {
+         try {
+            BufferedImage read = ImageIO.read(image);
+            if (read == null) {
+               throw new IllegalArgumentException("could not read " + image);
+            }
+            return trace(read);
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+      });
+   }
+
+   /**
+    * Forgets every contour traced so far, so the next get traces again
+    */
+   public static void clearCache() {
+      CACHE.clear();
+   }
+
+   /**
+    * @return  the number of closed polylines, including the outlines of holes
+    */
+   public int getNumPolylines() {
+      return this.polylines.size();
+   }
+
+   /**
+    * @return  the total number of points of all polylines
+    */
+   public int getNumPoints() {
+      int points = 0;
+      for (double[] polyline : this.polylines) {
+         points += polyline.length / 2;
+      }
+      return points;
+   }
+
+   /**
+    * Draws the contour on a size x size grid in time proportional to its
+    *    length at that size. Each segment is walked in steps of at most half a
+    *    pixel, so the boundary has no gaps.
+    * @param startX  the column of the left edge of the shape
+    * @param startY  the row of the top edge of the shape
+    * @param size    the size of the shape
+    * @return  ShapeSet of the pixels the contour passes through
+    */
+   public ShapeSet rasterize(int startX, int startY, int size) {
+      ShapeSet points = new ShapeSet();
+      for (double[] polyline : this.polylines) {
+         int n = polyline.length / 2;
+         for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double x0 = polyline[2 * i] * size;
+            double y0 = polyline[2 * i + 1] * size;
+            double x1 = polyline[2 * j] * size;
+            double y1 = polyline[2 * j + 1] * size;
+            int steps = (int) Math.ceil(2 * Math.max(Math.abs(x1 - x0),
+                  Math.abs(y1 - y0)));
+            for (int k = 0; k < Math.max(1, steps); k++) {
+               double t = steps == 0 ? 0 : (double) k / steps;
+               int x = clamp((int) Math.floor(x0 + t * (x1 - x0)), size);
+               int y = clamp((int) Math.floor(y0 + t * (y1 - y0)), size);
+               points.add(x + startX, y + startY);
+            }
+         }
+      }
+      //sorted now, so the shape can be read from several threads
+      points.normalize();
+      return points;
+   }
+
+   private static int clamp(int coordinate, int size) {
+      return Math.max(0, Math.min(size - 1, coordinate));
+   }
+
+   /**
+    * Runs marching squares over the pixel centers of image, padded with a
+    *    ring of empty pixels so every polyline is closed
+    */
+   static ShapeContour trace(BufferedImage image) {
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+      //darkness of the padded grid; vertex (i, j) is pixel (i - 1, j - 1)
+      int gridWidth = width + 2;
+      int gridHeight = height + 2;
+      float[] darkness = new float[gridWidth * gridHeight];
+      IntStream.range(0, height).parallel().forEach(y -> {
+         for (int x = 0; x < width; x++) {
+            int pixel = argb[y * width + x];
+            int alpha = pixel >>> 24;
+            int sum = (pixel >> 16 & 0xFF) + (pixel >> 8 & 0xFF) + (pixel & 0xFF);
+            darkness[(y + 1) * gridWidth + x + 1] =
+                  (1 - sum / (3 * 255f)) * alpha / 255f;
+         }
+      });
+
+      //segments of each row of cells, as pairs of edge ids
+      long[][] rows = IntStream.range(0, gridHeight - 1).parallel().
+            mapToObj(j -> traceRow(darkness, gridWidth, j)).
+            toArray(long[][]::new);
+
+      //each edge the outline crosses is shared by exactly two segments
+      Map<Long, long[]> neighbours = new HashMap<Long, long[]>();
+      for (long[] row : rows) {
+         for (int s = 0; s < row.length; s += 2) {
+            link(neighbours, row[s], row[s + 1]);
+            link(neighbours, row[s + 1], row[s]);
+         }
+      }
+      List<double[]> polylines = new ArrayList<double[]>();
+      Set<Long> visited = new HashSet<Long>();
+      for (long start : neighbours.keySet()) {
+         if (visited.contains(start)) {
+            continue;
+         }
+         List<Double> coordinates = new ArrayList<Double>();
+         long previous = Long.MIN_VALUE;
+         long edge = start;
+         while (visited.add(edge)) {
+            double[] point = crossing(darkness, gridWidth, edge);
+            coordinates.add(point[0] / width);
+            coordinates.add(point[1] / height);
+            long[] next = neighbours.get(edge);
+            long following = next[0] != previous ? next[0] : next[1];
+            previous = edge;
+            edge = following;
+         }
+         double[] polyline = new double[coordinates.size()];
+         for (int i = 0; i < polyline.length; i++) {
+            polyline[i] = coordinates.get(i);
+         }
+         polylines.add(polyline);
+      }
+      return new ShapeContour(polylines);
+   }
+
+   private static void link(Map<Long, long[]> neighbours, long edge, long other) {
+      long[] ends = neighbours.get(edge);
+      if (ends == null) {
+         neighbours.put(edge, new long[] {other, Long.MIN_VALUE});
+      } else {
+         ends[1] = other;
+      }
+   }
+
+   /**
+    * An edge id is 2 * (vertex index) for the edge going right from a vertex
+    *    and 2 * (vertex index) + 1 for the edge going down from it
+    * @return  the segments crossing the cells of row j, two edge ids each
+    */
+   private static long[] traceRow(float[] darkness, int gridWidth, int j) {
+      long[] segments = new long[8];
+      int count = 0;
+      for (int i = 0; i < gridWidth - 1; i++) {
+         long topLeft = (long) j * gridWidth + i;
+         long bottomLeft = topLeft + gridWidth;
+         int index = (inside(darkness, topLeft) ? 8 : 0) |
+               (inside(darkness, topLeft + 1) ? 4 : 0) |
+               (inside(darkness, bottomLeft + 1) ? 2 : 0) |
+               (inside(darkness, bottomLeft) ? 1 : 0);
+         if (index == 0 || index == 15) {
+            continue;
+         }
+         long top = 2 * topLeft;
+         long bottom = 2 * bottomLeft;
+         long left = 2 * topLeft + 1;
+         long right = 2 * (topLeft + 1) + 1;
+         long[] pairs;
+         switch (index) {
+            case 1: case 14:
+               pairs = new long[] {left, bottom};
+               break;
+            case 2: case 13:
+               pairs = new long[] {bottom, right};
+               break;
+            case 3: case 12:
+               pairs = new long[] {left, right};
+               break;
+            case 4: case 11:
+               pairs = new long[] {top, right};
+               break;
+            case 6: case 9:
+               pairs = new long[] {top, bottom};
+               break;
+            case 7: case 8:
+               pairs = new long[] {left, top};
+               break;
+            case 5:
+               //saddle: the dark corners are kept apart
+               pairs = new long[] {top, right, left, bottom};
+               break;
+            default://10
+               pairs = new long[] {left, top, bottom, right};
+               break;
+         }
+         if (count + pairs.length > segments.length) {
+            segments = Arrays.copyOf(segments, 2 * segments.length);
+         }
+         System.arraycopy(pairs, 0, segments, count, pairs.length);
+         count += pairs.length;
+      }
+      return Arrays.copyOf(segments, count);
+   }
+
+   private static boolean inside(float[] darkness, long vertex) {
+      return darkness[(int) vertex] >= THRESHOLD;
+   }
+
+   /**
+    * @return  the point on the given edge where the darkness crosses
+    *    THRESHOLD, in pixel coordinates of the image
+    */
+   private static double[] crossing(float[] darkness, int gridWidth, long edge) {
+      int vertex = (int) (edge / 2);
+      int other = edge % 2 == 0 ? vertex + 1 : vertex + gridWidth;
+      double d0 = darkness[vertex];
+      double d1 = darkness[other];
+      double t = d1 == d0 ? 0.5 : (THRESHOLD - d0) / (d1 - d0);
+      t = Math.max(0, Math.min(1, t));
+      //vertex (i, j) is the center of pixel (i - 1, j - 1)
+      double x = vertex % gridWidth - 1 + (edge % 2 == 0 ? t : 0);
+      double y = vertex / gridWidth - 1 + (edge % 2 == 0 ? 0 : t);
+      //measured from the top left corner of the image rather than from the
+      //center of its first pixel
+      return new double[] {x + 0.5, y + 0.5};
+   }
+}
@@ -0,0 +1,227 @@
+import java.util.*;
+
+/**
+ * A set of pixel coordinates making up a shape, each packed into a long
+ *    (x in the high 32 bits, y in the low 32 bits), instead of a
+ *    HashSet<int[]>, which hashes arrays by identity and so never merges
+ *    duplicate points.
+ *
+ * Points are appended as they are added and sorted and deduplicated the
+ *    first time the set is read, so building a shape costs 8 bytes per point
+ *    and one sort. Unions of sorted sets are merged in linear time.
+ *
+ * Because the first read sorts the points in place, a ShapeSet is not safe
+ *    to share between threads, even only to read it, until it has been
+ *    normalized. Sets made by translate, addAll, ShapeContour.rasterize and
+ *    ShapeCache are handed out normalized, and so can be read from several
+ *    threads as long as nobody adds to them.
+ *
+ * @author RyanPachauri
+ */
+public class ShapeSet {
+   private long[] points;
+   private int size;
+   //true if points[0 .. size - 1] is sorted without duplicates
+   private boolean sorted;
+
+   /**
+    * Receives the coordinates of every point of a ShapeSet
+    */
+   public interface PointConsumer {
+      void accept(int x, int y);
+   }
+
+   /**
+    * Initializes an empty shape
+    */
+   public ShapeSet() {
+      this.points = new long[16];
+      this.size = 0;
+      this.sorted = true;
+   }
+
+   /**
+    * Adds the point (x, y) to this shape
+    */
+   public void add(int x, int y) {
+      if (this.size == this.points.length) {
+         this.points = Arrays.copyOf(this.points, 2 * this.size);
+      }
+      long point = pack(x, y);
+      if (this.sorted && this.size > 0 && this.points[this.size - 1] >= point) {
+         this.sorted = false;
+      }
+      this.points[this.size++] = point;
+   }
+
+   /**
+    * Adds every point of other to this shape
+    */
+   public void addAll(ShapeSet other) {
+      this.normalize();
+      other.normalize();
+      long[] merged = new long[Math.max(16, this.size + other.size)];
+      int i = 0;
+      int j = 0;
+      int k = 0;
+      while (i < this.size && j < other.size) {
+         long a = this.points[i];
+         long b = other.points[j];
+         if (a <= b) {
+            merged[k++] = a;
+            i++;
+            if (a == b) {
+               j++;
+            }
+         } else {
+            merged[k++] = b;
+            j++;
+         }
+      }
+      while (i < this.size) {
+         merged[k++] = this.points[i++];
+      }
+      while (j < other.size) {
+         merged[k++] = other.points[j++];
+      }
+      this.points = merged;
+      this.size = k;
+   }
+
+   /**
+    * @return  the number of distinct points in this shape
+    */
+   public int size() {
+      this.normalize();
+      return this.size;
+   }
+
+   public boolean isEmpty() {
+      return this.size == 0;
+   }
+
+   /**
+    * @return  true if (x, y) is a point of this shape
+    */
+   public boolean contains(int x, int y) {
+      this.normalize();
+      return Arrays.binarySearch(this.points, 0, this.size, pack(x, y)) >= 0;
+   }
+
+   /**
+    * Points are ordered by x and then by y
+    * @return  the x coordinate of point i
+    */
+   public int getX(int i) {
+      this.normalize();
+      return (int) (this.points[i] >> 32);
+   }
+
+   /**
+    * @return  the y coordinate of point i
+    */
+   public int getY(int i) {
+      this.normalize();
+      return (int) this.points[i];
+   }
+
+   /**
+    * Gives the coordinates of every point to action, ordered by x and then
+    *    by y
+    */
+   public void forEach(PointConsumer action) {
+      this.normalize();
+      for (int i = 0; i < this.size; i++) {
+         action.accept((int) (this.points[i] >> 32), (int) this.points[i]);
+      }
+   }
+
+   /**
+    * @return  a new ShapeSet with every point of this shape moved by
+    *    (dx, dy)
+    */
+   public ShapeSet translate(int dx, int dy) {
+      this.normalize();
+      ShapeSet moved = new ShapeSet();
+      moved.points = new long[Math.max(16, this.size)];
+      for (int i = 0; i < this.size; i++) {
+         moved.add((int) (this.points[i] >> 32) + dx, (int) this.points[i] + dy);
+      }
+      //moving y across 0 changes the order of the packed points
+      moved.normalize();
+      return moved;
+   }
+
+   /**
+    * @param viewport   the points of the Complex plane
+    * @return  Set of the Complex numbers of viewport at the points of this
+    *    shape
+    */
+   public Set<Complex> toComplex(Viewport viewport) {
+      Set<Complex> complexNumbers = new HashSet<Complex>();
+      this.forEach((x, y) -> complexNumbers.add(viewport.getPoint(x, y)));
+      return complexNumbers;
+   }
+
+   /**
+    * @param viewport   the points of the Complex plane
+    * @return  the real parts and the imaginary parts of the Complex numbers of
+    *    viewport at the points of this shape, as candidates for
+    *    LejaPoints(double[][], int, double)
+    */
+   public double[][] toCandidates(Viewport viewport) {
+      this.normalize();
+      double[][] candidates = new double[2][this.size];
+      for (int i = 0; i < this.size; i++) {
+         candidates[0][i] = viewport.re((int) (this.points[i] >> 32));
+         candidates[1][i] = viewport.im((int) this.points[i]);
+      }
+      return candidates;
+   }
+
+   public boolean equals(Object other) {
+      if (!(other instanceof ShapeSet)) {
+         return false;
+      }
+      ShapeSet that = (ShapeSet) other;
+      this.normalize();
+      that.normalize();
+      return Arrays.equals(Arrays.copyOf(this.points, this.size),
+            Arrays.copyOf(that.points, that.size));
+   }
+
+   public int hashCode() {
+      this.normalize();
+      int hash = 1;
+      for (int i = 0; i < this.size; i++) {
+         hash = 31 * hash + Long.hashCode(this.points[i]);
+      }
+      return hash;
+   }
+
+   public String toString() {
+      return "shape of " + this.size() + " points";
+   }
+
+   /**
+    * Sorts the points and removes duplicates, if that has not been done
+    */
+   void normalize() {
+      if (this.sorted) {
+         return;
+      }
+      Arrays.sort(this.points, 0, this.size);
+      int unique = 0;
+      for (int i = 0; i < this.size; i++) {
+         if (unique == 0 || this.points[i] != this.points[unique - 1]) {
+            this.points[unique++] = this.points[i];
+         }
+      }
+      this.size = unique;
+      this.sorted = true;
+   }
+
+   private static long pack(int x, int y) {
+      return ((long) x << 32) | (y & 0xFFFFFFFFL);
+   }
+}
@@ -0,0 +1,210 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-level cache of rendered tiles.
+ *
+ * A tile is a byte[] of indices into LejaPlotter.PALETTE. Tiles are looked up
+ *    by a key that has to describe everything the tile depends on (see
+ *    JuliaSetFinder), and the key is hashed with SHA-256 before it is stored.
+ *
+ * The first level is an in-memory LRU bounded by the number of tile bytes it
+ *    holds. The second level is an optional directory with one file per tile,
+ *    which survives between runs. A tile found on disk is promoted into
+ *    memory.
+ *
+ * The shared cache keeps tiles on disk in the directory named by the system
+ *    property julia.tileCache, e.g.
+ *    java -Djulia.tileCache=tiles LejaPlotter
+ *    and only in memory if it is not set. LejaPlotter.main sets it to a
+ *    directory next to its experiments unless it was given.
+ *
+ * @author RyanPachauri
+ */
+public class TileCache {
+   private static final String TILE_SUFFIX = ".tile";
+   //the system property naming the directory of the shared cache
+   public static final String DIRECTORY_PROPERTY = "julia.tileCache";
+   private static final long SHARED_MEMORY_BYTES = 256L << 20;
+
+   private final long maxMemoryBytes;
+   private final File directory;
+   private final LinkedHashMap<String, byte[]> memory;
+   private long memoryBytes;
+
+   private final AtomicLong memoryHits;
+   private final AtomicLong diskHits;
+   private final AtomicLong misses;
+
+   /**
+    * @param maxMemoryBytes   the most tile bytes to keep in memory
+    * @param directory  the directory to keep tiles on disk in, or null to
+    *                   only cache tiles in memory
+    */
+   public TileCache(long maxMemoryBytes, File directory) {
+      if (maxMemoryBytes < 0) {
+         throw new IllegalArgumentException();
+      }
+      if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+         throw new IllegalArgumentException("Cannot create " + directory);
+      }
+      this.maxMemoryBytes = maxMemoryBytes;
+      this.directory = directory;
+      //access order makes the eldest entry the least recently used one
+      this.memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+      this.memoryBytes = 0;
+      this.memoryHits = new AtomicLong();
+      this.diskHits = new AtomicLong();
+      this.misses = new AtomicLong();
+   }
+
+   /**
+    * Every JuliaSetFinder uses this cache unless told otherwise. It is made
+    *    the first time shared is called, so the property has to be set before.
+    */
+   private static class Shared {
+      static final TileCache CACHE = new TileCache(SHARED_MEMORY_BYTES,
+            TileCache.getConfiguredDirectory());
+   }
+
+   /**
+    * @return  the cache JuliaSetFinder instances use by default, which keeps
+    *    tiles on disk if DIRECTORY_PROPERTY is set
+    */
+   public static TileCache shared() {
+      return Shared.CACHE;
+   }
+
+   /**
+    * @return  the directory DIRECTORY_PROPERTY names, or null if it is not set
+    */
+   public static File getConfiguredDirectory() {
+      String directory = System.getProperty(DIRECTORY_PROPERTY);
+      return directory == null || directory.isEmpty() ? null :
+            new File(directory);
+   }
+
+
+   /**
+    * @param key  String describing everything the tile depends on
+    * @return  the cached tile, or null if it is not cached
+    */
+   public byte[] get(String key) {
+      String hash = hash(key);
+      synchronized (this) {
+         byte[] tile = this.memory.get(hash);
+         if (tile != null) {
+            this.memoryHits.incrementAndGet();
+            return tile;
+         }
+      }
+      if (this.directory != null) {
+         File file = new File(this.directory, hash + TILE_SUFFIX);
+         if (file.isFile()) {
+            try {
+               byte[] tile = Files.readAllBytes(file.toPath());
+               this.diskHits.incrementAndGet();
+               this.putInMemory(hash, tile);
+               return tile;
+            } catch (IOException e) {
+               //an unreadable tile is treated as a miss and rendered again
+            }
+         }
+      }
+      this.misses.incrementAndGet();
+      return null;
+   }
+
+   /**
+    * @param key  String describing everything the tile depends on
+    * @param tile the rendered tile, which must not be modified afterwards
+    */
+   public void put(String key, byte[] tile) {
+      String hash = hash(key);
+      this.putInMemory(hash, tile);
+      if (this.directory != null) {
+         //write to a temporary file first so readers never see half a tile
+         File file = new File(this.directory, hash + TILE_SUFFIX);
+         try {
+            Path temp = Files.createTempFile(this.directory.toPath(), hash, null);
+            Files.write(temp, tile);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                  StandardCopyOption.ATOMIC_MOVE);
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      }
+   }
+
+   private synchronized void putInMemory(String hash, byte[] tile) {
+      if (tile.length > this.maxMemoryBytes) {
+         return;
+      }
+      byte[] previous = this.memory.put(hash, tile);
+      if (previous != null) {
+         this.memoryBytes -= previous.length;
+      }
+      this.memoryBytes += tile.length;
+      Iterator<byte[]> eldest = this.memory.values().iterator();
+      while (this.memoryBytes > this.maxMemoryBytes) {
+         this.memoryBytes -= eldest.next().length;
+         eldest.remove();
+      }
+   }
+
+   /**
+    * Removes every tile from memory. Tiles on disk are kept.
+    */
+   public synchronized void clearMemory() {
+      this.memory.clear();
+      this.memoryBytes = 0;
+   }
+
+   public long getMemoryHits() {
+      return this.memoryHits.get();
+   }
+
+   public long getDiskHits() {
+      return this.diskHits.get();
+   }
+
+   public long getMisses() {
+      return this.misses.get();
+   }
+
+   /**
+    * @return  the number of tile bytes currently held in memory
+    */
+   public synchronized long getMemoryBytes() {
+      return this.memoryBytes;
+   }
+
+   public String toString() {
+      return "tile cache: " + this.getMemoryHits() + " memory hits, " +
+            this.getDiskHits() + " disk hits, " + this.getMisses() +
+            " misses, " + this.getMemoryBytes() + " bytes in memory" +
+            (this.directory == null ? "" : ", tiles kept in " + this.directory);
+   }
+
+   /**
+    * @param key  any String
+    * @return  the SHA-256 hash of key in hexadecimal
+    */
+   public static String hash(String key) {
+      try {
+         MessageDigest digest = MessageDigest.getInstance("SHA-256");
+         byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+         StringBuilder hex = new StringBuilder();
+         for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+         }
+         return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
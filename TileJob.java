@@ -0,0 +1,489 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A render split into tiles that several processes work on together, like a
+ *    big drawSmallerRange spread over the cores of one machine or, with a
+ *    shared directory, over several machines.
+ *
+ * A job is a directory:
+ *    job.properties    the Viewport of the render and the size of its tiles
+ *    leja points.txt   the leja points of the polynomial
+ *    tiles/N.tile      the palette indices of finished tile N, row by row
+ *    tiles/N.claim     the worker rendering tile N
+ * Tiles are numbered row of tiles by row of tiles from the top left.
+ *
+ * A worker claims a tile by creating its claim file, which fails if another
+ *    worker already has it, renders the tile and writes it under a temporary
+ *    name that is then moved into place, so a tile file is always complete.
+ *    While it renders, a worker touches its claim every LEASE_MILLIS / 4; a
+ *    claim left untouched for LEASE_MILLIS belongs to a worker that died, and
+ *    is taken over. Rendering is deterministic, so a tile that two workers
+ *    end up rendering is only wasted work.
+ *
+ * The merge step writes the tiles into a PNG a row of tiles at a time, and
+ *    renders any tile no worker finished itself.
+ *
+ * Usage:
+ *    java TileJob create job lejaFile leftBound topBound spacing width height
+ *       [tileSize]
+ *    java TileJob work job
+ *    java TileJob merge job picture.png
+ *    java TileJob run job numWorkers picture.png
+ *       starts numWorkers worker processes, waits for them and merges
+ *    java TileJob status job
+ *
+ * @author RyanPachauri
+ */
+public class TileJob {
+   public static final String MANIFEST = "job.properties";
+   //a multiple of the tile size of JuliaSetFinder, so no tile is rendered by
+   //two workers
+   public static final int DEFAULT_TILE_SIZE = 512;
+   private static final String LEJA_FILE = "leja points" +
+         LejaPlotter.LEJA_POINTS_SUFFIX;
+   private static final String TILE_DIRECTORY = "tiles";
+   private static final String TILE_SUFFIX = ".tile";
+   private static final String CLAIM_SUFFIX = ".claim";
+   private static final int VERSION = 1;
+   //a claim untouched for this long belongs to a worker that died
+   private static final long LEASE_MILLIS = 60_000;
+
+   private final File directory;
+   private final File tiles;
+   private final Viewport viewport;
+   private final int tileSize;
+   private final int tilesAcross;
+   private final int tilesDown;
+   private final LejaPoints lp;
+
+   private TileJob(File directory, Viewport viewport, int tileSize,
+         LejaPoints lp) {
+      this.directory = directory;
+      this.tiles = new File(directory, TILE_DIRECTORY);
+      this.viewport = viewport;
+      this.tileSize = tileSize;
+      this.tilesAcross = (viewport.width() + tileSize - 1) / tileSize;
+      this.tilesDown = (viewport.height() + tileSize - 1) / tileSize;
+      this.lp = lp;
+   }
+
+   /**
+    * Writes the manifest and leja points of a new job into directory
+    * @param lp   the leja points of the polynomial to plot
+    * @param viewport   the points to plot
+    * @param tileSize   the width and height of the tiles workers claim
+    * @throws IllegalArgumentException if directory already holds a job
+    */
+   public static TileJob create(File directory, LejaPoints lp,
+         Viewport viewport, int tileSize) throws IOException {
+      if (tileSize <= 0) {
+         throw new IllegalArgumentException();
+      }
+      File manifest = new File(directory, MANIFEST);
+      if (manifest.exists()) {
+         throw new IllegalArgumentException(directory + " already holds a job");
+      }
+      new File(directory, TILE_DIRECTORY).mkdirs();
+      lp.export(new PrintStream(new File(directory, LEJA_FILE), "UTF-8"));
+      //the leja points are read back, so the fingerprint is the one workers
+      //will compute
+      LejaPoints saved = new LejaPoints(new File(directory, LEJA_FILE).getPath());
+
+      Properties properties = new Properties();
+      properties.setProperty("version", "" + VERSION);
+      properties.setProperty("originX", "" + viewport.originX());
+      properties.setProperty("originY", "" + viewport.originY());
+      //hexadecimal, so the bounds are read back exactly
+      properties.setProperty("leftBound", Double.toHexString(viewport.leftBound()));
+      properties.setProperty("topBound", Double.toHexString(viewport.topBound()));
+      properties.setProperty("spacing", Double.toHexString(viewport.spacing()));
+      properties.setProperty("rounding", "" + viewport.rounding());
+      properties.setProperty("width", "" + viewport.width());
+      properties.setProperty("height", "" + viewport.height());
+      properties.setProperty("tileSize", "" + tileSize);
+      properties.setProperty("lejaFingerprint", saved.getFingerprint());
+      //written last, so a job with a manifest is complete
+      File partial = new File(directory, MANIFEST + ".tmp");
+      try (OutputStream out = new FileOutputStream(partial)) {
+         properties.store(out, "tile job");
+      }
+      Files.move(partial.toPath(), manifest.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+      return new TileJob(directory, viewport, tileSize, saved);
+   }
+
+   /**
+    * @return  the job in directory
+    * @throws IOException if it has no job, or its leja points do not match
+    *    its manifest
+    */
+   public static TileJob open(File directory) throws IOException {
+      Properties properties = new Properties();
+      try (InputStream in = new FileInputStream(new File(directory, MANIFEST))) {
+         properties.load(in);
+      }
+      if (Integer.parseInt(properties.getProperty("version")) != VERSION) {
+         throw new IOException("unknown version of " + MANIFEST);
+      }
+      Viewport viewport = new Viewport(
+            Integer.parseInt(properties.getProperty("originX")),
+            Integer.parseInt(properties.getProperty("originY")),
+            Double.parseDouble(properties.getProperty("leftBound")),
+            Double.parseDouble(properties.getProperty("topBound")),
+            Double.parseDouble(properties.getProperty("spacing")),
+            Integer.parseInt(properties.getProperty("rounding")),
+            Integer.parseInt(properties.getProperty("width")),
+            Integer.parseInt(properties.getProperty("height")));
+      File lejaFile = new File(directory, LEJA_FILE);
+      if (!lejaFile.isFile()) {
+         throw new FileNotFoundException(lejaFile.getPath());
+      }
+      LejaPoints lp = new LejaPoints(lejaFile.getPath());
+      if (!lp.getFingerprint().equals(properties.getProperty("lejaFingerprint"))) {
+         throw new IOException(LEJA_FILE + " does not match " + MANIFEST);
+      }
+      return new TileJob(directory, viewport,
+            Integer.parseInt(properties.getProperty("tileSize")), lp);
+   }
+
+   public Viewport getViewport() {
+      return this.viewport;
+   }
+
+   /**
+    * @return  true if this job renders exactly viewport with the polynomial
+    *    of lp
+    */
+   public boolean matches(LejaPoints lp, Viewport viewport) {
+      Viewport own = this.viewport;
+      return this.lp.getFingerprint().equals(lp.getFingerprint()) &&
+            own.originX() == viewport.originX() &&
+            own.originY() == viewport.originY() &&
+            Double.compare(own.leftBound(), viewport.leftBound()) == 0 &&
+            Double.compare(own.topBound(), viewport.topBound()) == 0 &&
+            Double.compare(own.spacing(), viewport.spacing()) == 0 &&
+            own.rounding() == viewport.rounding() &&
+            own.width() == viewport.width() && own.height() == viewport.height();
+   }
+
+   public int getNumTiles() {
+      return this.tilesAcross * this.tilesDown;
+   }
+
+   /**
+    * @return  true if tile has been rendered and written
+    */
+   public boolean isDone(int tile) {
+      //tiles are moved into place whole, so one of the right length is done
+      return this.tileFile(tile).length() == this.getTileBytes(tile);
+   }
+
+   /**
+    * @return  the number of tiles that have been rendered and written
+    */
+   public int countDone() {
+      int done = 0;
+      for (int tile = 0; tile < this.getNumTiles(); tile++) {
+         if (this.isDone(tile)) {
+            done++;
+         }
+      }
+      return done;
+   }
+
+   /**
+    * Claims and renders tiles until every tile is done or claimed by another
+    *    worker
+    * @param workerId   names this worker in its claims; unique among the
+    *                   workers of the job
+    * @return  the number of tiles this worker rendered
+    */
+   public int work(String workerId) throws IOException {
+      JuliaSetFinder jsf = this.createFinder();
+      //the claim being rendered, which is touched so it is not taken over
+      AtomicReference<Path> current = new AtomicReference<Path>();
+      ScheduledExecutorService heartbeat =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "claim heartbeat");
+         thread.setDaemon(true);
+         return thread;
+      });
+      heartbeat.scheduleAtFixedRate(() -> {
+         Path claim = current.get();
+         if (claim != null) {
+            try {
+               Files.setLastModifiedTime(claim,
+                     FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+               //the claim was taken over; the tile is rendered twice
+            }
+         }
+      }, LEASE_MILLIS / 4, LEASE_MILLIS / 4, TimeUnit.MILLISECONDS);
+
+      int rendered = 0;
+      int numTiles = this.getNumTiles();
+      //workers start at different tiles, so they rarely race for a claim
+      int start = Math.floorMod(workerId.hashCode(), numTiles);
+      try {
+         for (int i = 0; i < numTiles; i++) {
+            int tile = (start + i) % numTiles;
+            if (this.isDone(tile) || !this.claim(tile, workerId)) {
+               continue;
+            }
+            current.set(this.claimFile(tile));
+            try {
+               //another worker may have finished it before we claimed it
+               if (!this.isDone(tile)) {
+                  this.writeTile(tile, this.renderTile(jsf, tile), workerId);
+                  rendered++;
+               }
+            } finally {
+               current.set(null);
+               Files.deleteIfExists(this.claimFile(tile));
+            }
+         }
+      } finally {
+         heartbeat.shutdownNow();
+      }
+      return rendered;
+   }
+
+   /**
+    * @return  true if this worker now holds the claim of tile
+    */
+   private boolean claim(int tile, String workerId) throws IOException {
+      Path claim = this.claimFile(tile);
+      for (int attempt = 0; attempt < 2; attempt++) {
+         try {
+            Files.write(claim, workerId.getBytes(StandardCharsets.UTF_8),
+                  StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+         } catch (FileAlreadyExistsException e) {
+            if (!this.isStale(claim)) {
+               return false;
+            }
+            //its worker died; take the claim over
+            Files.deleteIfExists(claim);
+         }
+      }
+      return false;
+   }
+
+   private boolean isStale(Path claim) {
+      try {
+         return System.currentTimeMillis() -
+               Files.getLastModifiedTime(claim).toMillis() > LEASE_MILLIS;
+      } catch (IOException e) {
+         //it was released while we looked at it
+         return true;
+      }
+   }
+
+   /**
+    * Writes the tiles of this job into picture, rendering the tiles no worker
+    *    finished, one row of tiles at a time
+    * @return  the number of tiles that had to be rendered
+    */
+   public int merge(File picture) throws IOException {
+      int width = this.viewport.width();
+      int height = this.viewport.height();
+      JuliaSetFinder jsf = null;
+      int rendered = 0;
+      try (PngWriter writer = new PngWriter(picture, width, height,
+            LejaPlotter.PALETTE)) {
+         for (int row = 0; row < this.tilesDown; row++) {
+            int rows = Math.min(this.tileSize, height - row * this.tileSize);
+            byte[] band = new byte[width * rows];
+            for (int column = 0; column < this.tilesAcross; column++) {
+               int tile = row * this.tilesAcross + column;
+               byte[] indices = this.readTile(tile);
+               if (indices == null) {
+                  //its worker died or never got to it
+                  if (jsf == null) {
+                     jsf = this.createFinder();
+                  }
+                  indices = this.renderTile(jsf, tile);
+                  this.writeTile(tile, indices, "merge");
+                  rendered++;
+               }
+               int left = column * this.tileSize;
+               int tileWidth = Math.min(this.tileSize, width - left);
+               for (int y = 0; y < rows; y++) {
+                  System.arraycopy(indices, y * tileWidth, band, y * width + left,
+                        tileWidth);
+               }
+            }
+            writer.writeRows(band, rows);
+         }
+      }
+      return rendered;
+   }
+
+   /**
+    * Starts numWorkers worker processes on the job in directory, waits for
+    *    them and merges the tiles into picture
+    * @return  the number of tiles the merge step had to render
+    */
+   public static int runLocally(File directory, int numWorkers, File picture)
+         throws IOException, InterruptedException {
+      TileJob job = TileJob.open(directory);
+      String java = Paths.get(System.getProperty("java.home"), "bin", "java").
+            toString();
+      List<Process> workers = new ArrayList<Process>();
+      for (int i = 0; i < numWorkers; i++) {
+         workers.add(new ProcessBuilder(java, "-cp",
+               System.getProperty("java.class.path"), "TileJob", "work",
+               directory.getPath()).inheritIO().start());
+      }
+      for (Process worker : workers) {
+         int exit = worker.waitFor();
+         if (exit != 0) {
+            System.out.println("worker " + worker.pid() + " exited with " + exit);
+         }
+      }
+      return job.merge(picture);
+   }
+
+   private JuliaSetFinder createFinder() {
+      JuliaSetFinder jsf = new JuliaSetFinder(this.lp, this.viewport);
+      //tiles of a job are only ever rendered once by a worker
+      jsf.setTileCache(null);
+      return jsf;
+   }
+
+   private byte[] renderTile(JuliaSetFinder jsf, int tile) {
+      int left = tile % this.tilesAcross * this.tileSize;
+      int top = tile / this.tilesAcross * this.tileSize;
+      return jsf.plotRegionUsingObvious(new HashSet<Complex>(), left, top,
+            Math.min(this.tileSize, this.viewport.width() - left),
+            Math.min(this.tileSize, this.viewport.height() - top));
+   }
+
+   /**
+    * @return  the number of bytes of tile
+    */
+   private int getTileBytes(int tile) {
+      int left = tile % this.tilesAcross * this.tileSize;
+      int top = tile / this.tilesAcross * this.tileSize;
+      return Math.min(this.tileSize, this.viewport.width() - left) *
+            Math.min(this.tileSize, this.viewport.height() - top);
+   }
+
+   /**
+    * @return  the palette indices of tile, or null if it is not done
+    */
+   private byte[] readTile(int tile) {
+      if (!this.isDone(tile)) {
+         return null;
+      }
+      try {
+         return Files.readAllBytes(this.tileFile(tile).toPath());
+      } catch (IOException e) {
+         return null;
+      }
+   }
+
+   /**
+    * Writes tile under a temporary name and moves it into place, so a worker
+    *    that dies while writing leaves no partial tile behind
+    */
+   private void writeTile(int tile, byte[] indices, String workerId)
+         throws IOException {
+      Path partial = new File(this.tiles, tile + TILE_SUFFIX + "." +
+            workerId.replaceAll("[^A-Za-z0-9@.-]", "_") + ".tmp").toPath();
+      Files.write(partial, indices);
+      Files.move(partial, this.tileFile(tile).toPath(),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+   }
+
+   private File tileFile(int tile) {
+      return new File(this.tiles, tile + TILE_SUFFIX);
+   }
+
+   private Path claimFile(int tile) {
+      return new File(this.tiles, tile + CLAIM_SUFFIX).toPath();
+   }
+
+   /**
+    * @return  the process id and host name of this process
+    */
+   private static String getWorkerId() {
+      String host;
+      try {
+         host = InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+         host = "localhost";
+      }
+      return ProcessHandle.current().pid() + "@" + host;
+   }
+
+   public String toString() {
+      int claimed = 0;
+      int stale = 0;
+      for (int tile = 0; tile < this.getNumTiles(); tile++) {
+         Path claim = this.claimFile(tile);
+         if (Files.exists(claim)) {
+            claimed++;
+            if (this.isStale(claim)) {
+               stale++;
+            }
+         }
+      }
+      return "tile job " + this.directory + ": " + this.viewport.width() + " x " +
+            this.viewport.height() + " in " + this.getNumTiles() + " tiles of " +
+            this.tileSize + ", " + this.countDone() + " done, " + claimed +
+            " claimed (" + stale + " by workers that died)";
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 2) {
+         System.out.println("usage: java TileJob create job lejaFile leftBound " +
+               "topBound spacing width height [tileSize]");
+         System.out.println("       java TileJob work job");
+         System.out.println("       java TileJob merge job picture.png");
+         System.out.println("       java TileJob run job numWorkers picture.png");
+         System.out.println("       java TileJob status job");
+         return;
+      }
+      File directory = new File(args[1]);
+      switch (args[0]) {
+         case "create":
+            Viewport viewport = MultiShapeCreator.createViewport(
+                  Double.parseDouble(args[3]), Double.parseDouble(args[4]),
+                  Double.parseDouble(args[5]), Integer.parseInt(args[6]),
+                  Integer.parseInt(args[7]));
+            System.out.println(TileJob.create(directory, new LejaPoints(args[2]),
+                  viewport, args.length > 8 ? Integer.parseInt(args[8]) :
+                  DEFAULT_TILE_SIZE));
+            break;
+         case "work":
+            String workerId = getWorkerId();
+            int rendered = TileJob.open(directory).work(workerId);
+            System.out.println("worker " + workerId + " rendered " + rendered +
+                  " tiles");
+            break;
+         case "merge":
+            int missing = TileJob.open(directory).merge(new File(args[2]));
+            System.out.println("merged, rendering " + missing + " missing tiles");
+            break;
+         case "run":
+            missing = TileJob.runLocally(directory, Integer.parseInt(args[2]),
+                  new File(args[3]));
+            System.out.println("merged, rendering " + missing + " missing tiles");
+            break;
+         case "status":
+            System.out.println(TileJob.open(directory));
+            break;
+         default:
+            System.out.println("unknown command " + args[0]);
+      }
+   }
+}
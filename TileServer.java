@@ -0,0 +1,510 @@
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.*;
+
+/**
+ * Serves the Julia set of a LejaPoints instance as slippy-map tiles, so a
+ *    zoom area can be found by panning and zooming in a browser instead of
+ *    editing leftX, rightX, topY and bottomY in LejaPlotter.main and running
+ *    it again.
+ *
+ * Zoom level z covers the same square of the Complex plane as level 0 with
+ *    2^z x 2^z tiles of TILE_SIZE x TILE_SIZE pixels. Every tile is a region
+ *    of one big Viewport per level, so its pixels are exactly the ones a
+ *    render of that Viewport has and neighbouring tiles line up.
+ *
+ * Tiles are rendered on demand by a bounded pool of renderers. Requests wait
+ *    newest first, since a browser asks for the tiles it shows now last; a
+ *    request that waited longer than MAX_WAIT_MILLIS, or that is pushed out
+ *    of a full queue, was most likely given up by a browser that moved on,
+ *    and is answered 503 without being rendered. A render still going
+ *    MAX_WAIT_MILLIS after its request came in stops at its next
+ *    JuliaSetFinder tile and is answered 503 too, without being cached. Encoded tiles are kept in a
+ *    TileCache, so tiles that were seen before come back in milliseconds; with
+ *    -Djulia.tileCache=directory they are kept on disk too, and survive a
+ *    restart.
+ *
+ * Endpoints:
+ *    /                 a viewer that shows the bounds of what is on screen
+ *    /tiles/z/x/y.png  a tile
+ *    /info             the bounds of level 0 as JSON
+ *    /stats            render metrics and cache statistics
+ *
+ * Usage:
+ *    java TileServer lejaFile [port] [centerRe centerIm size]
+ *    size is the width of the square level 0 covers
+ *    java TileServer check lejaFile [centerRe centerIm size]
+ *    compares a tile of every level with a direct render
+ *
+ * @author RyanPachauri
+ */
+public class TileServer {
+   public static final int TILE_SIZE = 256;
+   //tiles of deeper levels start past the largest int column
+   public static final int MAX_ZOOM = 23;
+   private static final int DEFAULT_PORT = 8080;
+   private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+   //requests waiting longer than this were most likely given up
+   private static final long MAX_WAIT_MILLIS = 10_000;
+   //requests that can wait for a renderer
+   private static final int QUEUE_SIZE = 256;
+
+   private final LejaPoints lp;
+   private final double leftBound;
+   private final double topBound;
+   //the spacing of level 0
+   private final double spacing;
+   private final HttpServer server;
+   private final ThreadPoolExecutor renderers;
+   private final LinkedBlockingDeque<Runnable> queue;
+   private final TileCache tiles;
+   private final RenderMetrics metrics;
+   private final AtomicLong abandoned;
+
+   /**
+    * A request for a tile, answered by a renderer
+    */
+   private class TileRequest implements Runnable {
+      final HttpExchange exchange;
+      final int z;
+      final int x;
+      final int y;
+      final long queued;
+
+      TileRequest(HttpExchange exchange, int z, int x, int y) {
+         this.exchange = exchange;
+         this.z = z;
+         this.x = x;
+         this.y = y;
+         this.queued = System.currentTimeMillis();
+      }
+
+      public void run() {
+         long remaining = this.queued + MAX_WAIT_MILLIS -
+               System.currentTimeMillis();
+         if (remaining <= 0) {
+            this.abandon();
+            return;
+         }
+         byte[] png;
+         try {
+            png = TileServer.this.getTile(this.z, this.x, this.y,
+                  new RenderLimit(remaining));
+         } catch (RuntimeException e) {
+            e.printStackTrace();
+            respond(this.exchange, 500, "text/plain", new byte[0]);
+            return;
+         }
+         if (png == null) {
+            //the deadline passed while the tile was rendered
+            this.abandon();
+            return;
+         }
+         if (!respond(this.exchange, 200, "image/png", png)) {
+            //the browser closed the connection while the tile was rendered
+            TileServer.this.abandoned.incrementAndGet();
+         }
+      }
+
+      /**
+       * Answers this request without rendering its tile
+       */
+      void abandon() {
+         TileServer.this.abandoned.incrementAndGet();
+         respond(this.exchange, 503, "text/plain", new byte[0]);
+      }
+   }
+
+   /**
+    * @param lp   the leja points of the polynomial to plot
+    * @param centerRe   the real part of the center of level 0
+    * @param centerIm   the imaginary part of the center of level 0
+    * @param size    the width and height of the square level 0 covers
+    * @param port    the port to listen on, or 0 for any free port
+    * @param numRenderers  the number of tiles to render at once
+    * @param cacheBytes the most bytes of encoded tiles to keep in memory
+    * @param cacheDirectory   the directory to keep encoded tiles in, or null
+    *                         to keep them only in memory
+    */
+   public TileServer(LejaPoints lp, double centerRe, double centerIm,
+         double size, int port, int numRenderers, long cacheBytes,
+         File cacheDirectory) throws IOException {
+      if (!(size > 0) || numRenderers < 1) {
+         throw new IllegalArgumentException();
+      }
+      this.lp = lp;
+      this.spacing = size / TILE_SIZE;
+      this.leftBound = centerRe - size / 2;
+      this.topBound = centerIm + size / 2;
+      this.tiles = new TileCache(cacheBytes, cacheDirectory);
+      this.metrics = new RenderMetrics();
+      this.abandoned = new AtomicLong();
+      //newest first: offer adds to the front, and a full queue drops the
+      //oldest request from the back
+      this.queue = new LinkedBlockingDeque<Runnable>(QUEUE_SIZE) {
+         public boolean offer(Runnable request) {
+            return this.offerFirst(request);
+         }
+      };
+      this.renderers = new ThreadPoolExecutor(numRenderers, numRenderers, 0,
+            TimeUnit.MILLISECONDS, this.queue, (request, executor) -> {
+         Runnable oldest = this.queue.pollLast();
+         if (oldest != null) {
+            ((TileRequest) oldest).abandon();
+         }
+         if (!this.queue.offerFirst(request)) {
+            ((TileRequest) request).abandon();
+         }
+      });
+      this.server = HttpServer.create(new InetSocketAddress(port), 0);
+      this.server.createContext("/tiles/", this::handleTile);
+      this.server.createContext("/info", exchange -> respond(exchange, 200,
+            "application/json", this.getInfo().getBytes(StandardCharsets.UTF_8)));
+      this.server.createContext("/stats", exchange -> respond(exchange, 200,
+            "text/plain", this.toString().getBytes(StandardCharsets.UTF_8)));
+      this.server.createContext("/", exchange -> respond(exchange,
+            exchange.getRequestURI().getPath().equals("/") ? 200 : 404,
+            "text/html", VIEWER.getBytes(StandardCharsets.UTF_8)));
+   }
+
+   public void start() {
+      this.server.start();
+   }
+
+   /**
+    * Stops answering requests and stops the renderers
+    */
+   public void stop() {
+      this.server.stop(0);
+      this.renderers.shutdownNow();
+   }
+
+   /**
+    * @return  the port this server listens on
+    */
+   public int getPort() {
+      return this.server.getAddress().getPort();
+   }
+
+   /**
+    * Answers cached tiles right away and queues the others for a renderer
+    */
+   private void handleTile(HttpExchange exchange) {
+      int[] zxy = parseTile(exchange.getRequestURI().getPath());
+      if (zxy == null) {
+         respond(exchange, 400, "text/plain", new byte[0]);
+         return;
+      }
+      int z = zxy[0];
+      int x = zxy[1];
+      int y = zxy[2];
+      if (z > MAX_ZOOM || x >= 1 << z || y >= 1 << z) {
+         respond(exchange, 404, "text/plain", new byte[0]);
+         return;
+      }
+      byte[] png = this.tiles.get(getTileKey(z, x, y));
+      if (png != null) {
+         respond(exchange, 200, "image/png", png);
+         return;
+      }
+      this.renderers.execute(new TileRequest(exchange, z, x, y));
+   }
+
+   /**
+    * @param path "/tiles/z/x/y.png"
+    * @return  z, x and y, or null if path is not a tile
+    */
+   private static int[] parseTile(String path) {
+      String[] parts = path.split("/");
+      if (parts.length != 5 || !parts[4].endsWith(".png")) {
+         return null;
+      }
+      try {
+         int[] zxy = {Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+               Integer.parseInt(parts[4].substring(0, parts[4].length() - 4))};
+         return zxy[0] < 0 || zxy[1] < 0 || zxy[2] < 0 ? null : zxy;
+      } catch (NumberFormatException e) {
+         return null;
+      }
+   }
+
+   private String getTileKey(int z, int x, int y) {
+      return "png " + this.lp.getFingerprint() + " " +
+            Double.toHexString(this.leftBound) + " " +
+            Double.toHexString(this.topBound) + " " +
+            Double.toHexString(this.spacing) + " " + z + "/" + x + "/" + y;
+   }
+
+   /**
+    * @return  the Viewport of tile (x, y) of level z
+    */
+   public Viewport getViewport(int z, int x, int y) {
+      //the tile is a region of the Viewport of its level with top left
+      //corner (x * TILE_SIZE, y * TILE_SIZE); rounding to the decimal places
+      //of the spacing would keep more of them than a long holds from level 4
+      return new Viewport(-x * TILE_SIZE, -y * TILE_SIZE, this.leftBound,
+            this.topBound, Math.scalb(this.spacing, -z), Viewport.NO_ROUNDING,
+            TILE_SIZE, TILE_SIZE);
+   }
+
+   /**
+    * @return  tile (x, y) of level z as a PNG, from the cache or rendered
+    */
+   public byte[] getTile(int z, int x, int y) {
+      return this.getTile(z, x, y, new RenderLimit());
+   }
+
+   /**
+    * Same as getTile, but stops rendering at the next tile of the
+    *    JuliaSetFinder once limit is cancelled or its deadline passes
+    * @param limit   RenderLimit to check before every tile
+    * @return  tile (x, y) of level z as a PNG, or null if the render was
+    *    stopped
+    */
+   public byte[] getTile(int z, int x, int y, RenderLimit limit) {
+      String key = this.getTileKey(z, x, y);
+      byte[] png = this.tiles.get(key);
+      if (png != null) {
+         return png;
+      }
+      JuliaSetFinder jsf = new JuliaSetFinder(this.lp, this.getViewport(z, x, y));
+      //whole encoded tiles are cached instead
+      jsf.setTileCache(null);
+      jsf.setMetrics(this.metrics);
+      PartialRender render = jsf.plotIndicesUsingObvious(
+            new HashSet<Complex>(), limit);
+      if (!render.isComplete()) {
+         return null;
+      }
+      IndexedRaster img = render.getImage();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (PngWriter writer = new PngWriter(bytes, TILE_SIZE, TILE_SIZE,
+            LejaPlotter.PALETTE)) {
+         writer.writeRows(img.getPixels(), TILE_SIZE);
+      } catch (IOException e) {
+         throw new IllegalStateException(e);
+      }
+      png = bytes.toByteArray();
+      this.tiles.put(key, png);
+      return png;
+   }
+
+   /**
+    * @return  the bounds of level 0 as JSON
+    */
+   private String getInfo() {
+      return String.format(Locale.ROOT, "{\"leftBound\": %s, \"topBound\": %s, " +
+            "\"spacing\": %s, \"tileSize\": %d, \"maxZoom\": %d}",
+            Double.toString(this.leftBound), Double.toString(this.topBound),
+            Double.toString(this.spacing), TILE_SIZE, MAX_ZOOM);
+   }
+
+   /**
+    * Sends a response and closes the exchange
+    * @return  false if the client could not be sent the response
+    */
+   private static boolean respond(HttpExchange exchange, int status,
+         String contentType, byte[] body) {
+      try {
+         exchange.getResponseHeaders().set("Content-Type", contentType);
+         if (status == 200 && contentType.equals("image/png")) {
+            //a tile never changes
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=86400");
+         }
+         exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+         if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+         }
+         return true;
+      } catch (IOException e) {
+         return false;
+      } finally {
+         exchange.close();
+      }
+   }
+
+   /**
+    * @return  the number of requests answered 503 because they were most
+    *    likely given up, or that could not be answered
+    */
+   public long getAbandoned() {
+      return this.abandoned.get();
+   }
+
+   public String toString() {
+      return "tile server on port " + this.getPort() + ": " +
+            this.renderers.getActiveCount() + " rendering, " + this.queue.size() +
+            " waiting, " + this.getAbandoned() + " abandoned" +
+            System.lineSeparator() + this.tiles + System.lineSeparator() +
+            this.metrics;
+   }
+
+   /**
+    * Compares the tile right below and right of the center of every level
+    *    in levels with a render of the same region that does not go through
+    *    the Viewport of the level
+    * @return  the number of tiles that differ from their render
+    */
+   public int check(int... levels) throws IOException {
+      int failures = 0;
+      for (int z : levels) {
+         int x = (1 << z) / 2;
+         int y = (1 << z) / 2;
+         double spacing = Math.scalb(this.spacing, -z);
+         Viewport region = new Viewport(0, 0, this.leftBound +
+               x * TILE_SIZE * spacing, this.topBound - y * TILE_SIZE * spacing,
+               spacing, Viewport.NO_ROUNDING, TILE_SIZE, TILE_SIZE);
+         JuliaSetFinder jsf = new JuliaSetFinder(this.lp, region);
+         jsf.setTileCache(null);
+         jsf.setMetrics(new RenderMetrics());
+         IndexedRaster expected = jsf.plotIndicesUsingObvious(
+               new HashSet<Complex>());
+         BufferedImage tile = ImageIO.read(new ByteArrayInputStream(
+               this.getTile(z, x, y)));
+         int different = 0;
+         for (int row = 0; row < TILE_SIZE; row++) {
+            for (int column = 0; column < TILE_SIZE; column++) {
+               if (tile.getRGB(column, row) != LejaPlotter.PALETTE[
+                     expected.get(column, row)].getRGB()) {
+                  different++;
+               }
+            }
+         }
+         Viewport viewport = this.getViewport(z, x, y);
+         //every pixel of a tile has a point of its own
+         if (viewport.getPoint(0, 0).equals(viewport.getPoint(1, 1))) {
+            different = TILE_SIZE * TILE_SIZE;
+         }
+         System.out.println((different == 0 ? "PASS" : "FAIL") + " tile " + z +
+               "/" + x + "/" + y + " from " + viewport.getPoint(0, 0) + ": " +
+               different + " pixels differ");
+         if (different > 0) {
+            failures++;
+         }
+      }
+      return failures;
+   }
+
+   public static void main(String[] args) throws IOException {
+      if (args.length < 1) {
+         System.out.println("usage: java TileServer lejaFile [port] " +
+               "[centerRe centerIm size]");
+         System.out.println("       java TileServer check lejaFile " +
+               "[centerRe centerIm size]");
+         System.out.println("       compares tiles of levels 0 to " + MAX_ZOOM +
+               " with direct renders and exits with 1 if any differ");
+         return;
+      }
+      if (args[0].equals("check")) {
+         boolean bounds = args.length > 4;
+         TileServer server = new TileServer(new LejaPoints(args[1]),
+               bounds ? Double.parseDouble(args[2]) : 0,
+               bounds ? Double.parseDouble(args[3]) : 0,
+               bounds ? Double.parseDouble(args[4]) : 4, 0, 1, 0, null);
+         int[] levels = new int[MAX_ZOOM + 1];
+         for (int z = 0; z <= MAX_ZOOM; z++) {
+            levels[z] = z;
+         }
+         int failures = server.check(levels);
+         System.out.println(failures == 0 ? "all tiles match" :
+               failures + " tiles differ");
+         System.exit(failures == 0 ? 0 : 1);
+      }
+      LejaPoints lp = new LejaPoints(args[0]);
+      int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+      double centerRe = args.length > 4 ? Double.parseDouble(args[2]) : 0;
+      double centerIm = args.length > 4 ? Double.parseDouble(args[3]) : 0;
+      double size = args.length > 4 ? Double.parseDouble(args[4]) : 4;
+      TileServer server = new TileServer(lp, centerRe, centerIm, size, port,
+            Runtime.getRuntime().availableProcessors(), DEFAULT_CACHE_BYTES,
+            TileCache.getConfiguredDirectory());
+      server.start();
+      System.out.println("serving on http://localhost:" + server.getPort() + "/");
+   }
+
+   //drag to pan and scroll to zoom; the bounds of the window are shown in the
+   //corner as the arguments of MultiShapeCreator.createViewport(leftBound,
+   //topBound, spacing, width, height)
+   private static final String VIEWER = """
+         <!DOCTYPE html>
+         <html><head><title>Julia set</title><style>
+         body {margin: 0; overflow: hidden}
+         #view {position: absolute; inset: 0; cursor: move}
+         #view img {position: absolute; width: 256px; height: 256px}
+         #bounds {position: absolute; left: 4px; top: 4px; padding: 2px;
+               background: #fffc; font: 12px monospace}
+         </style></head><body>
+         <div id="view"></div><div id="bounds"></div>
+         <script>
+         fetch('info').then(response => response.json()).then(info => {
+            const view = document.getElementById('view');
+            const bounds = document.getElementById('bounds');
+            const size = info.tileSize;
+            const shown = {};
+            //the pixel of the current level in the middle of the window
+            let z = 0, cx = size / 2, cy = size / 2, drag = null;
+            function draw() {
+               const w = innerWidth, h = innerHeight, n = 2 ** z, seen = {};
+               for (let y = Math.floor((cy - h / 2) / size); y * size < cy + h / 2; y++) {
+                  for (let x = Math.floor((cx - w / 2) / size); x * size < cx + w / 2; x++) {
+                     if (x < 0 || y < 0 || x >= n || y >= n) continue;
+                     const key = z + '/' + x + '/' + y;
+                     seen[key] = true;
+                     if (!shown[key]) {
+                        shown[key] = new Image();
+                        shown[key].src = 'tiles/' + key + '.png';
+                        view.appendChild(shown[key]);
+                     }
+                     shown[key].style.left = (x * size - cx + w / 2) + 'px';
+                     shown[key].style.top = (y * size - cy + h / 2) + 'px';
+                  }
+               }
+               for (const key in shown) {
+                  if (!seen[key]) {
+                     //stops the browser waiting for it
+                     shown[key].src = '';
+                     shown[key].remove();
+                     delete shown[key];
+                  }
+               }
+               const spacing = info.spacing / n;
+               bounds.textContent = 'zoom ' + z + '  leftBound ' +
+                     (info.leftBound + (cx - w / 2) * spacing) + '  topBound ' +
+                     (info.topBound - (cy - h / 2) * spacing) + '  spacing ' +
+                     spacing + '  ' + w + ' x ' + h;
+            }
+            view.onmousedown = e => drag = [e.clientX, e.clientY];
+            onmouseup = () => drag = null;
+            onmousemove = e => {
+               if (drag) {
+                  cx -= e.clientX - drag[0];
+                  cy -= e.clientY - drag[1];
+                  drag = [e.clientX, e.clientY];
+                  draw();
+               }
+            };
+            onwheel = e => {
+               const step = e.deltaY < 0 ? 1 : -1;
+               if (z + step < 0 || z + step > info.maxZoom) return;
+               //the point under the mouse stays where it is
+               const dx = e.clientX - innerWidth / 2, dy = e.clientY - innerHeight / 2;
+               const factor = step > 0 ? 2 : 0.5;
+               cx = (cx + dx) * factor - dx;
+               cy = (cy + dy) * factor - dy;
+               z += step;
+               draw();
+            };
+            onresize = draw;
+            draw();
+         });
+         </script></body></html>
+         """;
+}
@@ -0,0 +1,204 @@
+/**
+ * A rectangle of evenly spaced points in the Complex plane, described by its
+ *    origin, spacing and size instead of a Complex[][] holding every point.
+ *
+ * The point in column x and row y is
+ *    round((x - originX) * spacing + leftBound) +
+ *    round(topBound - (y - originY) * spacing)i
+ *    rounded to the given number of decimal places, which is exactly the
+ *    value MultiShapeCreator.createComplexValues has always produced, so
+ *    points computed here can be looked up in sets built from those grids.
+ *
+ * @author RyanPachauri
+ */
+public class Viewport {
+   //the rounding of a Viewport whose points are not rounded at all
+   public static final int NO_ROUNDING = -1;
+
+   private final int originX;
+   private final int originY;
+   private final double leftBound;
+   private final double topBound;
+   private final double spacing;
+   private final int rounding;
+   private final int width;
+   private final int height;
+
+   /**
+    * @param originX the column whose real part is leftBound
+    * @param originY the row whose imaginary part is topBound
+    * @param leftBound  the real part of column originX
+    * @param topBound   the imaginary part of row originY
+    * @param spacing    the distance between two neighbouring points
+    * @param rounding   the number of decimal places to round points to, or
+    *                   NO_ROUNDING
+    * @param width   the number of columns
+    * @param height  the number of rows
+    */
+   public Viewport(int originX, int originY, double leftBound, double topBound,
+         double spacing, int rounding, int width, int height) {
+      if (width <= 0 || height <= 0 || !(spacing > 0)) {
+         throw new IllegalArgumentException();
+      }
+      this.originX = originX;
+      this.originY = originY;
+      this.leftBound = leftBound;
+      this.topBound = topBound;
+      this.spacing = spacing;
+      this.rounding = rounding;
+      this.width = width;
+      this.height = height;
+   }
+
+   public int width() {
+      return this.width;
+   }
+
+   public int height() {
+      return this.height;
+   }
+
+   public double spacing() {
+      return this.spacing;
+   }
+
+   /**
+    * @return  the real part of column originX, which is never rounded
+    */
+   public double leftBound() {
+      return this.leftBound;
+   }
+
+   /**
+    * @return  the imaginary part of row originY, which is never rounded
+    */
+   public double topBound() {
+      return this.topBound;
+   }
+
+   public int originX() {
+      return this.originX;
+   }
+
+   public int originY() {
+      return this.originY;
+   }
+
+   /**
+    * @return  the number of decimal places points are rounded to
+    */
+   public int rounding() {
+      return this.rounding;
+   }
+
+   /**
+    * @return  the real part of every point in column x
+    */
+   public double re(int x) {
+      return round((x - this.originX) * this.spacing + this.leftBound,
+            this.rounding);
+   }
+
+   /**
+    * @return  the imaginary part of every point in row y
+    */
+   public double im(int y) {
+      return round(this.topBound - (y - this.originY) * this.spacing,
+            this.rounding);
+   }
+
+   /**
+    * @return  the point in column x and row y
+    */
+   public Complex getPoint(int x, int y) {
+      return new Complex(this.re(x), this.im(y));
+   }
+
+   /**
+    * @param z a Complex number
+    * @return
+    *    if z is one of the points of this viewport:
+    *       an int[] of length 2, where:
+    *       the first int represents the x coordinate and
+    *       the second int represents the y coordinate;
+    *    if z is inside this viewport, the coordinates of the closest point;
+    *    otherwise, null
+    */
+   public int[] locate(Complex z) {
+      int x = this.closest(this.originX +
+            (int) Math.round((z.re() - this.leftBound) / this.spacing),
+            z.re(), true);
+      int y = this.closest(this.originY +
+            (int) Math.round((this.topBound - z.im()) / this.spacing),
+            z.im(), false);
+      if (x < 0 || x >= this.width || y < 0 || y >= this.height) {
+         return null;
+      }
+      return new int[] {x, y};
+   }
+
+   /**
+    * Rounding points to a number of decimal places can move them by almost
+    *    a whole spacing, so the neighbours of the estimate are checked too.
+    * @return  the column (or row) next to estimate whose coordinate is
+    *    closest to value
+    */
+   private int closest(int estimate, double value, boolean column) {
+      int best = estimate;
+      double bestDistance = Double.POSITIVE_INFINITY;
+      for (int i = estimate - 1; i <= estimate + 1; i++) {
+         double distance = Math.abs((column ? this.re(i) : this.im(i)) - value);
+         if (distance < bestDistance) {
+            best = i;
+            bestDistance = distance;
+         }
+      }
+      return best;
+   }
+
+   /**
+    * @return  a new viewport covering columns left to left + width - 1 and
+    *    rows top to top + height - 1 of this one
+    */
+   public Viewport getRegion(int left, int top, int width, int height) {
+      return new Viewport(this.originX - left, this.originY - top,
+            this.leftBound, this.topBound, this.spacing, this.rounding,
+            width, height);
+   }
+
+   /**
+    * @return  every point of this viewport, indexed by column and then row
+    */
+   public Complex[][] toComplexValues() {
+      Complex[][] points = new Complex[this.width][this.height];
+      for (int x = 0; x < this.width; x++) {
+         double re = this.re(x);
+         for (int y = 0; y < this.height; y++) {
+            points[x][y] = new Complex(re, this.im(y));
+         }
+      }
+      return points;
+   }
+
+   public String toString() {
+      return this.width + " x " + this.height + " from " + this.getPoint(0, 0) +
+            " with spacing " + this.spacing;
+   }
+
+   /**
+    * Truncates d to numDigits decimal places. Past the digits a long can
+    *    hold, d is returned as it is, since a double does not have them
+    *    either.
+    */
+   private static double round(double d, int numDigits) {
+      if (numDigits < 0) {
+         return d;
+      }
+      double multiplier = Math.pow(10, numDigits);
+      double scaled = d * multiplier;
+      if (!(Math.abs(scaled) < Long.MAX_VALUE)) {
+         return d;
+      }
+      return (double) (long) scaled / multiplier;
+   }
+}
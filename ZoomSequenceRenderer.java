@@ -0,0 +1,224 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders a zoom animation into a Julia set as a numbered sequence of PNGs.
+ *
+ * Every frame is centered on the same point and is zoomed in by a factor of
+ *    2^(1 / framesPerOctave) relative to the frame before it, so frame
+ *    k + framesPerOctave has exactly half the spacing of frame k. Spacings
+ *    are derived from framesPerOctave base spacings by exact halving, which
+ *    puts both frames on the same power-of-two lattice: every pixel of frame
+ *    k + framesPerOctave whose offset from the center is even in both
+ *    directions is a pixel of frame k, and reuses its classification instead
+ *    of running the escape loop again (a quarter of every frame).
+ *
+ * Frames are rendered in parallel. At most maxFramesInFlight frames are
+ *    queued, rendering or waiting to be written at any time. The last
+ *    framesPerOctave frames are also kept until the frames that reuse them
+ *    are rendered, so at most maxFramesInFlight + framesPerOctave frames are
+ *    held in memory, however long the sequence is. Progress is reported
+ *    through RenderMetrics, and the first frame that cannot be rendered or
+ *    saved stops the whole sequence.
+ *
+ * @author RyanPachauri
+ */
+public class ZoomSequenceRenderer {
+   private final LejaPoints lp;
+   private final double centerRe;
+   private final double centerIm;
+   private final int width;
+   private final int height;
+   private final int framesPerOctave;
+   //spacing of the first framesPerOctave frames
+   private final double[] baseSpacings;
+   //number of pixels copied from an earlier frame, for reporting
+   private final LongAdder reused;
+   private RenderMetrics metrics;
+
+   /**
+    * @param lp   a LejaPoints instance with a predefined polynomial
+    * @param centerRe   the real part of the point we zoom in on
+    * @param centerIm   the imaginary part of the point we zoom in on
+    * @param spacing    the spacing of the first frame
+    * @param width   the width of each frame, rounded up to be even
+    * @param height  the height of each frame, rounded up to be even
+    * @param framesPerOctave  the number of frames it takes to zoom in 2x
+    */
+   public ZoomSequenceRenderer(LejaPoints lp, double centerRe, double centerIm,
+         double spacing, int width, int height, int framesPerOctave) {
+      if (framesPerOctave < 1 || width < 1 || height < 1 || spacing <= 0) {
+         throw new IllegalArgumentException();
+      }
+      this.lp = lp;
+      this.centerRe = centerRe;
+      this.centerIm = centerIm;
+      //the center has to fall on a pixel for the lattices to line up
+      this.width = width + width % 2;
+      this.height = height + height % 2;
+      this.framesPerOctave = framesPerOctave;
+      this.baseSpacings = new double[framesPerOctave];
+      for (int i = 0; i < framesPerOctave; i++) {
+         this.baseSpacings[i] = spacing * Math.pow(2, -(double) i / framesPerOctave);
+      }
+      this.reused = new LongAdder();
+      this.metrics = RenderMetrics.shared().createChild();
+   }
+
+   /**
+    * @param metrics RenderMetrics to count the progress of renders in
+    *                instead of a child of RenderMetrics.shared()
+    */
+   public void setMetrics(RenderMetrics metrics) {
+      this.metrics = metrics;
+   }
+
+   public RenderMetrics getMetrics() {
+      return this.metrics;
+   }
+
+   /**
+    * @param frame   the index of a frame
+    * @return  the spacing of that frame
+    */
+   public double spacing(int frame) {
+      return Math.scalb(this.baseSpacings[frame % this.framesPerOctave],
+            -(frame / this.framesPerOctave));
+   }
+
+   /**
+    * Renders numFrames frames and saves them as filePrefix0000.png,
+    *    filePrefix0001.png, ...
+    *
+    * @param filePrefix the name every frame's file starts with
+    * @param numFrames  the number of frames to render
+    * @param threads    the number of frames to render at the same time
+    * @param maxFramesInFlight   the most frames to render or write at once;
+    *    framesPerOctave more are kept for the frames that reuse them
+    * @throws IllegalStateException if a frame could not be rendered or saved
+    */
+   public void render(String filePrefix, int numFrames, int threads,
+         int maxFramesInFlight) {
+      ExecutorService renderers = Executors.newFixedThreadPool(threads);
+      ExecutorService writer = Executors.newSingleThreadExecutor();
+      Semaphore inFlight = new Semaphore(maxFramesInFlight);
+      //the most recent frame of every position within an octave
+      List<Future<byte[]>> octave = new ArrayList<Future<byte[]>>(
+            Collections.nCopies(this.framesPerOctave, (Future<byte[]>) null));
+      //writes that have not been checked yet, oldest first
+      Queue<Future<?>> writes = new ArrayDeque<Future<?>>();
+      long startTime = System.currentTimeMillis();
+      this.metrics.expect((long) numFrames * this.width * this.height);
+      try {
+         for (int k = 0; k < numFrames; k++) {
+            inFlight.acquire();
+            //a frame that failed stops the sequence instead of leaving a gap
+            while (!writes.isEmpty() && writes.peek().isDone()) {
+               writes.remove().get();
+            }
+            int frame = k;
+            Future<byte[]> parent = octave.get(k % this.framesPerOctave);
+            //renderers run in submission order, so the parent is already
+            //finished or running and waiting on it cannot deadlock
+            Future<byte[]> classification = renderers.submit(() ->
+                  this.renderFrame(frame, parent == null ? null : parent.get()));
+            octave.set(k % this.framesPerOctave, classification);
+            writes.add(writer.submit(() -> {
+               try {
+                  this.saveFrame(filePrefix, frame, classification.get());
+               } finally {
+                  inFlight.release();
+               }
+               return null;
+            }));
+         }
+         for (Future<?> write : writes) {
+            write.get();
+         }
+      } catch (InterruptedException | ExecutionException e) {
+         throw new IllegalStateException(e);
+      } finally {
+         //after a failure, queued writes would wait forever on frames that
+         //are never rendered
+         renderers.shutdownNow();
+         writer.shutdownNow();
+      }
+      this.metrics.report();
+      long pixels = (long) numFrames * this.width * this.height;
+      System.out.println(numFrames + " frames in " +
+            (System.currentTimeMillis() - startTime) + " ms, reused " +
+            this.reused.sum() + " of " + pixels + " pixels");
+   }
+
+   /**
+    * @param frame   the index of the frame to render
+    * @param parent  the classification of frame - framesPerOctave, or null
+    * @return  the palette index of every pixel of the frame, row by row
+    */
+   private byte[] renderFrame(int frame, byte[] parent) {
+      double spacing = this.spacing(frame);
+      int halfWidth = this.width / 2;
+      int halfHeight = this.height / 2;
+      byte[] classification = new byte[this.width * this.height];
+      long count = 0;
+      for (int y = 0; y < this.height; y++) {
+         int dy = y - halfHeight;
+         //one row at a time, so deep frames do not allocate for every pixel
+         JuliaSetFinder.Scratch scratch = new JuliaSetFinder.Scratch();
+         for (int x = 0; x < this.width; x++) {
+            int dx = x - halfWidth;
+            byte value;
+            if (parent != null && dx % 2 == 0 && dy % 2 == 0) {
+               value = parent[(halfHeight + dy / 2) * this.width +
+                     halfWidth + dx / 2];
+               count++;
+               scratch.tally.skip();
+            } else {
+               int iterations = JuliaSetFinder.iterationsToEscape(this.lp,
+                     this.centerRe, this.centerIm, dx, dy, spacing, scratch);
+               boolean escaped = iterations <= JuliaSetFinder.NUM_ITERATIONS;
+               scratch.tally.record(iterations, escaped);
+               value = escaped ? LejaPlotter.OUTSIDE_JULIA_SET_INDEX :
+                     LejaPlotter.INSIDE_JULIA_SET_INDEX;
+            }
+            classification[y * this.width + x] = value;
+         }
+         this.metrics.add(scratch.tally, 0, y);
+      }
+      this.reused.add(count);
+      return classification;
+   }
+
+   /**
+    * Unlike IndexedRaster.save, throws when the frame cannot be written, so a
+    *    sequence with a missing frame is not mistaken for a finished one
+    */
+   private void saveFrame(String filePrefix, int frame, byte[] classification)
+         throws IOException {
+      ParallelPngEncoder.writeIndexed(classification, this.width, this.height,
+            LejaPlotter.PALETTE, null, new File(filePrefix +
+            String.format("%04d", frame) + "." + ShapeCreator.IMAGE_SUFFIX));
+   }
+
+   /**
+    * Usage: java ZoomSequenceRenderer lejaFile centerRe centerIm spacing
+    *    width height framesPerOctave numFrames filePrefix
+    */
+   public static void main(String[] args) {
+      if (args.length < 9) {
+         System.out.println("usage: java ZoomSequenceRenderer lejaFile centerRe " +
+               "centerIm spacing width height framesPerOctave numFrames " +
+               "filePrefix");
+         return;
+      }
+      LejaPoints lp = new LejaPoints(args[0]);
+      ZoomSequenceRenderer renderer = new ZoomSequenceRenderer(lp,
+            Double.parseDouble(args[1]), Double.parseDouble(args[2]),
+            Double.parseDouble(args[3]), Integer.parseInt(args[4]),
+            Integer.parseInt(args[5]), Integer.parseInt(args[6]));
+      int threads = Runtime.getRuntime().availableProcessors();
+      renderer.render(args[8], Integer.parseInt(args[7]), threads, threads * 2);
+   }
+}
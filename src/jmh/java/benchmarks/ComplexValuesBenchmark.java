@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Building the grid of points of a size x size plot.
+ *
+ * @author RyanPachauri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ComplexValuesBenchmark {
+   @Param({"500", "1000"})
+   public int size;
+
+   private Callable<Object> create;
+
+   @Setup
+   public void setUp() throws Exception {
+      Workloads.silence();
+      this.create = Workloads.get("MultiShapeCreator.createComplexValues",
+            this.size);
+   }
+
+   @TearDown
+   public void tearDown() {
+      Workloads.restore();
+   }
+
+   @Benchmark
+   public Object createComplexValues() throws Exception {
+      return this.create.call();
+   }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Plotting a 256 x 256 Julia set of n leja points of the square with the
+ *    obvious method, without the tile cache.
+ *
+ * @author RyanPachauri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JuliaSetFinderBenchmark {
+   @Param({"50", "200"})
+   public int n;
+
+   private Callable<Object> plot;
+
+   @Setup
+   public void setUp() throws Exception {
+      Workloads.silence();
+      this.plot = Workloads.get("JuliaSetFinder per pixel", this.n);
+   }
+
+   @TearDown
+   public void tearDown() {
+      Workloads.restore();
+   }
+
+   @Benchmark
+   public Object plot() throws Exception {
+      return this.plot.call();
+   }
+}
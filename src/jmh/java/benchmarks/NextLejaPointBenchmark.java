@@ -0,0 +1,36 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Choosing 50 leja points from about as many candidates on a circle.
+ *
+ * @author RyanPachauri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NextLejaPointBenchmark {
+   @Param({"1000", "4000", "16000"})
+   public int candidates;
+
+   private Callable<Object> choose;
+
+   @Setup
+   public void setUp() throws Exception {
+      Workloads.silence();
+      this.choose = Workloads.get("LejaPoints.getNextLejaPoint", this.candidates);
+   }
+
+   @TearDown
+   public void tearDown() {
+      Workloads.restore();
+   }
+
+   @Benchmark
+   public Object choose() throws Exception {
+      return this.choose.call();
+   }
+}
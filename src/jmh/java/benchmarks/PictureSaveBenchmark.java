@@ -0,0 +1,36 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Saving a size x size picture of stripes of the palette as a PNG.
+ *
+ * @author RyanPachauri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PictureSaveBenchmark {
+   @Param({"1000", "2000"})
+   public int size;
+
+   private Callable<Object> save;
+
+   @Setup
+   public void setUp() throws Exception {
+      Workloads.silence();
+      this.save = Workloads.get("Picture.save", this.size);
+   }
+
+   @TearDown
+   public void tearDown() {
+      Workloads.restore();
+   }
+
+   @Benchmark
+   public Object save() throws Exception {
+      return this.save.call();
+   }
+}
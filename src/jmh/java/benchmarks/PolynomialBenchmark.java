@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Evaluating the polynomial of n leja points of the square at 10000 points,
+ *    in doubles and in double-doubles.
+ *
+ * @author RyanPachauri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolynomialBenchmark {
+   @Param({"50", "200", "800"})
+   public int n;
+
+   private Callable<Object> polynomial;
+   private Callable<Object> polynomialDoubleDouble;
+
+   @Setup
+   public void setUp() throws Exception {
+      Workloads.silence();
+      this.polynomial = Workloads.get("LejaPoints.polynomial", this.n);
+      this.polynomialDoubleDouble = Workloads.get(
+            "LejaPoints.polynomial double-double", this.n);
+   }
+
+   @TearDown
+   public void tearDown() {
+      Workloads.restore();
+   }
+
+   @Benchmark
+   public Object polynomial() throws Exception {
+      return this.polynomial.call();
+   }
+
+   @Benchmark
+   public Object polynomialDoubleDouble() throws Exception {
+      return this.polynomialDoubleDouble.call();
+   }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Finding the boundary of the K, scaled to size x size, from its image and
+ *    from its contour. Both caches are cleared before every run, so the
+ *    boundary is found every time.
+ *
+ * @author RyanPachauri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShapeBoundaryBenchmark {
+   @Param({"300", "1000"})
+   public int size;
+
+   private Callable<Object> fromImage;
+   private Callable<Object> fromContour;
+
+   @Setup
+   public void setUp() throws Exception {
+      Workloads.silence();
+      this.fromImage = Workloads.get("ShapeCreator boundary from image",
+            this.size);
+      this.fromContour = Workloads.get("ShapeCreator boundary from contour",
+            this.size);
+   }
+
+   @TearDown
+   public void tearDown() {
+      Workloads.restore();
+   }
+
+   @Benchmark
+   public Object fromImage() throws Exception {
+      return this.fromImage.call();
+   }
+
+   @Benchmark
+   public Object fromContour() throws Exception {
+      return this.fromContour.call();
+   }
+}
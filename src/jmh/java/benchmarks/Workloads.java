@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Gets the benchmarks set up by Benchmarks.workload. The code under test is
+ *    in the default package, which a class in a package cannot name, so it is
+ *    reached once by reflection while setting up and then called through
+ *    Callable.
+ *
+ * @author RyanPachauri
+ */
+final class Workloads {
+   private static final PrintStream OUT = System.out;
+
+   private Workloads() {
+   }
+
+   /**
+    * @param name    the name of the benchmark in Benchmarks
+    * @param param   the size it is run with
+    * @return  the work to be timed
+    */
+   @SuppressWarnings("unchecked")
+   static Callable<Object> get(String name, int param) throws Exception {
+      return (Callable<Object>) Class.forName("Benchmarks").getMethod(
+            "workload", String.class, int.class).invoke(null, name, param);
+   }
+
+   /**
+    * Throws away everything the code under test prints until restore is
+    *    called
+    */
+   static void silence() {
+      System.setOut(new PrintStream(new OutputStream() {
+         public void write(int b) {
+         }
+      }));
+   }
+
+   static void restore() {
+      System.setOut(OUT);
+   }
+}